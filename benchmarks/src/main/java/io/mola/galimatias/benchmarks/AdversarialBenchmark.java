@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link URL#parse(URL, String)} over crafted inputs that stress a single parser
+ * state with long runs of the characters it handles specially. Parsing time
+ * should grow linearly with <code>size</code> for every kind;
+ * {@link LinearityGate} checks it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdversarialBenchmark {
+
+    static final String[] KINDS = {
+            "scheme", "userinfo", "userinfo-bmp", "at-signs", "port-zeroes", "host-labels", "ipv6",
+            "path-segments", "dot-segments", "percent", "backslashes", "whitespace", "query", "fragment"
+    };
+
+    @Param({ "scheme", "userinfo", "userinfo-bmp", "at-signs", "port-zeroes", "host-labels", "ipv6",
+            "path-segments", "dot-segments", "percent", "backslashes", "whitespace", "query", "fragment" })
+    public String kind;
+
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    private URL base;
+    private String input;
+
+    @Setup
+    public void setup() throws GalimatiasParseException {
+        base = URL.parse(Corpus.BASE);
+        input = input(kind, size);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return parse(base, input);
+    }
+
+    /**
+     * @return The URL, or the exception for inputs that do not parse.
+     */
+    static Object parse(final URL base, final String input) {
+        try {
+            return URL.parse(base, input);
+        } catch (GalimatiasParseException ex) {
+            return ex;
+        }
+    }
+
+    /**
+     * Builds an input of the given kind, with <code>size</code> repetitions of its pattern.
+     */
+    static String input(final String kind, final int size) {
+        if ("scheme".equals(kind)) {
+            // A long scheme-like run without ":" makes the parser restart from the beginning
+            return repeat("a", size) + "/b";
+        } else if ("userinfo".equals(kind)) {
+            return "http://" + repeat("a", size) + "@example.com/";
+        } else if ("userinfo-bmp".equals(kind)) {
+            // Characters out of Latin-1, so that Java 9+ compact strings cannot shortcut code point counting
+            return "http://" + repeat("ā", size) + "@example.com/";
+        } else if ("at-signs".equals(kind)) {
+            return "http://" + repeat("a@", size) + "example.com/";
+        } else if ("port-zeroes".equals(kind)) {
+            return "http://example.com:" + repeat("0", size) + "80/";
+        } else if ("host-labels".equals(kind)) {
+            return "http://" + repeat("a.", size) + "com/";
+        } else if ("ipv6".equals(kind)) {
+            return "http://[" + repeat("1:", size) + "1]/";
+        } else if ("path-segments".equals(kind)) {
+            return "http://example.com/" + repeat("a/", size);
+        } else if ("dot-segments".equals(kind)) {
+            return "http://example.com/" + repeat("a/../", size);
+        } else if ("percent".equals(kind)) {
+            return "http://example.com/" + repeat("%", size);
+        } else if ("backslashes".equals(kind)) {
+            return "http://example.com" + repeat("\\", size);
+        } else if ("whitespace".equals(kind)) {
+            return "http://example.com/" + repeat("\t", size) + "a";
+        } else if ("query".equals(kind)) {
+            return "http://example.com/?" + repeat("a=é&", size);
+        } else if ("fragment".equals(kind)) {
+            return "http://example.com/#" + repeat("é ", size);
+        }
+        throw new IllegalArgumentException("Unknown kind: " + kind);
+    }
+
+    private static String repeat(final String pattern, final int times) {
+        final StringBuilder sb = new StringBuilder(pattern.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(pattern);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.Host;
+import io.mola.galimatias.URL;
+import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Measures bytes allocated per operation on hot paths and checks them against
+ * a budget file, exiting with a non-zero status when a budget is exceeded.
+ *
+ * The budget file is a properties file mapping operation names (as printed
+ * by this tool) to the maximum number of bytes per operation.
+ *
+ * Allocation is measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * after warming up, so it reflects compiled code, including any allocation
+ * removed by escape analysis. For exploratory work, the JMH benchmarks give
+ * the same figures with <code>-prof gc</code>.
+ *
+ * Usage: <code>AllocationGate [budget-file]</code>. Without a budget file,
+ * it only prints measurements, in the budget file format.
+ */
+public final class AllocationGate {
+
+    static final int WARMUP_ROUNDS = 10;
+    static final int MEASUREMENT_ROUNDS = 5;
+    static final int OPERATIONS_PER_ROUND = 20000;
+
+    /**
+     * A measured operation. Inputs are picked by index so that operations
+     * cycle through a few inputs of the same class.
+     */
+    static abstract class Operation {
+        abstract Object run(int index) throws GalimatiasParseException;
+    }
+
+    private static volatile Object sink;
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+    AllocationGate() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean) ||
+                !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocated memory is not supported by this JVM");
+        }
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        ((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+        registerDefaults();
+    }
+
+    private void registerDefaults() {
+        final String[][] urlClasses = {
+                { "simple", "http://example.com/", "https://www.example.org/" },
+                { "typical", "https://www.example.com/news/2014/article.html?id=123&lang=en#comments",
+                        "http://static.cdn.example.net/img/v1/logo.png?size=64" },
+                { "ipv4", "http://192.168.1.20:8080/index.html", "http://10.0.0.1/" },
+                { "ipv6", "http://[2001:db8::1]/index.html", "http://[::1]:8080/" },
+                { "idn", "http://bücher.example/katalog", "http://例え.テスト/" },
+                { "percent", "http://example.com/caf%C3%A9/a%20b?q=%E2%82%AC+100&x=%7e", "http://example.com/%7Euser/a b/é" },
+                { "unencoded", "http://example.com/a|b/{c}?q=[x]^y", "http://example.com/%7euser/a`b?c=d|e" },
+                { "relative", "../other/page.html?x=1", "/absolute/path#top" }
+        };
+        final URL base = parse("http://example.com/dir/sub/page.html");
+        for (final String[] urlClass : urlClasses) {
+            final String name = urlClass[0];
+            final String[] inputs = new String[urlClass.length - 1];
+            System.arraycopy(urlClass, 1, inputs, 0, inputs.length);
+            final boolean relative = "relative".equals(name);
+            operations.put("parse." + name, new Operation() {
+                @Override
+                Object run(final int index) throws GalimatiasParseException {
+                    return relative ? URL.parse(base, inputs[index % inputs.length]) :
+                            URL.parse(inputs[index % inputs.length]);
+                }
+            });
+            final URL[] urls = new URL[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                urls[i] = relative ? parse(base, inputs[i]) : parse(null, inputs[i]);
+            }
+            operations.put("toString." + name, new Operation() {
+                @Override
+                Object run(final int index) {
+                    return urls[index % urls.length].toString();
+                }
+            });
+            final URLCanonicalizer canon = new RFC3986Canonicalizer();
+            operations.put("canonicalize.rfc3986." + name, new Operation() {
+                @Override
+                Object run(final int index) throws GalimatiasParseException {
+                    return canon.canonicalize(urls[index % urls.length]);
+                }
+            });
+        }
+
+        final String[][] hostClasses = {
+                { "domain", "example.com", "www.example.org" },
+                { "ipv4", "192.168.1.20", "10.0.0.1" },
+                { "ipv6", "[2001:db8::1]", "[::ffff:192.168.1.1]" },
+                { "idn", "bücher.example", "例え.テスト" }
+        };
+        for (final String[] hostClass : hostClasses) {
+            final String[] inputs = new String[hostClass.length - 1];
+            System.arraycopy(hostClass, 1, inputs, 0, inputs.length);
+            operations.put("parseHost." + hostClass[0], new Operation() {
+                @Override
+                Object run(final int index) throws GalimatiasParseException {
+                    return Host.parseHost(inputs[index % inputs.length]);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return Measured bytes per operation, by operation name.
+     */
+    Map<String, Long> measure() throws GalimatiasParseException {
+        final Map<String, Long> results = new LinkedHashMap<String, Long>();
+        final long overhead = measure(new Operation() {
+            @Override
+            Object run(final int index) {
+                return null;
+            }
+        });
+        for (final Map.Entry<String, Operation> entry : operations.entrySet()) {
+            results.put(entry.getKey(), Math.max(0, measure(entry.getValue()) - overhead));
+        }
+        return results;
+    }
+
+    private long measure(final Operation operation) throws GalimatiasParseException {
+        final long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runRound(operation);
+        }
+        // The minimum of several rounds filters out one-off allocations (class loading, caches warming up)
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < MEASUREMENT_ROUNDS; round++) {
+            final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            runRound(operation);
+            final long after = threadMXBean.getThreadAllocatedBytes(threadId);
+            best = Math.min(best, after - before);
+        }
+        return Math.round((double) best / OPERATIONS_PER_ROUND);
+    }
+
+    private static void runRound(final Operation operation) throws GalimatiasParseException {
+        for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+            sink = operation.run(i);
+        }
+    }
+
+    /**
+     * Compares measurements with budgets.
+     *
+     * @return Violations, as printable lines. Budgets for operations that were
+     *         not measured are violations too, so stale budget files get noticed.
+     */
+    static List<String> check(final Map<String, Long> measured, final Properties budgets) {
+        final List<String> violations = new ArrayList<String>();
+        for (final String name : new TreeSet<String>(budgets.stringPropertyNames())) {
+            final long budget;
+            try {
+                budget = Long.parseLong(budgets.getProperty(name).trim());
+            } catch (NumberFormatException ex) {
+                violations.add(name + ": invalid budget: " + budgets.getProperty(name));
+                continue;
+            }
+            final Long bytes = measured.get(name);
+            if (bytes == null) {
+                violations.add(name + ": budget for unknown operation");
+            } else if (bytes > budget) {
+                violations.add(String.format(Locale.ENGLISH, "%s: %d bytes/op exceeds budget of %d bytes/op",
+                        name, bytes, budget));
+            }
+        }
+        return violations;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length > 1) {
+            System.err.println("Usage: AllocationGate [budget-file]");
+            System.exit(2);
+        }
+        final Map<String, Long> measured = new AllocationGate().measure();
+        final Properties budgets = new Properties();
+        if (args.length == 1) {
+            final InputStream in = new FileInputStream(new File(args[0]));
+            try {
+                budgets.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        System.out.println("# Bytes allocated per operation");
+        for (final Map.Entry<String, Long> entry : measured.entrySet()) {
+            final String budget = budgets.getProperty(entry.getKey());
+            System.out.println(entry.getKey() + " = " + entry.getValue() +
+                    ((budget == null) ? "" : "    # budget: " + budget.trim()));
+        }
+
+        final List<String> violations = check(measured, budgets);
+        if (!violations.isEmpty()) {
+            System.err.println("Allocation budget exceeded:");
+            for (final String violation : violations) {
+                System.err.println("  " + violation);
+            }
+            System.exit(1);
+        }
+    }
+
+    private static URL parse(final String input) {
+        return parse(null, input);
+    }
+
+    private static URL parse(final URL base, final String input) {
+        try {
+            return URL.parse(base, input);
+        } catch (GalimatiasParseException ex) {
+            throw new RuntimeException("BUG", ex);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+import io.mola.galimatias.canonicalize.CachingCanonicalizer;
+import io.mola.galimatias.canonicalize.CombinedCanonicalizer;
+import io.mola.galimatias.canonicalize.DecodeUnreservedCanonicalizer;
+import io.mola.galimatias.canonicalize.QueryCanonicalizer;
+import io.mola.galimatias.canonicalize.RFC2396Canonicalizer;
+import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
+import io.mola.galimatias.canonicalize.RegexCanonicalizer;
+import io.mola.galimatias.canonicalize.RuleSetCanonicalizer;
+import io.mola.galimatias.canonicalize.StripPartCanonicalizer;
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * {@link URLCanonicalizer#canonicalize(URL)} for each canonicalizer. Only
+ * hierarchical URLs of the corpus are used, since most canonicalizers
+ * do nothing on the rest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanonicalizerBenchmark {
+
+    @Param({ Corpus.WHATWG, Corpus.SYNTHETIC })
+    public String corpus;
+
+    @Param({ "rfc3986", "rfc2396", "decodeUnreserved", "stripPart", "regex", "ruleSet",
+            "query", "combined", "caching" })
+    public String canonicalizer;
+
+    private URLCanonicalizer canon;
+    private URL[] urls;
+    private int index;
+
+    @Setup
+    public void setup() throws GalimatiasParseException {
+        canon = create(canonicalizer);
+        final List<URL> hierarchical = new ArrayList<URL>();
+        for (final URL url : Corpus.load(corpus).parse()) {
+            if (url.isHierarchical()) {
+                hierarchical.add(url);
+            }
+        }
+        urls = hierarchical.toArray(new URL[hierarchical.size()]);
+        for (final URL url : urls) {
+            canon.canonicalize(url);
+        }
+    }
+
+    @Benchmark
+    public URL canonicalize() throws GalimatiasParseException {
+        final int i = index;
+        index = (i + 1 == urls.length) ? 0 : i + 1;
+        return canon.canonicalize(urls[i]);
+    }
+
+    static URLCanonicalizer create(final String name) {
+        if ("rfc3986".equals(name)) {
+            return new RFC3986Canonicalizer();
+        }
+        if ("rfc2396".equals(name)) {
+            return new RFC2396Canonicalizer();
+        }
+        if ("decodeUnreserved".equals(name)) {
+            return new DecodeUnreservedCanonicalizer();
+        }
+        if ("stripPart".equals(name)) {
+            return new StripPartCanonicalizer(StripPartCanonicalizer.Part.FRAGMENT);
+        }
+        if ("regex".equals(name)) {
+            return new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("/index\\.html?$"), "/");
+        }
+        if ("ruleSet".equals(name)) {
+            return RuleSetCanonicalizer.builder()
+                    .rule(".example.com", RegexCanonicalizer.Scope.PATH, Pattern.compile(";jsessionid=[^/]*"), "")
+                    .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("/index\\.html?$"), "/")
+                    .build();
+        }
+        if ("query".equals(name)) {
+            return QueryCanonicalizer.builder().removeTrackingParameters().build();
+        }
+        if ("combined".equals(name)) {
+            return new CombinedCanonicalizer(
+                    new RFC3986Canonicalizer(),
+                    new DecodeUnreservedCanonicalizer(),
+                    new StripPartCanonicalizer(StripPartCanonicalizer.Part.FRAGMENT));
+        }
+        if ("caching".equals(name)) {
+            return CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+                    .maximumSize(1 << 16)
+                    .build();
+        }
+        throw new IllegalArgumentException("Unknown canonicalizer: " + name);
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs {@link JavaNetBenchmark} and writes the raw JMH results as JSON,
+ * plus a Markdown table comparing galimatias with java.net.URI and
+ * java.net.URL for each operation.
+ *
+ * Usage: <code>ComparisonReport [output-directory]</code>, by default <code>results</code>.
+ * It writes <code>java-net-comparison.json</code> and <code>java-net-comparison.md</code>.
+ */
+public final class ComparisonReport {
+
+    private static final String[] IMPLEMENTATIONS = { "Galimatias", "JavaURI", "JavaURL" };
+
+    public static void main(final String[] args) throws RunnerException, IOException {
+        final File directory = new File((args.length > 0) ? args[0] : "results");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final File json = new File(directory, "java-net-comparison.json");
+        final Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(JavaNetBenchmark.class.getName())
+                .resultFormat(ResultFormatType.JSON)
+                .result(json.getPath())
+                .build()).run();
+
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(directory, "java-net-comparison.md")), Charset.forName("UTF-8")));
+        try {
+            writeMarkdown(results, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    static void writeMarkdown(final Collection<RunResult> results, final PrintWriter out) {
+        // corpus -> operation -> implementation -> ns/op
+        final Map<String, Map<String, Map<String, Double>>> scores = new TreeMap<String, Map<String, Map<String, Double>>>();
+        for (final RunResult result : results) {
+            final String benchmark = result.getParams().getBenchmark();
+            final String method = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            String operation = method;
+            String implementation = "";
+            for (final String candidate : IMPLEMENTATIONS) {
+                if (method.endsWith(candidate)) {
+                    operation = method.substring(0, method.length() - candidate.length());
+                    implementation = candidate;
+                    break;
+                }
+            }
+            final String corpus = result.getParams().getParam("corpus");
+            Map<String, Map<String, Double>> byOperation = scores.get(corpus);
+            if (byOperation == null) {
+                byOperation = new LinkedHashMap<String, Map<String, Double>>();
+                scores.put(corpus, byOperation);
+            }
+            Map<String, Double> byImplementation = byOperation.get(operation);
+            if (byImplementation == null) {
+                byImplementation = new LinkedHashMap<String, Double>();
+                byOperation.put(operation, byImplementation);
+            }
+            byImplementation.put(implementation, result.getPrimaryResult().getScore());
+        }
+
+        out.println("galimatias vs java.net (ns/op, lower is better)");
+        out.println("===============================================");
+        for (final Map.Entry<String, Map<String, Map<String, Double>>> corpus : scores.entrySet()) {
+            out.println();
+            out.println("Corpus: " + corpus.getKey());
+            out.println();
+            out.println("| Operation | galimatias | java.net.URI | java.net.URL | galimatias / URI |");
+            out.println("|-----------|-----------:|-------------:|-------------:|-----------------:|");
+            for (final Map.Entry<String, Map<String, Double>> operation : corpus.getValue().entrySet()) {
+                final Double galimatias = operation.getValue().get("Galimatias");
+                final Double uri = operation.getValue().get("JavaURI");
+                out.printf(Locale.ENGLISH, "| %s | %s | %s | %s | %s |%n", operation.getKey(),
+                        format(galimatias), format(uri), format(operation.getValue().get("JavaURL")),
+                        (galimatias != null && uri != null) ?
+                                String.format(Locale.ENGLISH, "%.2f", galimatias / uri) : "");
+            }
+        }
+    }
+
+    private static String format(final Double score) {
+        return (score == null) ? "" : String.format(Locale.ENGLISH, "%.1f", score);
+    }
+
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark inputs: pairs of input string and (possibly null) base URL.
+ *
+ * Only inputs that parse are kept, so that benchmarks measure the parser
+ * and not exception construction.
+ */
+public final class Corpus {
+
+    public static final String WHATWG = "whatwg";
+    public static final String SYNTHETIC = "synthetic";
+
+    static final int SYNTHETIC_SIZE = 10000;
+    static final long SYNTHETIC_SEED = 42L;
+
+    /**
+     * Base URL for relative references in synthetic corpora and corpus files.
+     */
+    public static final String BASE = "http://example.com/dir/page.html?x=1";
+
+    private static final String WHATWG_RESOURCE = "/data/urltestdata_whatwg.txt";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String[] inputs;
+    private final URL[] bases;
+
+    private Corpus(final List<String> inputs, final List<URL> bases) {
+        this.inputs = inputs.toArray(new String[inputs.size()]);
+        this.bases = bases.toArray(new URL[bases.size()]);
+    }
+
+    /**
+     * Loads a corpus by name, as used in <code>@Param</code> values:
+     * {@link #WHATWG}, {@link #SYNTHETIC} or the path of a corpus file.
+     */
+    public static Corpus load(final String name) {
+        if (WHATWG.equals(name)) {
+            return whatwg();
+        }
+        if (SYNTHETIC.equals(name)) {
+            return synthetic(SYNTHETIC_SIZE, SYNTHETIC_SEED);
+        }
+        final File file = new File(name);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("Unknown corpus: " + name);
+        }
+        try {
+            return read(file);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Inputs from the WHATWG URL test data, with their base URLs.
+     */
+    public static Corpus whatwg() {
+        final List<String> inputs = new ArrayList<String>();
+        final List<URL> bases = new ArrayList<URL>();
+        final InputStream in = Corpus.class.getResourceAsStream(WHATWG_RESOURCE);
+        if (in == null) {
+            throw new IllegalStateException("Missing resource: " + WHATWG_RESOURCE);
+        }
+        try {
+            final BufferedReader br = new BufferedReader(new InputStreamReader(in, UTF_8));
+            try {
+                URL base = null;
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("--")) {
+                        continue;
+                    }
+                    final String[] fields = line.split(" ");
+                    if (fields.length > 1 && !fields[1].isEmpty()) {
+                        base = URL.parse(unescape(fields[1]));
+                    }
+                    final String input = unescape(fields[0]);
+                    try {
+                        URL.parse(base, input);
+                    } catch (GalimatiasParseException ex) {
+                        continue;
+                    }
+                    inputs.add(input);
+                    bases.add(base);
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } catch (GalimatiasParseException ex) {
+            throw new RuntimeException("BUG", ex);
+        }
+        return new Corpus(inputs, bases);
+    }
+
+    /**
+     * URLs from {@link CorpusGenerator} with default settings, 10% of them
+     * relative references resolved against {@link #BASE}.
+     */
+    public static Corpus synthetic(final int size, final long seed) {
+        return of(CorpusGenerator.builder()
+                .withSeed(seed)
+                .withRelativeShare(0.1)
+                .build()
+                .generate(size));
+    }
+
+    /**
+     * Reads a corpus file, one URL per line, as written by {@link CorpusGenerator}.
+     */
+    public static Corpus read(final File file) throws IOException {
+        final List<String> inputs = new ArrayList<String>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                inputs.add(line);
+            }
+        } finally {
+            br.close();
+        }
+        return of(inputs);
+    }
+
+    /**
+     * Inputs that are not absolute URLs are resolved against {@link #BASE}.
+     * Inputs that do not parse either way are dropped.
+     */
+    private static Corpus of(final List<String> lines) {
+        final List<String> inputs = new ArrayList<String>(lines.size());
+        final List<URL> bases = new ArrayList<URL>(lines.size());
+        final URL base = baseURL();
+        for (final String line : lines) {
+            try {
+                URL.parse(line);
+                inputs.add(line);
+                bases.add(null);
+                continue;
+            } catch (GalimatiasParseException ex) {
+                // Try it as a relative reference
+            }
+            try {
+                URL.parse(base, line);
+                inputs.add(line);
+                bases.add(base);
+            } catch (GalimatiasParseException ex) {
+                // Invalid input
+            }
+        }
+        return new Corpus(inputs, bases);
+    }
+
+    private static URL baseURL() {
+        try {
+            return URL.parse(BASE);
+        } catch (GalimatiasParseException ex) {
+            throw new RuntimeException("BUG", ex);
+        }
+    }
+
+    public int size() {
+        return inputs.length;
+    }
+
+    public String input(final int index) {
+        return inputs[index];
+    }
+
+    /**
+     * @return The base URL for the given input, or null if it is absolute.
+     */
+    public URL base(final int index) {
+        return bases[index];
+    }
+
+    /**
+     * @return The subset of inputs that parse without a base URL.
+     */
+    public Corpus absolute() {
+        final List<String> in = new ArrayList<String>();
+        final List<URL> bs = new ArrayList<URL>();
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                URL.parse(inputs[i]);
+            } catch (GalimatiasParseException ex) {
+                continue;
+            }
+            in.add(inputs[i]);
+            bs.add(null);
+        }
+        return new Corpus(in, bs);
+    }
+
+    /**
+     * @return The subset of inputs that have a base URL.
+     */
+    public Corpus relative() {
+        final List<String> in = new ArrayList<String>();
+        final List<URL> bs = new ArrayList<URL>();
+        for (int i = 0; i < inputs.length; i++) {
+            if (bases[i] != null) {
+                in.add(inputs[i]);
+                bs.add(bases[i]);
+            }
+        }
+        return new Corpus(in, bs);
+    }
+
+    /**
+     * @return Every input parsed against its base.
+     */
+    public URL[] parse() {
+        final URL[] urls = new URL[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                urls[i] = URL.parse(bases[i], inputs[i]);
+            } catch (GalimatiasParseException ex) {
+                throw new RuntimeException("BUG", ex);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Decodes escapes in the WHATWG test data format (<code>\s</code>,
+     * <code>\t</code>, unicode escapes...).
+     */
+    private static String unescape(final String input) {
+        final StringBuilder output = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            final char c = input.charAt(i);
+            if (c != '\\' || i + 1 >= input.length()) {
+                output.append(c);
+                continue;
+            }
+            final char next = input.charAt(++i);
+            switch (next) {
+                case 's': output.append(' '); break;
+                case 't': output.append('\t'); break;
+                case 'n': output.append('\n'); break;
+                case 'r': output.append('\r'); break;
+                case 'f': output.append('\f'); break;
+                case 'u':
+                    output.append((char) Integer.parseInt(input.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default: output.append(next); break;
+            }
+        }
+        return output.toString();
+    }
+
+}
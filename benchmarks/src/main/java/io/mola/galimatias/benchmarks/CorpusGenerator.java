@@ -0,0 +1,534 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates URL corpora resembling web traffic, with configurable distributions.
+ *
+ * Generation is deterministic for a given seed and configuration, so a corpus
+ * can be regenerated instead of shared. Corpora can also be written to files,
+ * one URL per line, and loaded with {@link Corpus#load(String)} or fed to
+ * the CLI batch mode.
+ *
+ * Hosts are picked from a fixed set of distinct hosts following a Zipf
+ * distribution, so that a few hosts account for most URLs, as in crawls
+ * and access logs.
+ */
+public final class CorpusGenerator {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] WORDS = {
+            "index", "news", "article", "search", "img", "images", "static", "js", "css", "api",
+            "v1", "v2", "users", "user", "profile", "products", "product", "category", "blog", "post",
+            "2014", "05", "archive", "tag", "page", "about", "contact", "help", "docs", "download",
+            "en", "es", "de", "fr", "wiki", "media", "video", "watch", "item", "cart"
+    };
+
+    private static final String[] EXTENSIONS = { "", "", "", ".html", ".php", ".jpg", ".png", ".js", ".css", ".pdf" };
+
+    private static final String[] PARAMETER_NAMES = {
+            "q", "id", "page", "lang", "sort", "ref", "utm_source", "utm_medium", "utm_campaign",
+            "session", "v", "s", "format", "limit", "offset", "filter", "gclid", "fbclid"
+    };
+
+    private static final String[] TLDS = { "com", "com", "com", "org", "net", "io", "de", "co.uk", "es", "fr" };
+
+    private static final String[] IDN_LABELS = {
+            "bücher", "münchen", "café", "пример", "例え", "テスト", "español", "日本語", "señor", "مثال"
+    };
+
+    private static final String[] IDN_TLDS = { "com", "de", "рф", "jp", "es", "テスト" };
+
+    /**
+     * Words with characters that are usually percent-encoded, in raw and encoded form.
+     */
+    private static final String[][] ENCODED_WORDS = {
+            { "café", "caf%C3%A9" }, { "a b", "a%20b" }, { "naïve", "na%C3%AFve" },
+            { "100%", "100%25" }, { "x|y", "x%7Cy" }, { "€", "%E2%82%AC" }, { "ü", "%C3%BC" }
+    };
+
+    /**
+     * Inputs that no URL parser accepts.
+     */
+    private static final String[] INVALID = {
+            "http://[2001:db8::1/", "http://example.com:port/", "http://[::1]x/", "http://exa%mple.com/",
+            "http://[1:2:3:4:5:6:7:8:9]/", "http://exa mple.com/",
+            "http://"
+    };
+
+    private static final Map<String, Double> DEFAULT_SCHEMES = new LinkedHashMap<String, Double>();
+    static {
+        DEFAULT_SCHEMES.put("https", 70.0);
+        DEFAULT_SCHEMES.put("http", 25.0);
+        DEFAULT_SCHEMES.put("ftp", 3.0);
+        DEFAULT_SCHEMES.put("mailto", 2.0);
+    }
+
+    private final long seed;
+    private final String[] schemes;
+    private final double[] schemeCdf;
+    private final int distinctHosts;
+    private final double zipfExponent;
+    private final double idnShare;
+    private final double ipv4Share;
+    private final double ipv6Share;
+    private final int maxPathDepth;
+    private final int maxQueryParameters;
+    private final double percentEncodingDensity;
+    private final double invalidRate;
+    private final double relativeShare;
+    private final double fragmentShare;
+
+    private CorpusGenerator(final Builder builder) {
+        this.seed = builder.seed;
+        final Map<String, Double> weights = builder.schemes.isEmpty() ? DEFAULT_SCHEMES : builder.schemes;
+        this.schemes = weights.keySet().toArray(new String[weights.size()]);
+        this.schemeCdf = new double[schemes.length];
+        double total = 0;
+        for (final double weight : weights.values()) {
+            total += weight;
+        }
+        double cumulative = 0;
+        for (int i = 0; i < schemes.length; i++) {
+            cumulative += weights.get(schemes[i]) / total;
+            schemeCdf[i] = cumulative;
+        }
+        this.distinctHosts = builder.distinctHosts;
+        this.zipfExponent = builder.zipfExponent;
+        this.idnShare = builder.idnShare;
+        this.ipv4Share = builder.ipv4Share;
+        this.ipv6Share = builder.ipv6Share;
+        this.maxPathDepth = builder.maxPathDepth;
+        this.maxQueryParameters = builder.maxQueryParameters;
+        this.percentEncodingDensity = builder.percentEncodingDensity;
+        this.invalidRate = builder.invalidRate;
+        this.relativeShare = builder.relativeShare;
+        this.fragmentShare = builder.fragmentShare;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Generates <code>count</code> URLs.
+     */
+    public List<String> generate(final int count) {
+        final List<String> urls = new ArrayList<String>(count);
+        final Generation generation = new Generation();
+        for (int i = 0; i < count; i++) {
+            urls.add(generation.next());
+        }
+        return urls;
+    }
+
+    /**
+     * Writes <code>count</code> URLs, one per line.
+     */
+    public void write(final Writer output, final int count) throws IOException {
+        final Generation generation = new Generation();
+        for (int i = 0; i < count; i++) {
+            output.write(generation.next());
+            output.write('\n');
+        }
+        output.flush();
+    }
+
+    /**
+     * Writes <code>count</code> URLs to a UTF-8 file, one per line.
+     */
+    public void write(final File file, final int count) throws IOException {
+        final Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            write(output, count);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * State of a single generation, so that every call to {@link #generate(int)}
+     * or <code>write</code> produces the same URLs.
+     */
+    private final class Generation {
+
+        private final Random random = new Random(seed);
+        private final String[] hosts = new String[distinctHosts];
+        private final double[] hostCdf = new double[distinctHosts];
+        private final StringBuilder sb = new StringBuilder(256);
+
+        Generation() {
+            double total = 0;
+            for (int rank = 0; rank < distinctHosts; rank++) {
+                total += 1.0 / Math.pow(rank + 1, zipfExponent);
+                hostCdf[rank] = total;
+                hosts[rank] = host();
+            }
+            for (int rank = 0; rank < distinctHosts; rank++) {
+                hostCdf[rank] /= total;
+            }
+        }
+
+        String next() {
+            if (random.nextDouble() < invalidRate) {
+                return INVALID[random.nextInt(INVALID.length)];
+            }
+            sb.setLength(0);
+            if (random.nextDouble() < relativeShare) {
+                relative();
+                return sb.toString();
+            }
+            final String scheme = schemes[pick(schemeCdf)];
+            if ("mailto".equals(scheme)) {
+                sb.append("mailto:").append(word()).append('@').append(hosts[pick(hostCdf)]);
+                return sb.toString();
+            }
+            sb.append(scheme).append("://");
+            if (!"file".equals(scheme)) {
+                sb.append(hosts[pick(hostCdf)]);
+                if (random.nextInt(50) == 0) {
+                    sb.append(':').append(1024 + random.nextInt(64000));
+                }
+            }
+            path(random.nextInt(maxPathDepth + 1));
+            query();
+            if (random.nextDouble() < fragmentShare) {
+                sb.append('#').append(segment());
+            }
+            return sb.toString();
+        }
+
+        private void relative() {
+            final int kind = random.nextInt(4);
+            if (kind == 0) {
+                sb.append("..");
+            } else if (kind == 3) {
+                sb.append("//").append(hosts[pick(hostCdf)]);
+            }
+            final int start = sb.length();
+            path(1 + random.nextInt(Math.max(1, maxPathDepth)));
+            if (kind == 1) {
+                // Path-relative: "a/b" instead of "/a/b"
+                sb.deleteCharAt(start);
+            }
+            query();
+        }
+
+        private void path(final int depth) {
+            if (depth == 0) {
+                sb.append('/');
+                return;
+            }
+            for (int i = 0; i < depth; i++) {
+                sb.append('/').append(segment());
+            }
+            if (random.nextBoolean()) {
+                sb.append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            } else if (random.nextInt(4) == 0) {
+                sb.append('/');
+            }
+        }
+
+        private void query() {
+            final int parameters = random.nextInt(maxQueryParameters + 1);
+            for (int i = 0; i < parameters; i++) {
+                sb.append((i == 0) ? '?' : '&')
+                        .append(PARAMETER_NAMES[random.nextInt(PARAMETER_NAMES.length)])
+                        .append('=');
+                if (random.nextInt(3) == 0) {
+                    sb.append(random.nextInt(100000));
+                } else {
+                    sb.append(segment());
+                }
+            }
+        }
+
+        private String segment() {
+            if (random.nextDouble() < percentEncodingDensity) {
+                final String[] word = ENCODED_WORDS[random.nextInt(ENCODED_WORDS.length)];
+                // Half of them already encoded, the other half left for the parser to encode
+                return word[random.nextInt(2)];
+            }
+            return word();
+        }
+
+        private String word() {
+            return WORDS[random.nextInt(WORDS.length)];
+        }
+
+        private String host() {
+            final double kind = random.nextDouble();
+            if (kind < ipv4Share) {
+                return (1 + random.nextInt(223)) + "." + random.nextInt(256) + "." +
+                        random.nextInt(256) + "." + (1 + random.nextInt(254));
+            }
+            if (kind < ipv4Share + ipv6Share) {
+                return String.format(Locale.ENGLISH, "[2001:db8:%x::%x]", random.nextInt(0x10000), 1 + random.nextInt(0xffff));
+            }
+            final StringBuilder host = new StringBuilder();
+            if (random.nextInt(3) > 0) {
+                host.append(random.nextBoolean() ? "www." : word() + ".");
+            }
+            if (kind < ipv4Share + ipv6Share + idnShare) {
+                host.append(IDN_LABELS[random.nextInt(IDN_LABELS.length)]).append(random.nextInt(1000))
+                        .append('.').append(IDN_TLDS[random.nextInt(IDN_TLDS.length)]);
+            } else {
+                host.append(word()).append(word()).append(random.nextInt(1000))
+                        .append('.').append(TLDS[random.nextInt(TLDS.length)]);
+            }
+            return host.toString();
+        }
+
+        private int pick(final double[] cdf) {
+            final int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(cdf.length - 1, (index >= 0) ? index : -index - 1);
+        }
+
+    }
+
+    public static final class Builder {
+
+        private long seed = 42L;
+        private final Map<String, Double> schemes = new LinkedHashMap<String, Double>();
+        private int distinctHosts = 10000;
+        private double zipfExponent = 1.0;
+        private double idnShare = 0.02;
+        private double ipv4Share = 0.03;
+        private double ipv6Share = 0.01;
+        private int maxPathDepth = 5;
+        private int maxQueryParameters = 6;
+        private double percentEncodingDensity = 0.05;
+        private double invalidRate = 0.0;
+        private double relativeShare = 0.0;
+        private double fragmentShare = 0.1;
+
+        private Builder() {}
+
+        public Builder withSeed(final long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Adds a scheme with a relative weight. Supported schemes are http, https, ftp,
+         * ws, wss, file and mailto. Defaults to 70% https, 25% http, 3% ftp and 2% mailto.
+         */
+        public Builder withScheme(final String scheme, final double weight) {
+            if (scheme == null) {
+                throw new NullPointerException("scheme");
+            }
+            if (!Arrays.asList("http", "https", "ftp", "ws", "wss", "file", "mailto").contains(scheme)) {
+                throw new IllegalArgumentException("Unsupported scheme: " + scheme);
+            }
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            schemes.put(scheme, weight);
+            return this;
+        }
+
+        /**
+         * Sets the number of distinct hosts and the exponent of their Zipf distribution.
+         * Higher exponents concentrate URLs in fewer hosts; 0 spreads them evenly.
+         */
+        public Builder withHosts(final int distinctHosts, final double zipfExponent) {
+            if (distinctHosts < 1) {
+                throw new IllegalArgumentException("distinctHosts must be positive");
+            }
+            if (zipfExponent < 0) {
+                throw new IllegalArgumentException("zipfExponent must not be negative");
+            }
+            this.distinctHosts = distinctHosts;
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
+
+        /**
+         * Sets the share of distinct hosts that are IDNs, IPv4 and IPv6 addresses.
+         */
+        public Builder withHostShares(final double idnShare, final double ipv4Share, final double ipv6Share) {
+            checkShare(idnShare, "idnShare");
+            checkShare(ipv4Share, "ipv4Share");
+            checkShare(ipv6Share, "ipv6Share");
+            if (idnShare + ipv4Share + ipv6Share > 1) {
+                throw new IllegalArgumentException("Host shares add up to more than 1");
+            }
+            this.idnShare = idnShare;
+            this.ipv4Share = ipv4Share;
+            this.ipv6Share = ipv6Share;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of path segments. Depth is uniform between 0 and this value.
+         */
+        public Builder withMaxPathDepth(final int maxPathDepth) {
+            if (maxPathDepth < 0) {
+                throw new IllegalArgumentException("maxPathDepth must not be negative");
+            }
+            this.maxPathDepth = maxPathDepth;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of query parameters. The count is uniform between 0
+         * (no query) and this value.
+         */
+        public Builder withMaxQueryParameters(final int maxQueryParameters) {
+            if (maxQueryParameters < 0) {
+                throw new IllegalArgumentException("maxQueryParameters must not be negative");
+            }
+            this.maxQueryParameters = maxQueryParameters;
+            return this;
+        }
+
+        /**
+         * Sets the probability of a path segment or query value having characters
+         * that are (or must be) percent-encoded.
+         */
+        public Builder withPercentEncodingDensity(final double density) {
+            checkShare(density, "density");
+            this.percentEncodingDensity = density;
+            return this;
+        }
+
+        /**
+         * Sets the share of inputs that fail to parse.
+         */
+        public Builder withInvalidRate(final double invalidRate) {
+            checkShare(invalidRate, "invalidRate");
+            this.invalidRate = invalidRate;
+            return this;
+        }
+
+        /**
+         * Sets the share of relative references, which need a base URL to be parsed.
+         */
+        public Builder withRelativeShare(final double relativeShare) {
+            checkShare(relativeShare, "relativeShare");
+            this.relativeShare = relativeShare;
+            return this;
+        }
+
+        /**
+         * Sets the share of URLs with a fragment.
+         */
+        public Builder withFragmentShare(final double fragmentShare) {
+            checkShare(fragmentShare, "fragmentShare");
+            this.fragmentShare = fragmentShare;
+            return this;
+        }
+
+        public CorpusGenerator build() {
+            return new CorpusGenerator(this);
+        }
+
+        private static void checkShare(final double share, final String name) {
+            if (share < 0 || share > 1) {
+                throw new IllegalArgumentException(name + " must be between 0 and 1");
+            }
+        }
+
+    }
+
+    /**
+     * Writes a corpus to a file.
+     *
+     * Usage: <code>CorpusGenerator [--seed N] [--hosts N] [--zipf S] [--idn P] [--ipv4 P]
+     * [--ipv6 P] [--path-depth N] [--query-parameters N] [--percent-encoding P]
+     * [--invalid P] [--relative P] [--scheme NAME:WEIGHT]... output-file count</code>
+     */
+    public static void main(final String[] args) throws IOException {
+        final Builder builder = builder();
+        double idn = builder.idnShare;
+        double ipv4 = builder.ipv4Share;
+        double ipv6 = builder.ipv6Share;
+        int hosts = builder.distinctHosts;
+        double zipf = builder.zipfExponent;
+        int i = 0;
+        try {
+            for (; i < args.length - 2; i += 2) {
+                final String option = args[i];
+                final String value = args[i + 1];
+                if ("--seed".equals(option)) {
+                    builder.withSeed(Long.parseLong(value));
+                } else if ("--hosts".equals(option)) {
+                    hosts = Integer.parseInt(value);
+                } else if ("--zipf".equals(option)) {
+                    zipf = Double.parseDouble(value);
+                } else if ("--idn".equals(option)) {
+                    idn = Double.parseDouble(value);
+                } else if ("--ipv4".equals(option)) {
+                    ipv4 = Double.parseDouble(value);
+                } else if ("--ipv6".equals(option)) {
+                    ipv6 = Double.parseDouble(value);
+                } else if ("--path-depth".equals(option)) {
+                    builder.withMaxPathDepth(Integer.parseInt(value));
+                } else if ("--query-parameters".equals(option)) {
+                    builder.withMaxQueryParameters(Integer.parseInt(value));
+                } else if ("--percent-encoding".equals(option)) {
+                    builder.withPercentEncodingDensity(Double.parseDouble(value));
+                } else if ("--invalid".equals(option)) {
+                    builder.withInvalidRate(Double.parseDouble(value));
+                } else if ("--relative".equals(option)) {
+                    builder.withRelativeShare(Double.parseDouble(value));
+                } else if ("--scheme".equals(option)) {
+                    final int colon = value.indexOf(':');
+                    if (colon < 0) {
+                        throw new IllegalArgumentException("Expected NAME:WEIGHT: " + value);
+                    }
+                    builder.withScheme(value.substring(0, colon), Double.parseDouble(value.substring(colon + 1)));
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+            if (args.length - i != 2) {
+                throw new IllegalArgumentException("Expected output file and count");
+            }
+            builder.withHosts(hosts, zipf).withHostShares(idn, ipv4, ipv6);
+            builder.build().write(new File(args[i]), Integer.parseInt(args[i + 1]));
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: CorpusGenerator [--seed N] [--hosts N] [--zipf S] [--idn P] [--ipv4 P] " +
+                    "[--ipv6 P] [--path-depth N] [--query-parameters N] [--percent-encoding P] [--invalid P] " +
+                    "[--relative P] [--scheme NAME:WEIGHT]... output-file count");
+            System.exit(2);
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.FormURLEncodedParser;
+import io.mola.galimatias.FormURLEncodedReader;
+import io.mola.galimatias.FormURLEncodedWriter;
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.NameValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serialization of <code>application/x-www-form-urlencoded</code>
+ * bodies, both through {@link FormURLEncodedParser} and the streaming
+ * {@link FormURLEncodedReader} and {@link FormURLEncodedWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormURLEncodedBenchmark {
+
+    @Param({ "4", "64" })
+    public int pairs;
+
+    private String body;
+    private ByteBuffer bodyBytes;
+    private List<NameValue> nameValues;
+    private FormURLEncodedReader reader;
+    private FormURLEncodedWriter writer;
+    private StringBuilder output;
+    private final LengthVisitor visitor = new LengthVisitor();
+
+    @Setup
+    public void setup() {
+        body = Queries.formBody(pairs);
+        bodyBytes = ByteBuffer.wrap(body.getBytes(Charset.forName("UTF-8")));
+        nameValues = FormURLEncodedParser.parse(body);
+        reader = FormURLEncodedReader.create();
+        writer = FormURLEncodedWriter.create();
+        output = new StringBuilder(body.length() * 2);
+    }
+
+    @Benchmark
+    public List<NameValue> parse() {
+        return FormURLEncodedParser.parse(body);
+    }
+
+    @Benchmark
+    public String encode() {
+        return FormURLEncodedParser.encode(nameValues);
+    }
+
+    @Benchmark
+    public int readerParse() throws GalimatiasParseException {
+        visitor.length = 0;
+        reader.parse(bodyBytes.duplicate(), visitor);
+        return visitor.length;
+    }
+
+    @Benchmark
+    public int writerWrite() throws IOException {
+        output.setLength(0);
+        writer.write(nameValues, output);
+        return output.length();
+    }
+
+    private static final class LengthVisitor implements FormURLEncodedReader.Visitor {
+
+        int length;
+
+        @Override
+        public void visit(final String name, final String value) {
+            length += name.length() + value.length();
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.Host;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Host#parseHost(String)} for each kind of host.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostBenchmark {
+
+    private static final String[] DOMAINS = {
+            "example.com", "www.example.org", "static.cdn.example.net", "LOCALHOST",
+            "a.b.c.d.e.example.co.uk", "x%41mple.com"
+    };
+
+    private static final String[] IPV4 = {
+            "192.168.1.20", "10.0.0.1", "0x7f.1", "127.1", "255.255.255.255", "0300.0250.0.1"
+    };
+
+    private static final String[] IPV6 = {
+            "[2001:db8::1]", "[::1]", "[fe80::1:2:3:4]", "[2001:0db8:85a3:0000:0000:8a2e:0370:7334]",
+            "[::ffff:192.168.1.1]", "[1:2:3:4:5:6:7:8]"
+    };
+
+    private static final String[] IDN = {
+            "bücher.example", "例え.テスト", "xn--bcher-kva.example",
+            "пример.рф", "FAßE.example", "ｅｘａｍｐｌｅ.com"
+    };
+
+    @Param({ "domain", "ipv4", "ipv6", "idn" })
+    public String kind;
+
+    private String[] inputs;
+    private int index;
+
+    @Setup
+    public void setup() throws GalimatiasParseException {
+        if ("domain".equals(kind)) {
+            inputs = DOMAINS;
+        } else if ("ipv4".equals(kind)) {
+            inputs = IPV4;
+        } else if ("ipv6".equals(kind)) {
+            inputs = IPV6;
+        } else if ("idn".equals(kind)) {
+            inputs = IDN;
+        } else {
+            throw new IllegalArgumentException("Unknown host kind: " + kind);
+        }
+        for (final String input : inputs) {
+            Host.parseHost(input);
+        }
+    }
+
+    @Benchmark
+    public Host parseHost() throws GalimatiasParseException {
+        final int i = index;
+        index = (i + 1 == inputs.length) ? 0 : i + 1;
+        return Host.parseHost(inputs[i]);
+    }
+
+}
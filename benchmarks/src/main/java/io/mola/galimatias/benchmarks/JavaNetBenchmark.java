@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares galimatias with {@link java.net.URI} and {@link java.net.URL}.
+ * Benchmark names are the operation followed by the implementation
+ * (<code>Galimatias</code>, <code>JavaURI</code> or <code>JavaURL</code>),
+ * as grouped by {@link ComparisonReport}.
+ *
+ * Only inputs accepted by all three are used. java.net.URI rejects many
+ * URLs found in the wild (spaces, non-ASCII characters...), so this subset
+ * is biased towards simple URLs.
+ *
+ * {@link java.net.URL#equals(Object)} and {@link java.net.URL#hashCode()}
+ * are not measured: they resolve host names, so they would measure DNS.
+ * Note that {@link java.net.URI} caches its string form and hash code,
+ * while galimatias computes them on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaNetBenchmark {
+
+    @Param({ Corpus.WHATWG, Corpus.SYNTHETIC })
+    public String corpus;
+
+    private String[] inputs;
+    private URL[] urls;
+    private URL[] urlCopies;
+    private URI[] uris;
+    private URI[] uriCopies;
+    private java.net.URL[] javaURLs;
+
+    // Relative references and their bases
+    private String[] references;
+    private URL[] bases;
+    private URI[] baseURIs;
+    private java.net.URL[] baseJavaURLs;
+
+    // Directories of each URL, to relativize against
+    private URL[] directories;
+    private URI[] directoryURIs;
+
+    private int index;
+    private int referenceIndex;
+
+    @Setup
+    public void setup() throws GalimatiasParseException, URISyntaxException, MalformedURLException {
+        final Corpus all = Corpus.load(corpus);
+
+        final List<String> accepted = new ArrayList<String>();
+        final List<String> acceptedReferences = new ArrayList<String>();
+        final List<URL> acceptedBases = new ArrayList<URL>();
+        final Corpus absolute = all.absolute();
+        for (int i = 0; i < absolute.size(); i++) {
+            if (acceptedByAll(absolute.input(i))) {
+                accepted.add(absolute.input(i));
+            }
+        }
+        final Corpus relative = all.relative();
+        for (int i = 0; i < relative.size(); i++) {
+            final String input = relative.input(i);
+            final URL base = relative.base(i);
+            if (acceptedByAll(base.toString()) && acceptedByAll(URL.parse(base, input).toString()) &&
+                    isValidURIReference(input)) {
+                acceptedReferences.add(input);
+                acceptedBases.add(base);
+            }
+        }
+        if (accepted.isEmpty() || acceptedReferences.isEmpty()) {
+            throw new IllegalStateException("No inputs accepted by every implementation in " + corpus);
+        }
+
+        inputs = accepted.toArray(new String[accepted.size()]);
+        urls = new URL[inputs.length];
+        urlCopies = new URL[inputs.length];
+        uris = new URI[inputs.length];
+        uriCopies = new URI[inputs.length];
+        javaURLs = new java.net.URL[inputs.length];
+        directories = new URL[inputs.length];
+        directoryURIs = new URI[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            urls[i] = URL.parse(inputs[i]);
+            urlCopies[i] = URL.parse(inputs[i]);
+            uris[i] = new URI(inputs[i]);
+            uriCopies[i] = new URI(inputs[i]);
+            javaURLs[i] = new java.net.URL(inputs[i]);
+            directories[i] = urls[i].isHierarchical() ? urls[i].resolve(".") : urls[i];
+            directoryURIs[i] = new URI(directories[i].toString());
+        }
+
+        references = acceptedReferences.toArray(new String[acceptedReferences.size()]);
+        bases = acceptedBases.toArray(new URL[acceptedBases.size()]);
+        baseURIs = new URI[bases.length];
+        baseJavaURLs = new java.net.URL[bases.length];
+        for (int i = 0; i < bases.length; i++) {
+            baseURIs[i] = new URI(bases[i].toString());
+            baseJavaURLs[i] = new java.net.URL(bases[i].toString());
+        }
+    }
+
+    private static boolean acceptedByAll(final String input) {
+        try {
+            final URL url = URL.parse(input);
+            url.toJavaURI();
+            new java.net.URL(input);
+            return new URI(input).isAbsolute();
+        } catch (GalimatiasParseException ex) {
+            return false;
+        } catch (URISyntaxException ex) {
+            return false;
+        } catch (MalformedURLException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isValidURIReference(final String input) {
+        try {
+            new URI(input);
+            return true;
+        } catch (URISyntaxException ex) {
+            return false;
+        }
+    }
+
+    private int next() {
+        final int i = index;
+        index = (i + 1 == inputs.length) ? 0 : i + 1;
+        return i;
+    }
+
+    private int nextReference() {
+        final int i = referenceIndex;
+        referenceIndex = (i + 1 == references.length) ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public URL parseGalimatias() throws GalimatiasParseException {
+        return URL.parse(inputs[next()]);
+    }
+
+    @Benchmark
+    public URI parseJavaURI() throws URISyntaxException {
+        return new URI(inputs[next()]);
+    }
+
+    @Benchmark
+    public java.net.URL parseJavaURL() throws MalformedURLException {
+        return new java.net.URL(inputs[next()]);
+    }
+
+    @Benchmark
+    public String toStringGalimatias() {
+        return urls[next()].toString();
+    }
+
+    @Benchmark
+    public String toStringJavaURI() {
+        return uris[next()].toString();
+    }
+
+    @Benchmark
+    public String toStringJavaURL() {
+        return javaURLs[next()].toString();
+    }
+
+    @Benchmark
+    public URL resolveGalimatias() throws GalimatiasParseException {
+        final int i = nextReference();
+        return bases[i].resolve(references[i]);
+    }
+
+    @Benchmark
+    public URI resolveJavaURI() {
+        final int i = nextReference();
+        return baseURIs[i].resolve(references[i]);
+    }
+
+    @Benchmark
+    public java.net.URL resolveJavaURL() throws MalformedURLException {
+        final int i = nextReference();
+        return new java.net.URL(baseJavaURLs[i], references[i]);
+    }
+
+    @Benchmark
+    public String relativizeGalimatias() {
+        final int i = next();
+        return directories[i].relativize(urls[i]);
+    }
+
+    @Benchmark
+    public URI relativizeJavaURI() {
+        final int i = next();
+        return directoryURIs[i].relativize(uris[i]);
+    }
+
+    @Benchmark
+    public boolean equalsGalimatias() {
+        final int i = next();
+        return urls[i].equals(urlCopies[i]);
+    }
+
+    @Benchmark
+    public boolean equalsJavaURI() {
+        final int i = next();
+        return uris[i].equals(uriCopies[i]);
+    }
+
+    @Benchmark
+    public int hashCodeGalimatias() {
+        return urls[next()].hashCode();
+    }
+
+    @Benchmark
+    public int hashCodeJavaURI() {
+        return uris[next()].hashCode();
+    }
+
+    @Benchmark
+    public URI toJavaURIGalimatias() throws URISyntaxException {
+        return urls[next()].toJavaURI();
+    }
+
+    @Benchmark
+    public URL fromJavaURIGalimatias() {
+        return URL.fromJavaURI(uris[next()]);
+    }
+
+    @Benchmark
+    public java.net.URL toJavaURLGalimatias() throws MalformedURLException {
+        return urls[next()].toJavaURL();
+    }
+
+    @Benchmark
+    public URL fromJavaURLGalimatias() {
+        return URL.fromJavaURL(javaURLs[next()]);
+    }
+
+}
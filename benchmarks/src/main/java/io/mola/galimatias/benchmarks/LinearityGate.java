@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks that parsing time grows linearly with the input size for every kind
+ * of {@link AdversarialBenchmark} input, exiting with a non-zero status otherwise.
+ *
+ * For each kind, it times inputs of {@link #SIZE} and {@link #GROWTH} times
+ * {@link #SIZE} repetitions. Linear parsing takes about {@link #GROWTH} times
+ * longer for the larger input, and quadratic parsing {@link #GROWTH} squared
+ * times longer. The gate fails above {@link #MAX_RATIO}, halfway between both,
+ * which leaves room for cache effects and timer noise.
+ *
+ * Usage: <code>LinearityGate</code>
+ */
+public final class LinearityGate {
+
+    static final int SIZE = 4096;
+    static final int GROWTH = 8;
+    static final double MAX_RATIO = GROWTH * 4.0;
+
+    static final int WARMUP_ROUNDS = 20;
+    static final int MEASUREMENT_ROUNDS = 10;
+
+    private static volatile Object sink;
+
+    private final URL base;
+
+    LinearityGate() throws GalimatiasParseException {
+        base = URL.parse(Corpus.BASE);
+    }
+
+    /**
+     * @return Ratio between the time to parse the large and the small input.
+     */
+    double ratio(final String kind) {
+        final String small = AdversarialBenchmark.input(kind, SIZE);
+        final String large = AdversarialBenchmark.input(kind, SIZE * GROWTH);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            time(small);
+            time(large);
+        }
+        // The minimum of several rounds filters out GC pauses and other interruptions
+        long bestSmall = Long.MAX_VALUE;
+        long bestLarge = Long.MAX_VALUE;
+        for (int round = 0; round < MEASUREMENT_ROUNDS; round++) {
+            bestSmall = Math.min(bestSmall, time(small));
+            bestLarge = Math.min(bestLarge, time(large));
+        }
+        return (double) bestLarge / Math.max(1, bestSmall);
+    }
+
+    private long time(final String input) {
+        final long start = System.nanoTime();
+        sink = AdversarialBenchmark.parse(base, input);
+        return System.nanoTime() - start;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length > 0) {
+            System.err.println("Usage: LinearityGate");
+            System.exit(2);
+        }
+        final LinearityGate gate = new LinearityGate();
+        final List<String> violations = new ArrayList<String>();
+        System.out.printf(Locale.ENGLISH, "# Time ratio for %dx input (linear: %d, limit: %.0f)%n",
+                GROWTH, GROWTH, MAX_RATIO);
+        for (final String kind : AdversarialBenchmark.KINDS) {
+            final double ratio = gate.ratio(kind);
+            System.out.printf(Locale.ENGLISH, "%-14s %6.1f%n", kind, ratio);
+            if (ratio > MAX_RATIO) {
+                violations.add(String.format(Locale.ENGLISH, "%s: %.1f times slower for %d times the input",
+                        kind, ratio, GROWTH));
+            }
+        }
+        if (!violations.isEmpty()) {
+            System.err.println("Superlinear parsing time:");
+            for (final String violation : violations) {
+                System.err.println("  " + violation);
+            }
+            System.exit(1);
+        }
+    }
+
+}
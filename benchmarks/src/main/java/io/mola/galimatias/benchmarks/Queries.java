@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+/**
+ * Form bodies and queries with a given number of pairs.
+ */
+final class Queries {
+
+    private static final String[] NAMES = {
+            "q", "page", "utm_source", "lang", "id", "sort", "filter[]", "sid"
+    };
+
+    private static final String[] VALUES = {
+            "galimatias", "2", "newsletter", "en-US", "12345", "date desc", "a%26b", "caf%C3%A9+au+lait"
+    };
+
+    private Queries() {}
+
+    /**
+     * Names of a body of <code>pairs</code> pairs, some of them repeated.
+     */
+    static String[] names(final int pairs) {
+        final String[] names = new String[pairs];
+        for (int i = 0; i < pairs; i++) {
+            names[i] = name(i);
+        }
+        return names;
+    }
+
+    static String formBody(final int pairs) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs; i++) {
+            if (i > 0) {
+                sb.append('&');
+            }
+            sb.append(name(i)).append('=').append(VALUES[i % VALUES.length]);
+        }
+        return sb.toString();
+    }
+
+    private static String name(final int i) {
+        final String name = NAMES[i % NAMES.length];
+        return (i < NAMES.length * 2) ? name : name + (i / NAMES.length);
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.Host;
+import io.mola.galimatias.URL;
+import io.mola.galimatias.canonicalize.CachingCanonicalizer;
+import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of concurrent parsing and canonicalization. All threads share
+ * the corpus and the canonicalizers, as they would in a server, and each
+ * starts at a different position of the corpus.
+ *
+ * Run it with increasing thread counts (<code>-t</code>) or through
+ * {@link ScalabilityReport}, which does so and computes the speedup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalabilityBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({ Corpus.SYNTHETIC })
+        public String corpus;
+
+        String[] inputs;
+        URL[] bases;
+        URL[] urls;
+        String[] hosts;
+        URLCanonicalizer canonicalizer;
+        URLCanonicalizer cachingCanonicalizer;
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Setup
+        public void setup() {
+            final Corpus all = Corpus.load(corpus);
+            inputs = new String[all.size()];
+            bases = new URL[all.size()];
+            for (int i = 0; i < all.size(); i++) {
+                inputs[i] = all.input(i);
+                bases[i] = all.base(i);
+            }
+            urls = all.parse();
+            hosts = new String[urls.length];
+            int hostCount = 0;
+            for (final URL url : urls) {
+                if (url.host() != null) {
+                    hosts[hostCount++] = url.host().toHostString();
+                }
+            }
+            final String[] trimmed = new String[hostCount];
+            System.arraycopy(hosts, 0, trimmed, 0, hostCount);
+            hosts = trimmed;
+            canonicalizer = new RFC3986Canonicalizer();
+            cachingCanonicalizer = CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+                    .maximumSize(urls.length)
+                    .build();
+        }
+
+        int nextStart(final int length) {
+            return (int) ((long) threads.getAndIncrement() * 7919 % length);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int index;
+
+        @Setup
+        public void setup(final Shared shared) {
+            index = shared.nextStart(shared.urls.length);
+        }
+
+        int next(final int length) {
+            final int i = (index < length) ? index : 0;
+            index = i + 1;
+            return i;
+        }
+
+    }
+
+    @Benchmark
+    public URL parse(final Shared shared, final Cursor cursor) throws GalimatiasParseException {
+        final int i = cursor.next(shared.inputs.length);
+        return URL.parse(shared.bases[i], shared.inputs[i]);
+    }
+
+    @Benchmark
+    public Host parseHost(final Shared shared, final Cursor cursor) throws GalimatiasParseException {
+        return Host.parseHost(shared.hosts[cursor.next(shared.hosts.length)]);
+    }
+
+    @Benchmark
+    public URL canonicalize(final Shared shared, final Cursor cursor) throws GalimatiasParseException {
+        return shared.canonicalizer.canonicalize(shared.urls[cursor.next(shared.urls.length)]);
+    }
+
+    @Benchmark
+    public URL canonicalizeCaching(final Shared shared, final Cursor cursor) throws GalimatiasParseException {
+        return shared.cachingCanonicalizer.canonicalize(shared.urls[cursor.next(shared.urls.length)]);
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs {@link ScalabilityBenchmark} at increasing thread counts and prints
+ * throughput, speedup and efficiency (speedup divided by threads) for each
+ * benchmark.
+ *
+ * JMH profilers can be added with <code>--prof</code>; their output is
+ * printed after the table for each thread count. <code>stack</code> shows
+ * the share of time threads spend blocked on monitors (lock contention), and
+ * on Linux <code>perfnorm</code> shows cache misses per operation, which grow
+ * with the thread count under false sharing.
+ *
+ * Usage: <code>ScalabilityReport [--threads 1,2,4,...] [--prof profiler]... [benchmark-regex]</code>.
+ * By default, thread counts are powers of two up to the number of processors.
+ */
+public final class ScalabilityReport {
+
+    public static void main(final String[] args) throws RunnerException {
+        List<Integer> threadCounts = defaultThreadCounts(Runtime.getRuntime().availableProcessors());
+        final List<String> profilers = new ArrayList<String>();
+        String include = ScalabilityBenchmark.class.getName();
+        for (int i = 0; i < args.length; i++) {
+            if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                threadCounts = new ArrayList<Integer>();
+                for (final String count : args[++i].split(",")) {
+                    threadCounts.add(Integer.parseInt(count.trim()));
+                }
+            } else if ("--prof".equals(args[i]) && i + 1 < args.length) {
+                profilers.add(args[++i]);
+            } else if (args[i].startsWith("--")) {
+                System.err.println("Usage: ScalabilityReport [--threads 1,2,4,...] [--prof profiler]... [benchmark-regex]");
+                System.exit(2);
+            } else {
+                include = ScalabilityBenchmark.class.getName() + "\\." + args[i];
+            }
+        }
+
+        // benchmark -> threads -> ops/us
+        final Map<String, Map<Integer, Double>> scores = new TreeMap<String, Map<Integer, Double>>();
+        final StringBuilder profiles = new StringBuilder();
+        for (final int threads : threadCounts) {
+            final ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads);
+            for (final String profiler : profilers) {
+                options.addProfiler(profiler);
+            }
+            for (final RunResult result : new Runner(options.build()).run()) {
+                final String benchmark = result.getParams().getBenchmark();
+                final String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+                Map<Integer, Double> byThreads = scores.get(name);
+                if (byThreads == null) {
+                    byThreads = new TreeMap<Integer, Double>();
+                    scores.put(name, byThreads);
+                }
+                byThreads.put(threads, result.getPrimaryResult().getScore());
+                for (final Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                    final String info = secondary.getValue().extendedInfo();
+                    if (info != null && !info.trim().isEmpty()) {
+                        profiles.append(String.format(Locale.ENGLISH, "%n== %s, %d threads, %s%n%s%n",
+                                name, threads, secondary.getKey(), info));
+                    }
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.printf(Locale.ENGLISH, "%-22s %8s %12s %9s %11s%n", "Benchmark", "Threads", "ops/us", "Speedup", "Efficiency");
+        for (final Map.Entry<String, Map<Integer, Double>> entry : scores.entrySet()) {
+            // Relative to the lowest thread count, usually 1
+            final int baseThreads = entry.getValue().keySet().iterator().next();
+            final double baseScore = entry.getValue().get(baseThreads);
+            for (final Map.Entry<Integer, Double> score : entry.getValue().entrySet()) {
+                final double speedup = score.getValue() / baseScore;
+                System.out.printf(Locale.ENGLISH, "%-22s %8d %12.3f %9.2f %10.0f%%%n", entry.getKey(), score.getKey(),
+                        score.getValue(), speedup, 100 * speedup * baseThreads / score.getKey());
+            }
+        }
+        System.out.print(profiles);
+    }
+
+    static List<Integer> defaultThreadCounts(final int processors) {
+        final List<Integer> counts = new ArrayList<Integer>();
+        for (int threads = 1; threads < processors; threads <<= 1) {
+            counts.add(threads);
+        }
+        counts.add(processors);
+        return counts;
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.benchmarks;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.NameValue;
+import io.mola.galimatias.URL;
+import io.mola.galimatias.URLSearchParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query parameter access through {@link URLSearchParameters} and
+ * {@link URL#queryParameter(String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchParametersBenchmark {
+
+    @Param({ "4", "32" })
+    public int pairs;
+
+    private String input;
+    private URL url;
+    private String[] names;
+    private int index;
+
+    @Setup
+    public void setup() throws GalimatiasParseException {
+        input = "http://example.com/search?" + Queries.formBody(pairs);
+        url = URL.parse(input);
+        names = Queries.names(pairs);
+    }
+
+    /**
+     * Parses the URL and looks up one parameter, so the cost of building the
+     * parameter index is included.
+     */
+    @Benchmark
+    public String parseAndGet() throws GalimatiasParseException {
+        return URL.parse(input).searchParameters().get(nextName());
+    }
+
+    @Benchmark
+    public String get() {
+        return url.searchParameters().get(nextName());
+    }
+
+    @Benchmark
+    public List<String> getAll() {
+        return url.searchParameters().getAll(nextName());
+    }
+
+    @Benchmark
+    public String queryParameter() {
+        return url.queryParameter(nextName());
+    }
+
+    @Benchmark
+    public int iterate() {
+        int length = 0;
+        for (final NameValue nv : url.searchParameters()) {
+            length += nv.value().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public URL builderSet() throws GalimatiasParseException {
+        return url.searchParameters().toBuilder()
+                .set(nextName(), "changed")
+                .applyTo(url);
+    }
+
+    private String nextName() {
+        final int i = index;
+        index = (i + 1 == names.length) ? 0 : i + 1;
+        return names[i];
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A canonicalizer run by <code>CombinedCanonicalizer</code>.
+ */
+@Name(CanonicalizeEvent.NAME)
+@Label("URL Canonicalization")
+@Category("galimatias")
+@Description("URL canonicalized by a canonicalizer of a CombinedCanonicalizer")
+@Threshold("1 ms")
+public final class CanonicalizeEvent extends Event {
+
+    public static final String NAME = "io.mola.galimatias.Canonicalize";
+
+    @Label("Canonicalizer Class")
+    Class<?> canonicalizerClass;
+
+    @Label("Canonicalizer")
+    @Description("String representation of the canonicalizer. Fused built-in canonicalizers list their members")
+    String canonicalizer;
+
+    @Label("Success")
+    boolean success;
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * An IDNA conversion of a domain, as run by <code>URLUtils.domainToASCII</code>
+ * and <code>URLUtils.domainToUnicode</code>.
+ */
+@Name(IDNAEvent.NAME)
+@Label("IDNA Conversion")
+@Category("galimatias")
+@Description("Domain converted to ASCII or Unicode with IDNA")
+@Threshold("1 ms")
+public final class IDNAEvent extends Event {
+
+    public static final String NAME = "io.mola.galimatias.IDNA";
+
+    @Label("To ASCII")
+    @Description("True for name to ASCII, false for name to Unicode")
+    boolean toASCII;
+
+    @Label("Input Length")
+    @Description("Length of the domain, in UTF-16 code units")
+    int inputLength;
+
+    @Label("Success")
+    boolean success;
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.jfr;
+
+import io.mola.galimatias.ParseMetrics;
+import io.mola.galimatias.Tracer;
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+import jdk.jfr.EventType;
+
+/**
+ * Emits galimatias operations as Java Flight Recorder events:
+ * {@link URLParseEvent}, {@link IDNAEvent}, {@link CanonicalizeEvent} and
+ * {@link FormURLEncodedParseEvent}.
+ *
+ * Install it once at startup with {@link #install()}. Events are only created
+ * while a recording has them enabled, and only committed when they last longer
+ * than their <code>threshold</code> setting (1 ms by default).
+ */
+public final class JFRTracer extends Tracer {
+
+    private static final JFRTracer INSTANCE = new JFRTracer();
+
+    private static final EventType PARSE = EventType.getEventType(URLParseEvent.class);
+    private static final EventType IDNA = EventType.getEventType(IDNAEvent.class);
+    private static final EventType CANONICALIZE = EventType.getEventType(CanonicalizeEvent.class);
+    private static final EventType FORM_URL_ENCODED_PARSE = EventType.getEventType(FormURLEncodedParseEvent.class);
+
+    private JFRTracer() {
+
+    }
+
+    /**
+     * Installs the JFR tracer as the galimatias {@link Tracer}, replacing any other.
+     */
+    public static void install() {
+        Tracer.install(INSTANCE);
+    }
+
+    /**
+     * Uninstalls the JFR tracer, if it is installed.
+     */
+    public static void uninstall() {
+        if (Tracer.get() == INSTANCE) {
+            Tracer.install(null);
+        }
+    }
+
+    @Override
+    public Object beginParse() {
+        if (!PARSE.isEnabled()) {
+            return null;
+        }
+        final URLParseEvent event = new URLParseEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endParse(final Object token, final int inputLength, final ParseMetrics.Outcome outcome) {
+        final URLParseEvent event = (URLParseEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputLength = inputLength;
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginIDNA() {
+        if (!IDNA.isEnabled()) {
+            return null;
+        }
+        final IDNAEvent event = new IDNAEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endIDNA(final Object token, final boolean toASCII, final int inputLength, final boolean success) {
+        final IDNAEvent event = (IDNAEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.toASCII = toASCII;
+            event.inputLength = inputLength;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginCanonicalize() {
+        if (!CANONICALIZE.isEnabled()) {
+            return null;
+        }
+        final CanonicalizeEvent event = new CanonicalizeEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endCanonicalize(final Object token, final URLCanonicalizer canonicalizer, final boolean success) {
+        final CanonicalizeEvent event = (CanonicalizeEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.canonicalizerClass = canonicalizer.getClass();
+            event.canonicalizer = canonicalizer.toString();
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginFormURLEncodedParse() {
+        if (!FORM_URL_ENCODED_PARSE.isEnabled()) {
+            return null;
+        }
+        final FormURLEncodedParseEvent event = new FormURLEncodedParseEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endFormURLEncodedParse(final Object token, final int inputLength, final int pairs) {
+        final FormURLEncodedParseEvent event = (FormURLEncodedParseEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputLength = inputLength;
+            event.pairs = pairs;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.jfr;
+
+import io.mola.galimatias.FormURLEncodedParser;
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+import io.mola.galimatias.canonicalize.CombinedCanonicalizer;
+import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class JFRTracerTest {
+
+    @Before
+    public void install() {
+        JFRTracer.install();
+    }
+
+    @After
+    public void uninstall() {
+        JFRTracer.uninstall();
+    }
+
+    @Test
+    public void events() throws Exception {
+        final List<RecordedEvent> events = record(Duration.ZERO);
+
+        final RecordedEvent parse = find(events, URLParseEvent.NAME);
+        assertThat(parse.getInt("inputLength")).isEqualTo(19);
+        assertThat(parse.getString("outcome")).isEqualTo("SUCCESS");
+
+        final RecordedEvent idna = find(events, IDNAEvent.NAME);
+        assertThat(idna.getBoolean("toASCII")).isTrue();
+        assertThat(idna.getInt("inputLength")).isEqualTo(11);
+        assertThat(idna.getBoolean("success")).isTrue();
+
+        final RecordedEvent canonicalize = find(events, CanonicalizeEvent.NAME);
+        assertThat(canonicalize.getClass("canonicalizerClass").getName())
+                .isEqualTo(RFC3986Canonicalizer.class.getName());
+        assertThat(canonicalize.getBoolean("success")).isTrue();
+
+        final RecordedEvent form = find(events, FormURLEncodedParseEvent.NAME);
+        assertThat(form.getInt("inputLength")).isEqualTo(7);
+        assertThat(form.getInt("pairs")).isEqualTo(2);
+    }
+
+    @Test
+    public void threshold() throws Exception {
+        assertThat(record(Duration.ofHours(1))).isEmpty();
+    }
+
+    private static List<RecordedEvent> record(final Duration threshold)
+            throws IOException, GalimatiasParseException {
+        final File file = File.createTempFile("galimatias", ".jfr");
+        try {
+            final Recording recording = new Recording();
+            try {
+                recording.enable(URLParseEvent.class).withThreshold(threshold);
+                recording.enable(IDNAEvent.class).withThreshold(threshold);
+                recording.enable(CanonicalizeEvent.class).withThreshold(threshold);
+                recording.enable(FormURLEncodedParseEvent.class).withThreshold(threshold);
+                recording.start();
+                final URL url = URL.parse("http://example.com/");
+                new CombinedCanonicalizer(new RFC3986Canonicalizer()).canonicalize(url);
+                FormURLEncodedParser.parse("a=1&b=2");
+                recording.stop();
+                recording.dump(file.toPath());
+            } finally {
+                recording.close();
+            }
+            final List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+            for (final RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().startsWith("io.mola.galimatias.")) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static RecordedEvent find(final List<RecordedEvent> events, final String name) {
+        for (final RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + name + " event in " + events);
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+/**
+ * Canonical forms that a {@link URL} can be known to satisfy.
+ *
+ * Built-in canonicalizers record the form of their output, so that
+ * canonicalizing it again returns the same instance right away.
+ *
+ * @see URL#isCanonical(CanonicalForm)
+ */
+public enum CanonicalForm {
+
+    /**
+     * Output of {@link io.mola.galimatias.canonicalize.RFC3986Canonicalizer}.
+     */
+    RFC3986,
+
+    /**
+     * Output of {@link io.mola.galimatias.canonicalize.RFC2396Canonicalizer}.
+     */
+    RFC2396,
+
+    /**
+     * Output of {@link io.mola.galimatias.canonicalize.DecodeUnreservedCanonicalizer}.
+     */
+    UNRESERVED_DECODED
+
+}
@@ -21,7 +21,7 @@
  */
 package io.mola.galimatias;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
@@ -31,6 +31,9 @@ import java.util.List;
  *
  * This class supersedes @{link java.net.URLEncoder}.
  *
+ * For large inputs, see {@link FormURLEncodedReader} and {@link FormURLEncodedWriter}, which
+ * parse and serialize as streams.
+ *
  * @see <a href="https://url.spec.whatwg.org/#application/x-www-form-urlencoded-0">https://url.spec.whatwg.org/#application/x-www-form-urlencoded-0</a>
  */
 public final class FormURLEncodedParser {
@@ -55,7 +58,7 @@ public final class FormURLEncodedParser {
      * @param input
      */
     public static List<NameValue> parse(final String input) {
-        return parse(input, Charset.forName("UTF-8"));
+        return parse(input, URLUtils.UTF_8);
     }
 
     /**
@@ -69,8 +72,6 @@ public final class FormURLEncodedParser {
      *                such restrictions.
      */
     public static List<NameValue> parse(final String input, final Charset charset) {
-        final boolean isIndex = false;
-
         if (input == null) {
             throw new NullPointerException("input");
         }
@@ -78,6 +79,25 @@ public final class FormURLEncodedParser {
             throw new NullPointerException("charset");
         }
 
+        final Tracer tracer = Tracer.get();
+        if (tracer == null) {
+            return parsePairs(input, charset);
+        }
+        final Object event = tracer.beginFormURLEncodedParse();
+        List<NameValue> pairs = null;
+        try {
+            pairs = parsePairs(input, charset);
+            return pairs;
+        } finally {
+            if (event != null) {
+                tracer.endFormURLEncodedParse(event, input.length(), (pairs == null) ? -1 : pairs.size());
+            }
+        }
+    }
+
+    private static List<NameValue> parsePairs(final String input, final Charset charset) {
+        final boolean isIndex = false;
+
         //TODO: Encoding stuff is not here because we get Strings instead of bytes
 
         // 3. Let sequences be the result of splitting input on `&`.
@@ -151,35 +171,6 @@ public final class FormURLEncodedParser {
         return pairs;
     }
 
-    private static String serialize(ByteBuffer bytes) {
-        if (bytes == null) {
-            throw new NullPointerException("bytes");
-        }
-        return serialize(bytes.array(), bytes.arrayOffset(), bytes.limit());
-    }
-
-    /**
-     * Implements the application/x-www-form-urlencoded byte serializer.
-     */
-    private static String serialize(final byte[] bytes, final int offset, final int length) {
-        if (bytes == null) {
-            throw new NullPointerException("bytes");
-        }
-        final StringBuilder sb = new StringBuilder(length);
-        for (int i = offset; i < offset + length; i++) {
-            final byte b = bytes[i];
-            if (0x20 == b) {
-                sb.append((char)0x20);
-            } else if (0x2A == b || 0x2D == b || 0x2E == b || (0x30 <= b && b <= 0x39)
-                    || (0x41 <= b && b <= 0x5A) || 0x5F == b || (0x61 <= b && b <= 0x7A)) {
-                sb.appendCodePoint(b);
-            } else {
-                URLUtils.percentEncode(b, sb);
-            }
-        }
-        return sb.toString();
-    }
-
     /**
      * Replacement for {@link java.net.URLEncoder#encode(String, String)}.
      *
@@ -192,7 +183,7 @@ public final class FormURLEncodedParser {
      */
     public static String encode(final String input) {
         // 1. If encoding override is not given, set it to utf-8.
-        return encode(input, Charset.forName("UTF-8"));
+        return encode(input, URLUtils.UTF_8);
     }
 
     /**
@@ -220,7 +211,7 @@ public final class FormURLEncodedParser {
      */
     public static String encode(final List<NameValue> input) {
         // 1. If encoding override is not given, set it to utf-8.
-        return encode(input, Charset.forName("UTF-8"));
+        return encode(input, URLUtils.UTF_8);
     }
 
     /**
@@ -238,32 +229,12 @@ public final class FormURLEncodedParser {
             throw new NullPointerException("charset");
         }
 
-        // 2. Let output be the empty string.
         final StringBuilder sb = new StringBuilder();
-
-        // 3. For each pair in pairs, run these substeps:
-        for (int i = 0; i < input.size(); i++) {
-            final NameValue pair = input.get(i);
-
-            // 1. Let outputPair be a copy of pair.
-            // N/A
-
-            // 2. Replace outputPair's name and value with the result of running encode on them using
-            //    encoding override, respectively.
-            // 3. Replace outputPair's name and value with their serialization.
-            final String outputName = serialize(charset.encode(pair.name()));
-            final String outputValue = serialize(charset.encode(pair.value()));
-
-            // 4. If pair is not the first pair in pairs, append "&" to output.
-            if (i != 0) {
-                sb.append('&');
-            }
-
-            // 5. Append outputPair's name, followed by "=", followed by outputPair's value to output.
-            sb.append(outputName).append('=').append(outputValue);
+        try {
+            new FormURLEncodedWriter(charset, false).write(input, sb);
+        } catch (IOException ex) {
+            throw new RuntimeException("BUG", ex);
         }
-
-        // 4. Return output.
         return sb.toString();
     }
 
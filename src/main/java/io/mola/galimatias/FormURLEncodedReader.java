@@ -0,0 +1,396 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Streaming application/x-www-form-urlencoded parser.
+ *
+ * Unlike {@link FormURLEncodedParser#parse(String)}, it works on bytes and performs the whole
+ * decoding: {@code +} is replaced by a space, percent-encoded bytes are decoded and the result is
+ * decoded with the configured charset, replacing malformed input. Pairs are pushed to a
+ * {@link Visitor} as soon as they are complete, so memory use is bounded by the maximum pair
+ * length, no matter how large the input is.
+ *
+ * Instances reuse their buffers and {@link CharsetDecoder} across calls, so they are
+ * not thread-safe.
+ *
+ * @see <a href="https://url.spec.whatwg.org/#concept-urlencoded-parser">application/x-www-form-urlencoded parser</a>
+ */
+public final class FormURLEncodedReader {
+
+    /**
+     * Receives the decoded name-value pairs, in input order.
+     */
+    public interface Visitor {
+        void visit(String name, String value);
+    }
+
+    public static final int DEFAULT_MAX_PAIRS = 10000;
+    public static final int DEFAULT_MAX_PAIR_LENGTH = 65536;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final CharsetDecoder decoder;
+    private final boolean asciiCompatible;
+    private final int maxPairs;
+    private final int maxPairLength;
+
+    /** Read buffer for streams and channels, allocated on first use. */
+    private byte[] chunk;
+
+    /** Decoded bytes of the current pair: name, then value from {@link #nameEnd}. */
+    private byte[] bytes = new byte[64];
+    private ByteBuffer bytesView = ByteBuffer.wrap(bytes);
+    private char[] chars = new char[64];
+    private CharBuffer charsView = CharBuffer.wrap(chars);
+
+    private Visitor visitor;
+    private long position;
+    private int pairs;
+    private int pairLength;
+    private int length;
+    private int nameEnd;
+    private boolean nonAscii;
+    /** Bytes of an incomplete percent-encoded sequence: 0, 1 ({@code %}) or 2 ({@code %} and a hex digit). */
+    private int pending;
+    private byte pendingHexDigit;
+
+    private FormURLEncodedReader(final Charset charset, final int maxPairs, final int maxPairLength) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final String name = charset.name();
+        this.asciiCompatible = "UTF-8".equals(name) || "US-ASCII".equals(name) || "ISO-8859-1".equals(name);
+        this.maxPairs = maxPairs;
+        this.maxPairLength = maxPairLength;
+    }
+
+    /**
+     * Creates a reader with UTF-8 and default limits.
+     */
+    public static FormURLEncodedReader create() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parses the remaining bytes of a buffer, which is consumed.
+     *
+     * @throws GalimatiasParseException if a limit is exceeded. Pairs before that point have
+     *                                  already been visited.
+     */
+    public void parse(final ByteBuffer input, final Visitor visitor) throws GalimatiasParseException {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        start(visitor);
+        try {
+            if (input.hasArray()) {
+                final int remaining = input.remaining();
+                process(input.array(), input.arrayOffset() + input.position(), remaining);
+                ((Buffer) input).position(input.position() + remaining);
+            } else {
+                final byte[] chunk = chunk();
+                while (input.hasRemaining()) {
+                    final int count = Math.min(chunk.length, input.remaining());
+                    input.get(chunk, 0, count);
+                    process(chunk, 0, count);
+                }
+            }
+            finish();
+        } finally {
+            this.visitor = null;
+        }
+    }
+
+    /**
+     * Parses a stream until its end. The stream is not closed.
+     *
+     * @see #parse(java.nio.ByteBuffer, io.mola.galimatias.FormURLEncodedReader.Visitor)
+     */
+    public void parse(final InputStream input, final Visitor visitor) throws IOException, GalimatiasParseException {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        start(visitor);
+        try {
+            final byte[] chunk = chunk();
+            int count;
+            while ((count = input.read(chunk)) != -1) {
+                process(chunk, 0, count);
+            }
+            finish();
+        } finally {
+            this.visitor = null;
+        }
+    }
+
+    /**
+     * Parses a blocking channel until its end. The channel is not closed.
+     *
+     * @see #parse(java.nio.ByteBuffer, io.mola.galimatias.FormURLEncodedReader.Visitor)
+     */
+    public void parse(final ReadableByteChannel input, final Visitor visitor) throws IOException, GalimatiasParseException {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        start(visitor);
+        try {
+            final byte[] chunk = chunk();
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (input.read(buffer) != -1) {
+                process(chunk, 0, buffer.position());
+                ((Buffer) buffer).clear();
+            }
+            finish();
+        } finally {
+            this.visitor = null;
+        }
+    }
+
+    private byte[] chunk() {
+        if (chunk == null) {
+            chunk = new byte[CHUNK_SIZE];
+        }
+        return chunk;
+    }
+
+    private void start(final Visitor visitor) {
+        if (visitor == null) {
+            throw new NullPointerException("visitor");
+        }
+        this.visitor = visitor;
+        position = 0;
+        pairs = 0;
+        resetPair();
+    }
+
+    private void resetPair() {
+        pairLength = 0;
+        length = 0;
+        nameEnd = -1;
+        nonAscii = false;
+        pending = 0;
+    }
+
+    private void finish() throws GalimatiasParseException {
+        endPair();
+    }
+
+    private void process(final byte[] input, final int offset, final int count) throws GalimatiasParseException {
+        final int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            process(input[i]);
+            position++;
+        }
+    }
+
+    private void process(final byte b) throws GalimatiasParseException {
+        // Sequences are split on `&` and the name from the value on the first `=`,
+        // before `+` is replaced by 0x20 and bytes are percent-decoded.
+        if (b == '&') {
+            endPair();
+            return;
+        }
+        if (++pairLength > maxPairLength) {
+            throw limitExceeded("Pair length exceeds " + maxPairLength + " bytes");
+        }
+        if (pending == 1) {
+            if (isASCIIHexDigit(b)) {
+                pendingHexDigit = b;
+                pending = 2;
+                return;
+            }
+            append((byte) '%');
+            pending = 0;
+        } else if (pending == 2) {
+            pending = 0;
+            if (isASCIIHexDigit(b)) {
+                append((byte) ((hexValue(pendingHexDigit) << 4) | hexValue(b)));
+                return;
+            }
+            append((byte) '%');
+            append(pendingHexDigit);
+        }
+        if (b == '=' && nameEnd == -1) {
+            nameEnd = length;
+        } else if (b == '%') {
+            pending = 1;
+        } else {
+            append((b == '+') ? (byte) 0x20 : b);
+        }
+    }
+
+    private void endPair() throws GalimatiasParseException {
+        if (pairLength == 0) {
+            return;
+        }
+        if (pending >= 1) {
+            append((byte) '%');
+            if (pending == 2) {
+                append(pendingHexDigit);
+            }
+        }
+        if (++pairs > maxPairs) {
+            throw limitExceeded("Number of pairs exceeds " + maxPairs);
+        }
+        final String name;
+        final String value;
+        if (nameEnd == -1) {
+            name = decode(0, length);
+            value = "";
+        } else {
+            name = decode(0, nameEnd);
+            value = decode(nameEnd, length);
+        }
+        resetPair();
+        visitor.visit(name, value);
+    }
+
+    private void append(final byte b) {
+        // Decoded bytes never outnumber input bytes, so the buffer stays within maxPairLength.
+        if (length == bytes.length) {
+            final byte[] newBytes = new byte[Math.min(bytes.length * 2, maxPairLength)];
+            System.arraycopy(bytes, 0, newBytes, 0, length);
+            bytes = newBytes;
+            bytesView = ByteBuffer.wrap(bytes);
+        }
+        if (b < 0) {
+            nonAscii = true;
+        }
+        bytes[length++] = b;
+    }
+
+    private String decode(final int start, final int end) {
+        final int count = end - start;
+        if (count == 0) {
+            return "";
+        }
+        if (chars.length < count) {
+            chars = new char[Math.max(count, chars.length * 2)];
+            charsView = CharBuffer.wrap(chars);
+        }
+        if (asciiCompatible && !nonAscii) {
+            for (int i = 0; i < count; i++) {
+                chars[i] = (char) bytes[start + i];
+            }
+            return new String(chars, 0, count);
+        }
+
+        // Buffer methods are called through Buffer so that builds on newer JDKs, with covariant
+        // overrides in ByteBuffer and CharBuffer, still run on older ones.
+        ((Buffer) bytesView).limit(end).position(start);
+        decoder.reset();
+        while (true) {
+            ((Buffer) charsView).clear();
+            CoderResult result = decoder.decode(bytesView, charsView, true);
+            if (result.isUnderflow()) {
+                result = decoder.flush(charsView);
+            }
+            if (result.isUnderflow()) {
+                return new String(chars, 0, charsView.position());
+            }
+            // Overflow: some charsets produce more than one char per byte.
+            chars = new char[chars.length * 2];
+            charsView = CharBuffer.wrap(chars);
+            ((Buffer) bytesView).limit(end).position(start);
+            decoder.reset();
+        }
+    }
+
+    private GalimatiasParseException limitExceeded(final String message) {
+        return GalimatiasParseException.builder()
+                .withMessage(message)
+                .withPosition((int) Math.min(position, Integer.MAX_VALUE))
+                .build();
+    }
+
+    private static boolean isASCIIHexDigit(final byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f');
+    }
+
+    private static int hexValue(final byte b) {
+        return (b <= '9') ? b - '0' : (b | 0x20) - 'a' + 10;
+    }
+
+    public static final class Builder {
+
+        private Charset charset = URLUtils.UTF_8;
+        private int maxPairs = DEFAULT_MAX_PAIRS;
+        private int maxPairLength = DEFAULT_MAX_PAIR_LENGTH;
+
+        private Builder() {}
+
+        /**
+         * Charset used to decode names and values. Defaults to UTF-8.
+         */
+        public Builder withCharset(final Charset charset) {
+            if (charset == null) {
+                throw new NullPointerException("charset");
+            }
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Maximum number of pairs. Defaults to {@value FormURLEncodedReader#DEFAULT_MAX_PAIRS}.
+         */
+        public Builder withMaxPairs(final int maxPairs) {
+            if (maxPairs < 1) {
+                throw new IllegalArgumentException("maxPairs must be positive");
+            }
+            this.maxPairs = maxPairs;
+            return this;
+        }
+
+        /**
+         * Maximum length in bytes of a pair before decoding, excluding the {@code &} delimiter.
+         * Defaults to {@value FormURLEncodedReader#DEFAULT_MAX_PAIR_LENGTH}.
+         */
+        public Builder withMaxPairLength(final int maxPairLength) {
+            if (maxPairLength < 1) {
+                throw new IllegalArgumentException("maxPairLength must be positive");
+            }
+            this.maxPairLength = maxPairLength;
+            return this;
+        }
+
+        public FormURLEncodedReader build() {
+            return new FormURLEncodedReader(charset, maxPairs, maxPairLength);
+        }
+    }
+
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Streaming application/x-www-form-urlencoded serializer.
+ *
+ * Pairs are written straight to an {@link Appendable}, or to an {@link OutputStream} or a
+ * {@link WritableByteChannel} through a small reused buffer. Names and values are encoded
+ * directly when the charset is UTF-8, or when they are ASCII-only and the charset is
+ * ASCII-compatible; otherwise a reused {@link CharsetEncoder} is used. Unencodable characters
+ * are replaced, as {@link Charset#encode(String)} does.
+ *
+ * Instances reuse their buffers and encoder across calls, so they are not thread-safe.
+ *
+ * @see <a href="https://url.spec.whatwg.org/#concept-urlencoded-serializer">application/x-www-form-urlencoded serializer</a>
+ */
+public final class FormURLEncodedWriter {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final byte PERCENT_ENCODE = 0;
+    private static final byte LITERAL = 1;
+    private static final byte SPACE = 2;
+
+    /** How each byte is serialized, indexed by its unsigned value. */
+    private static final byte[] BYTE_CLASSES = new byte[256];
+    static {
+        BYTE_CLASSES[0x20] = SPACE;
+        BYTE_CLASSES['*'] = LITERAL;
+        BYTE_CLASSES['-'] = LITERAL;
+        BYTE_CLASSES['.'] = LITERAL;
+        BYTE_CLASSES['_'] = LITERAL;
+        for (int b = '0'; b <= '9'; b++) {
+            BYTE_CLASSES[b] = LITERAL;
+        }
+        for (int b = 'A'; b <= 'Z'; b++) {
+            BYTE_CLASSES[b] = LITERAL;
+            BYTE_CLASSES[b + 0x20] = LITERAL;
+        }
+    }
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private final Charset charset;
+    private final boolean utf8;
+    private final boolean asciiCompatible;
+    private final byte space;
+
+    /** Created on first use, only for charsets without a direct encoding. */
+    private CharsetEncoder encoder;
+    private ByteBuffer encoded;
+
+    /** Output buffer for streams and channels, created on first use. */
+    private byte[] buffer;
+    private int count;
+
+    private Appendable appendable;
+    private OutputStream stream;
+    private WritableByteChannel channel;
+
+    /**
+     * @param spaceAsPlus Whether 0x20 is serialized as {@code +}, as the standard says, or
+     *                    left as is, as {@link FormURLEncodedParser#encode(java.util.List)} does.
+     */
+    FormURLEncodedWriter(final Charset charset, final boolean spaceAsPlus) {
+        if (charset == null) {
+            throw new NullPointerException("charset");
+        }
+        this.charset = charset;
+        final String name = charset.name();
+        this.utf8 = "UTF-8".equals(name);
+        this.asciiCompatible = utf8 || "US-ASCII".equals(name) || "ISO-8859-1".equals(name);
+        this.space = spaceAsPlus ? (byte) '+' : (byte) 0x20;
+    }
+
+    /**
+     * Creates a writer for UTF-8.
+     */
+    public static FormURLEncodedWriter create() {
+        return create(URLUtils.UTF_8);
+    }
+
+    public static FormURLEncodedWriter create(final Charset charset) {
+        return new FormURLEncodedWriter(charset, true);
+    }
+
+    public void write(final Iterable<NameValue> pairs, final Appendable output) throws IOException {
+        if (output == null) {
+            throw new NullPointerException("output");
+        }
+        appendable = output;
+        try {
+            write(pairs);
+        } finally {
+            appendable = null;
+        }
+    }
+
+    /**
+     * Writes the serialization as ASCII bytes. The stream is neither flushed nor closed.
+     */
+    public void write(final Iterable<NameValue> pairs, final OutputStream output) throws IOException {
+        if (output == null) {
+            throw new NullPointerException("output");
+        }
+        stream = output;
+        allocateBuffer();
+        try {
+            write(pairs);
+        } finally {
+            stream = null;
+        }
+    }
+
+    /**
+     * Writes the serialization as ASCII bytes to a blocking channel, which is not closed.
+     */
+    public void write(final Iterable<NameValue> pairs, final WritableByteChannel output) throws IOException {
+        if (output == null) {
+            throw new NullPointerException("output");
+        }
+        channel = output;
+        allocateBuffer();
+        try {
+            write(pairs);
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Writes a single pair, with no delimiter.
+     */
+    void write(final NameValue pair, final Appendable output) throws IOException {
+        appendable = output;
+        try {
+            serialize(pair.name());
+            put((byte) '=');
+            serialize(pair.value());
+        } finally {
+            appendable = null;
+        }
+    }
+
+    private void write(final Iterable<NameValue> pairs) throws IOException {
+        if (pairs == null) {
+            throw new NullPointerException("pairs");
+        }
+        count = 0;
+        boolean first = true;
+
+        // For each pair in pairs, run these substeps:
+        for (final NameValue pair : pairs) {
+
+            // If pair is not the first pair in pairs, append "&" to output.
+            if (!first) {
+                put((byte) '&');
+            }
+            first = false;
+
+            // Append outputPair's name, followed by "=", followed by outputPair's value to output,
+            // where name and value are encoded using encoding override and then serialized.
+            serialize(pair.name());
+            put((byte) '=');
+            serialize(pair.value());
+        }
+        flush();
+    }
+
+    private void allocateBuffer() {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    private void serialize(final String input) throws IOException {
+        if (utf8) {
+            serializeUTF8(input);
+            return;
+        }
+        if (asciiCompatible && isASCII(input)) {
+            for (int i = 0; i < input.length(); i++) {
+                serialize((byte) input.charAt(i));
+            }
+            return;
+        }
+        serializeWithEncoder(input);
+    }
+
+    private void serializeUTF8(final String input) throws IOException {
+        final int length = input.length();
+        for (int i = 0; i < length; i++) {
+            final char c = input.charAt(i);
+            if (c < 0x80) {
+                serialize((byte) c);
+            } else if (c < 0x800) {
+                serialize((byte) (0xC0 | (c >> 6)));
+                serialize((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(input.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, input.charAt(++i));
+                serialize((byte) (0xF0 | (codePoint >> 18)));
+                serialize((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                serialize((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                serialize((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // Same replacement as the UTF-8 CharsetEncoder.
+                serialize((byte) '?');
+            } else {
+                serialize((byte) (0xE0 | (c >> 12)));
+                serialize((byte) (0x80 | ((c >> 6) & 0x3F)));
+                serialize((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void serializeWithEncoder(final String input) throws IOException {
+        if (encoder == null) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoded = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        final CharBuffer chars = CharBuffer.wrap(input);
+        encoder.reset();
+        boolean flushing = false;
+        while (true) {
+            final CoderResult result = flushing ? encoder.flush(encoded) : encoder.encode(chars, encoded, true);
+            final byte[] bytes = encoded.array();
+            for (int i = 0; i < encoded.position(); i++) {
+                serialize(bytes[i]);
+            }
+            ((Buffer) encoded).clear();
+            if (result.isUnderflow()) {
+                if (flushing) {
+                    return;
+                }
+                flushing = true;
+            }
+        }
+    }
+
+    private void serialize(final byte b) throws IOException {
+        switch (BYTE_CLASSES[b & 0xFF]) {
+            case LITERAL:
+                put(b);
+                break;
+            case SPACE:
+                put(space);
+                break;
+            default:
+                put((byte) '%');
+                put(HEX_DIGITS[(b >> 4) & 0xF]);
+                put(HEX_DIGITS[b & 0xF]);
+        }
+    }
+
+    private void put(final byte b) throws IOException {
+        if (appendable != null) {
+            appendable.append((char) b);
+            return;
+        }
+        if (count == buffer.length) {
+            flush();
+        }
+        buffer[count++] = b;
+    }
+
+    private void flush() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (stream != null) {
+            stream.write(buffer, 0, count);
+        } else {
+            final ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, count);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        count = 0;
+    }
+
+    private static boolean isASCII(final String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (input.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -28,6 +28,7 @@ public class GalimatiasParseException extends Exception {
 
     private ParseIssue parseIssue = ParseIssue.UNSPECIFIED;
     private int position = -1;
+    private String input;
 
     private GalimatiasParseException() {}
 
@@ -58,6 +59,20 @@ public class GalimatiasParseException extends Exception {
         return position;
     }
 
+    /**
+     * Gets the input being parsed when the error was found, which
+     * {@link #getPosition()} refers to.
+     *
+     * @return The input, or null if it is unknown.
+     */
+    public String getInput() {
+        return input;
+    }
+
+    void setInput(final String input) {
+        this.input = input;
+    }
+
     /**
      * Gets the @{link ParseIssue}.
      *
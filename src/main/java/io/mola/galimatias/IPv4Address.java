@@ -127,8 +127,12 @@ public class IPv4Address extends Host {
 
     @Override
     public String toString() {
-        byte[] bytes = getBytes();
-        return String.format("%d.%d.%d.%d", bytes[0] & 0x00FF, bytes[1] & 0x00FF, bytes[2] & 0x00FF, bytes[3] & 0x00FF);
+        return new StringBuilder(15)
+                .append(address >> 24 & 0x00FF).append('.')
+                .append(address >> 16 & 0x00FF).append('.')
+                .append(address >> 8 & 0x00FF).append('.')
+                .append(address & 0x00FF)
+                .toString();
     }
 
     @Override
@@ -36,5 +36,10 @@ public enum ParseIssue {
     BACKSLASH_AS_DELIMITER,
     ILLEGAL_WHITESPACE,
     ILLEGAL_CHARACTER,
-    INVALID_HOST
+    INVALID_HOST,
+    INVALID_PORT,
+    INPUT_TOO_LONG,
+    TOO_MANY_PATH_SEGMENTS,
+    QUERY_TOO_LONG,
+    TOO_MANY_HOST_LABELS
 }
@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts URL parsing outcomes and {@link ParseIssue}s, and records parsing latency.
+ *
+ * Attach it with {@link URLParsingSettings#withMetrics(ParseMetrics)}. Settings
+ * without metrics (the default) pay only a null check per parse.
+ *
+ * Recording is lock-free: counters are striped by thread, so that threads
+ * parsing concurrently do not contend on the same memory. {@link #snapshot()}
+ * sums the stripes; it is weakly consistent while parsing is in progress.
+ *
+ * Latency is kept in a log-linear histogram with 8 sub-buckets per power of two
+ * (at most 12.5% relative error), in nanoseconds.
+ */
+public final class ParseMetrics {
+
+    /**
+     * Outcome of parsing a URL.
+     */
+    public static enum Outcome {
+        /** Parsed without any issue. */
+        SUCCESS,
+        /** Parsed, recovering from one or more non-fatal issues. */
+        RECOVERED,
+        /** Failed, either on a fatal issue or because the {@link ErrorHandler} rejected an issue. */
+        FAILED
+    }
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final ParseIssue[] ISSUES = ParseIssue.values();
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Latencies of 2^40 ns (about 18 minutes) or more go to the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final int MAX_STRIPES = 64;
+    // Longs per cache line, assuming 64-byte lines
+    private static final int LINE = 8;
+
+    // Layout of each stripe
+    private static final int OUTCOME_OFFSET = 0;
+    private static final int ISSUE_OFFSET = OUTCOME_OFFSET + OUTCOMES.length;
+    private static final int SUM_OFFSET = ISSUE_OFFSET + ISSUES.length;
+    private static final int MAX_OFFSET = SUM_OFFSET + 1;
+    private static final int BUCKET_OFFSET = MAX_OFFSET + 1;
+    // Rounded up to whole cache lines, plus one line so that neighbouring stripes never share one
+    private static final int STRIPE_SIZE = ((BUCKET_OFFSET + BUCKETS + LINE - 1) / LINE + 1) * LINE;
+
+    private final AtomicLongArray cells;
+    private final int stripeMask;
+
+    private ParseMetrics(final int stripes) {
+        this.cells = new AtomicLongArray(stripes * STRIPE_SIZE);
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * Creates empty metrics, with as many stripes as processors (up to 64).
+     */
+    public static ParseMetrics create() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return new ParseMetrics(stripes);
+    }
+
+    private int stripe() {
+        // Thread ids are assigned sequentially, so threads of a pool spread over stripes
+        return ((int) Thread.currentThread().getId() & stripeMask) * STRIPE_SIZE;
+    }
+
+    void recordIssue(final ParseIssue issue) {
+        final ParseIssue parseIssue = (issue == null) ? ParseIssue.UNSPECIFIED : issue;
+        cells.getAndIncrement(stripe() + ISSUE_OFFSET + parseIssue.ordinal());
+    }
+
+    void recordParse(final Outcome outcome, final long nanos) {
+        final int stripe = stripe();
+        final long value = Math.max(0, nanos);
+        cells.getAndIncrement(stripe + OUTCOME_OFFSET + outcome.ordinal());
+        cells.getAndAdd(stripe + SUM_OFFSET, value);
+        cells.getAndIncrement(stripe + BUCKET_OFFSET + bucket(value));
+        long max;
+        while (value > (max = cells.get(stripe + MAX_OFFSET))) {
+            if (cells.compareAndSet(stripe + MAX_OFFSET, max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current values.
+     */
+    public Snapshot snapshot() {
+        final long[] outcomes = new long[OUTCOMES.length];
+        final long[] issues = new long[ISSUES.length];
+        final long[] buckets = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe < cells.length(); stripe += STRIPE_SIZE) {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] += cells.get(stripe + OUTCOME_OFFSET + i);
+            }
+            for (int i = 0; i < issues.length; i++) {
+                issues[i] += cells.get(stripe + ISSUE_OFFSET + i);
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] += cells.get(stripe + BUCKET_OFFSET + i);
+            }
+            sum += cells.get(stripe + SUM_OFFSET);
+            max = Math.max(max, cells.get(stripe + MAX_OFFSET));
+        }
+        return new Snapshot(outcomes, issues, buckets, sum, max);
+    }
+
+    private static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long lower = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Immutable view of {@link ParseMetrics} at some point in time.
+     */
+    public static final class Snapshot {
+
+        private static final double[] EXPORTED_PERCENTILES = { 50, 90, 99, 99.9 };
+        private static final String[] EXPORTED_QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+        private final long[] outcomes;
+        private final long[] issues;
+        private final long[] buckets;
+        private final long sum;
+        private final long max;
+        private final long count;
+
+        private Snapshot(final long[] outcomes, final long[] issues, final long[] buckets,
+                         final long sum, final long max) {
+            this.outcomes = outcomes;
+            this.issues = issues;
+            this.buckets = buckets;
+            this.sum = sum;
+            this.max = max;
+            long total = 0;
+            for (final long bucket : buckets) {
+                total += bucket;
+            }
+            this.count = total;
+        }
+
+        /**
+         * @return Number of parsed URLs (including failures).
+         */
+        public long count() {
+            return count;
+        }
+
+        public long count(final Outcome outcome) {
+            if (outcome == null) {
+                throw new NullPointerException("outcome");
+            }
+            return outcomes[outcome.ordinal()];
+        }
+
+        /**
+         * @return Number of times the issue was found. A URL can have several issues.
+         */
+        public long issueCount(final ParseIssue issue) {
+            if (issue == null) {
+                throw new NullPointerException("issue");
+            }
+            return issues[issue.ordinal()];
+        }
+
+        /**
+         * @return Total parsing time, in nanoseconds.
+         */
+        public long totalNanos() {
+            return sum;
+        }
+
+        /**
+         * @return Longest parsing time, in nanoseconds.
+         */
+        public long maxNanos() {
+            return max;
+        }
+
+        /**
+         * Gets an upper bound of the given latency percentile (0-100), in nanoseconds,
+         * or 0 if nothing was parsed.
+         */
+        public long percentileNanos(final double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Writes the snapshot in the Prometheus text format, which is plain
+         * <code>name{label="value"} number</code> lines.
+         */
+        public void writeTo(final Appendable output) throws IOException {
+            if (output == null) {
+                throw new NullPointerException("output");
+            }
+            output.append("# TYPE galimatias_parse_total counter\n");
+            for (final Outcome outcome : OUTCOMES) {
+                output.append("galimatias_parse_total{outcome=\"")
+                        .append(outcome.name().toLowerCase(Locale.ENGLISH)).append("\"} ")
+                        .append(Long.toString(count(outcome))).append('\n');
+            }
+            output.append("# TYPE galimatias_parse_issues_total counter\n");
+            for (final ParseIssue issue : ISSUES) {
+                output.append("galimatias_parse_issues_total{issue=\"").append(issue.name()).append("\"} ")
+                        .append(Long.toString(issueCount(issue))).append('\n');
+            }
+            output.append("# TYPE galimatias_parse_duration_nanoseconds summary\n");
+            for (int i = 0; i < EXPORTED_PERCENTILES.length; i++) {
+                output.append("galimatias_parse_duration_nanoseconds{quantile=\"")
+                        .append(EXPORTED_QUANTILES[i]).append("\"} ")
+                        .append(Long.toString(percentileNanos(EXPORTED_PERCENTILES[i]))).append('\n');
+            }
+            output.append("galimatias_parse_duration_nanoseconds_sum ").append(Long.toString(sum)).append('\n');
+            output.append("galimatias_parse_duration_nanoseconds_count ").append(Long.toString(count)).append('\n');
+            output.append("# TYPE galimatias_parse_duration_nanoseconds_max gauge\n");
+            output.append("galimatias_parse_duration_nanoseconds_max ").append(Long.toString(max)).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                writeTo(sb);
+            } catch (IOException ex) {
+                throw new RuntimeException("BUG", ex);
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-state profile of the URL parser, aggregated over every parse in the JVM.
+ *
+ * Profiling is off unless the JVM is started with
+ * <code>-Dio.mola.galimatias.profile=true</code>. The switch is a static final
+ * constant, so when it is off the JIT compiler removes the instrumentation
+ * from the parser altogether.
+ *
+ * For each parser state (as named in the WHATWG URL specification) the profile
+ * counts:
+ * <ul>
+ *     <li>entries: times the parser switched to the state,</li>
+ *     <li>characters: code points processed in the state, including those
+ *         processed again after a backtrack,</li>
+ *     <li>backtracks: times the parser moved back in the input while in the
+ *         state, and how many characters it moved back,</li>
+ *     <li>time spent in the state, in nanoseconds.</li>
+ * </ul>
+ * Percent-encoding is attributed to the URL component being built.
+ *
+ * Timing calls {@link System#nanoTime()} on every state switch, so absolute
+ * times are inflated; use them to compare states with each other.
+ */
+public final class ParseProfile {
+
+    static final boolean ENABLED = Boolean.getBoolean("io.mola.galimatias.profile");
+
+    /**
+     * URL components percent-encoding is attributed to.
+     */
+    public static enum Component {
+        SCHEME_DATA,
+        USERINFO,
+        PATH,
+        QUERY,
+        FRAGMENT
+    }
+
+    private static final URLParser.ParseURLState[] STATES = URLParser.ParseURLState.values();
+    private static final Component[] COMPONENTS = Component.values();
+
+    // Layout of the counters
+    private static final int ENTRIES = 0;
+    private static final int CHARACTERS = ENTRIES + STATES.length;
+    private static final int BACKTRACKS = CHARACTERS + STATES.length;
+    private static final int BACKTRACKED_CHARACTERS = BACKTRACKS + STATES.length;
+    private static final int NANOS = BACKTRACKED_CHARACTERS + STATES.length;
+    private static final int ENCODED_CODE_POINTS = NANOS + STATES.length;
+    private static final int ENCODED_BYTES = ENCODED_CODE_POINTS + COMPONENTS.length;
+    private static final int PARSES = ENCODED_BYTES + COMPONENTS.length;
+    private static final int SIZE = PARSES + 1;
+
+    private static final AtomicLongArray COUNTERS = new AtomicLongArray(SIZE);
+
+    private ParseProfile() {
+
+    }
+
+    /**
+     * @return True if profiling was enabled at startup.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @return Counters aggregated since startup or the last {@link #reset()}.
+     */
+    public static Snapshot snapshot() {
+        final long[] counters = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            counters[i] = COUNTERS.get(i);
+        }
+        return new Snapshot(counters);
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public static void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            COUNTERS.set(i, 0);
+        }
+    }
+
+    /**
+     * Records a single parse, without synchronization. Counters are added to
+     * the global profile on {@link #finish()}.
+     */
+    static final class Recorder {
+
+        private final long[] counters = new long[SIZE];
+        private URLParser.ParseURLState state;
+        private int lastIdx;
+        private long lastNanos;
+
+        /**
+         * Called at the start of every iteration of the parser loop.
+         */
+        void step(final URLParser.ParseURLState current, final int idx) {
+            if (current != state) {
+                final long now = System.nanoTime();
+                if (state != null) {
+                    counters[NANOS + state.ordinal()] += now - lastNanos;
+                }
+                counters[ENTRIES + current.ordinal()]++;
+                lastNanos = now;
+            }
+            if (state != null && idx <= lastIdx) {
+                // The previous step moved back (or stayed at the same index) before the usual increment
+                counters[BACKTRACKS + state.ordinal()]++;
+                counters[BACKTRACKED_CHARACTERS + state.ordinal()] += lastIdx - idx + 1;
+            }
+            counters[CHARACTERS + current.ordinal()]++;
+            state = current;
+            lastIdx = idx;
+        }
+
+        /**
+         * Records a code point encoded as the given number of bytes (0 if it was not encoded).
+         */
+        void percentEncoded(final Component component, final int bytes) {
+            if (bytes > 0) {
+                counters[ENCODED_CODE_POINTS + component.ordinal()]++;
+                counters[ENCODED_BYTES + component.ordinal()] += bytes;
+            }
+        }
+
+        /**
+         * Records a single encoded byte of UTF-8.
+         */
+        void percentEncodedByte(final Component component, final byte b) {
+            if ((b & 0xC0) != 0x80) {
+                // Not a continuation byte, so it starts a code point
+                counters[ENCODED_CODE_POINTS + component.ordinal()]++;
+            }
+            counters[ENCODED_BYTES + component.ordinal()]++;
+        }
+
+        void finish() {
+            if (state != null) {
+                counters[NANOS + state.ordinal()] += System.nanoTime() - lastNanos;
+            }
+            counters[PARSES]++;
+            for (int i = 0; i < SIZE; i++) {
+                if (counters[i] != 0) {
+                    COUNTERS.getAndAdd(i, counters[i]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Immutable view of the profile at some point in time. States are
+     * identified by name, e.g. <code>AUTHORITY</code> or <code>RELATIVE_PATH</code>.
+     */
+    public static final class Snapshot {
+
+        private final long[] counters;
+
+        private Snapshot(final long[] counters) {
+            this.counters = counters;
+        }
+
+        /**
+         * @return Number of profiled parses.
+         */
+        public long parses() {
+            return counters[PARSES];
+        }
+
+        /**
+         * @return Names of the parser states, in the order the parser defines them.
+         */
+        public List<String> states() {
+            final List<String> states = new ArrayList<String>(STATES.length);
+            for (final URLParser.ParseURLState state : STATES) {
+                states.add(state.name());
+            }
+            return Collections.unmodifiableList(states);
+        }
+
+        public long entries(final String state) {
+            return counters[ENTRIES + ordinal(state)];
+        }
+
+        public long characters(final String state) {
+            return counters[CHARACTERS + ordinal(state)];
+        }
+
+        public long backtracks(final String state) {
+            return counters[BACKTRACKS + ordinal(state)];
+        }
+
+        public long backtrackedCharacters(final String state) {
+            return counters[BACKTRACKED_CHARACTERS + ordinal(state)];
+        }
+
+        public long nanos(final String state) {
+            return counters[NANOS + ordinal(state)];
+        }
+
+        public long percentEncodedCodePoints(final Component component) {
+            if (component == null) {
+                throw new NullPointerException("component");
+            }
+            return counters[ENCODED_CODE_POINTS + component.ordinal()];
+        }
+
+        public long percentEncodedBytes(final Component component) {
+            if (component == null) {
+                throw new NullPointerException("component");
+            }
+            return counters[ENCODED_BYTES + component.ordinal()];
+        }
+
+        private static int ordinal(final String state) {
+            if (state == null) {
+                throw new NullPointerException("state");
+            }
+            return URLParser.ParseURLState.valueOf(state).ordinal();
+        }
+
+        /**
+         * Writes the profile as plain text tables.
+         */
+        public void writeTo(final Appendable output) throws IOException {
+            if (output == null) {
+                throw new NullPointerException("output");
+            }
+            long totalNanos = 0;
+            for (final URLParser.ParseURLState state : STATES) {
+                totalNanos += counters[NANOS + state.ordinal()];
+            }
+            output.append(String.format(Locale.ENGLISH, "%,d parses%n%n", parses()));
+            output.append(String.format(Locale.ENGLISH, "%-26s %12s %14s %12s %14s %14s %6s%n",
+                    "State", "Entries", "Characters", "Backtracks", "Backtracked", "Nanos", "Time"));
+            for (final URLParser.ParseURLState state : STATES) {
+                final int i = state.ordinal();
+                final long nanos = counters[NANOS + i];
+                output.append(String.format(Locale.ENGLISH, "%-26s %,12d %,14d %,12d %,14d %,14d %5.1f%%%n",
+                        state.name(), counters[ENTRIES + i], counters[CHARACTERS + i], counters[BACKTRACKS + i],
+                        counters[BACKTRACKED_CHARACTERS + i], nanos,
+                        (totalNanos == 0) ? 0.0 : 100.0 * nanos / totalNanos));
+            }
+            output.append(String.format(Locale.ENGLISH, "%n%-26s %14s %14s%n",
+                    "Percent-encoded", "Code points", "Bytes"));
+            for (final Component component : COMPONENTS) {
+                output.append(String.format(Locale.ENGLISH, "%-26s %,14d %,14d%n", component.name(),
+                        percentEncodedCodePoints(component), percentEncodedBytes(component)));
+            }
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                writeTo(sb);
+            } catch (IOException ex) {
+                throw new RuntimeException("BUG", ex);
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
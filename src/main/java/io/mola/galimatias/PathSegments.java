@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of the segments of a URL path.
+ *
+ * Segments are kept as offsets into the serialized path and are only copied out
+ * when they are read. Instances can be shared between threads; a race only means
+ * that a segment is copied twice.
+ */
+final class PathSegments extends AbstractList<String> implements RandomAccess {
+
+    private final String path;
+    /**
+     * Index of the slash before each segment (-1 if the path does not start with one),
+     * followed by the length of the path.
+     */
+    private final int[] starts;
+    private final int size;
+    private final String[] segments;
+
+    private PathSegments(final String path, final int[] starts, final int size) {
+        this.path = path;
+        this.starts = starts;
+        this.size = size;
+        this.segments = new String[size];
+    }
+
+    /**
+     * Splits a path on slashes, ignoring a leading one. A null path has no segments.
+     */
+    static PathSegments parse(final String path) {
+        if (path == null) {
+            return new PathSegments("", new int[] { 0 }, 0);
+        }
+        int size = 1;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                size++;
+            }
+        }
+        final int[] starts = new int[size + 1];
+        starts[0] = (!path.isEmpty() && path.charAt(0) == '/') ? 0 : -1;
+        int segment = 1;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                starts[segment++] = i;
+            }
+        }
+        starts[size] = path.length();
+        return new PathSegments(path, starts, size);
+    }
+
+    String path() {
+        return path;
+    }
+
+    @Override
+    public String get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        String segment = segments[index];
+        if (segment == null) {
+            segment = path.substring(starts[index] + 1, starts[index + 1]);
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Mutable path, as used by the parser. Segments are appended to a single buffer
+     * and removing the last one only truncates it.
+     */
+    static final class Builder {
+
+        private final StringBuilder path;
+        private int[] starts;
+        private int size;
+
+        Builder() {
+            this.path = new StringBuilder();
+            this.starts = new int[8];
+        }
+
+        /**
+         * Starts with the segments of an existing path, with the same rules as {@link #parse(String)}.
+         */
+        Builder(final String path) {
+            if (path == null) {
+                this.path = new StringBuilder();
+                this.starts = new int[8];
+                return;
+            }
+            this.path = new StringBuilder(path.length() + 16);
+            if (path.isEmpty() || path.charAt(0) != '/') {
+                this.path.append('/');
+            }
+            this.path.append(path);
+            this.starts = new int[8];
+            for (int i = 0; i < this.path.length(); i++) {
+                if (this.path.charAt(i) == '/') {
+                    addStart(i);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(final CharSequence segment) {
+            addStart(path.length());
+            path.append('/').append(segment);
+        }
+
+        void removeLast() {
+            if (size > 0) {
+                path.setLength(starts[--size]);
+            }
+        }
+
+        private void addStart(final int start) {
+            // Keeps room for the final length
+            if (size + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[size++] = start;
+        }
+
+        /**
+         * An empty path is serialized as "/", which has a single empty segment.
+         */
+        PathSegments build() {
+            if (size == 0) {
+                return new PathSegments("/", new int[] { 0, 1 }, 1);
+            }
+            final int[] result = Arrays.copyOf(starts, size + 1);
+            result[size] = path.length();
+            return new PathSegments(path.toString(), result, size);
+        }
+
+    }
+
+}
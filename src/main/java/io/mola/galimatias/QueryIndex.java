@@ -0,0 +1,406 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of the name-value pairs of a raw query string.
+ *
+ * Pairs are kept as offsets into the query and their names and values are only decoded
+ * (with the same rules as {@link FormURLEncodedParser#parse(String)}) when they are read.
+ * Lookups by name go through an open-addressing hash table over those offsets, which is
+ * built on the first lookup.
+ *
+ * Internal state is computed on demand and published through final fields, so instances
+ * can be shared between threads; a race only means that some work is done twice.
+ */
+final class QueryIndex extends AbstractList<NameValue> implements RandomAccess {
+
+    private final String query;
+
+    private Sequences sequences;
+    private Table table;
+
+    QueryIndex(final String query) {
+        if (query == null) {
+            throw new NullPointerException("query");
+        }
+        this.query = query;
+    }
+
+    @Override
+    public NameValue get(final int index) {
+        final Sequences s = sequences();
+        if (index < 0 || index >= s.visibleCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s.visibleCount);
+        }
+        NameValue pair = s.pairs[index];
+        if (pair == null) {
+            final int seq = (s.visible == null) ? index : s.visible[index];
+            pair = new NameValue(name(s, seq), value(s, seq));
+            s.pairs[index] = pair;
+        }
+        return pair;
+    }
+
+    /**
+     * Gets the raw text of a pair, as it is in the query.
+     */
+    String raw(final int index) {
+        final Sequences s = sequences();
+        if (index < 0 || index >= s.visibleCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s.visibleCount);
+        }
+        final int seq = (s.visible == null) ? index : s.visible[index];
+        return query.substring(s.start(seq), s.end(seq));
+    }
+
+    @Override
+    public int size() {
+        return sequences().visibleCount;
+    }
+
+    /**
+     * Gets the decoded value of the first pair with the given decoded name.
+     */
+    String first(final String name) {
+        final Sequences s = sequences();
+        final Table t = table(s);
+        for (int seq = chain(s, t, name, false); seq != -1; seq = t.next[seq]) {
+            if (!s.isEmpty(seq)) {
+                return value(s, seq);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the decoded values of every pair with the given decoded name.
+     */
+    List<String> all(final String name) {
+        final Sequences s = sequences();
+        final Table t = table(s);
+        final List<String> result = new ArrayList<String>();
+        for (int seq = chain(s, t, name, false); seq != -1; seq = t.next[seq]) {
+            if (!s.isEmpty(seq)) {
+                result.add(value(s, seq));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the raw value of the first sequence whose raw name is exactly the given one.
+     *
+     * Unlike {@link #first(String)}, nothing is decoded and empty sequences are taken
+     * into account, matching an empty name.
+     */
+    String firstRaw(final String name) {
+        final Sequences s = sequences();
+        final Table t = table(s);
+        for (int seq = chain(s, t, name, true); seq != -1; seq = t.next[seq]) {
+            if (rawNameEquals(s, seq, name)) {
+                return rawValue(s, seq);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the raw values of every sequence whose raw name is exactly the given one.
+     *
+     * @see #firstRaw(String)
+     */
+    List<String> allRaw(final String name) {
+        final Sequences s = sequences();
+        final Table t = table(s);
+        final List<String> result = new ArrayList<String>();
+        for (int seq = chain(s, t, name, true); seq != -1; seq = t.next[seq]) {
+            if (rawNameEquals(s, seq, name)) {
+                result.add(rawValue(s, seq));
+            }
+        }
+        return result;
+    }
+
+    private Sequences sequences() {
+        Sequences s = sequences;
+        if (s == null) {
+            s = new Sequences(query);
+            sequences = s;
+        }
+        return s;
+    }
+
+    private Table table(final Sequences s) {
+        Table t = table;
+        if (t == null) {
+            t = new Table(this, s);
+            table = t;
+        }
+        return t;
+    }
+
+    /**
+     * Returns the first sequence of the chain of sequences sharing the decoded name
+     * of the given one, or -1. The chain continues through {@code t.next}.
+     */
+    private int chain(final Sequences s, final Table t, final String name, final boolean decodeName) {
+        final int hash = decodeName ? decodedHash(name, 0, name.length()) : name.hashCode();
+        final int mask = t.slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int head = t.slots[slot] - 1;
+            if (head == -1) {
+                return -1;
+            }
+            if (s.hashes[head] == hash && decodedNameEquals(s, head, name, decodeName)) {
+                return head;
+            }
+        }
+    }
+
+    private boolean decodedNameEquals(final Sequences s, final int seq, final String name, final boolean decodeName) {
+        final int start = s.start(seq);
+        final int length = s.equals(seq) - start;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = name.charAt(i);
+            if (decode(query.charAt(start + i)) != (decodeName ? decode(c) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameDecodedName(final Sequences s, final int seq, final int other) {
+        final int start = s.start(seq);
+        final int otherStart = s.start(other);
+        final int length = s.equals(seq) - start;
+        if (length != s.equals(other) - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (decode(query.charAt(start + i)) != decode(query.charAt(otherStart + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean rawNameEquals(final Sequences s, final int seq, final String name) {
+        final int start = s.start(seq);
+        return s.equals(seq) - start == name.length() && query.regionMatches(start, name, 0, name.length());
+    }
+
+    private String name(final Sequences s, final int seq) {
+        return decode(s.start(seq), s.equals(seq));
+    }
+
+    private String value(final Sequences s, final int seq) {
+        final int equals = s.equals(seq);
+        final int end = s.end(seq);
+        return (equals == end) ? "" : decode(equals + 1, end);
+    }
+
+    private String rawValue(final Sequences s, final int seq) {
+        final int equals = s.equals(seq);
+        final int end = s.end(seq);
+        return (equals == end) ? "" : query.substring(equals + 1, end);
+    }
+
+    private String decode(final int start, final int end) {
+        if (start == end) {
+            return "";
+        }
+        final String result = query.substring(start, end);
+        return (result.indexOf('+') == -1) ? result : result.replace('+', ' ');
+    }
+
+    private static char decode(final char c) {
+        return (c == '+') ? ' ' : c;
+    }
+
+    /**
+     * Same as {@code decode(input.substring(start, end)).hashCode()}, without allocating.
+     */
+    private static int decodedHash(final String input, final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + decode(input.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int spread(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Offsets of every {@code &}-delimited sequence of the query, including empty ones, which
+     * only matter to raw lookups.
+     */
+    private static final class Sequences {
+
+        /** start, first {@code =} (or end) and end offsets of each sequence. */
+        private final int[] bounds;
+        /** Hash code of the decoded name of each sequence. */
+        private final int[] hashes;
+        private final int count;
+        /** Sequence index of each visible (non-empty) pair, or null if there is no empty sequence. */
+        private final int[] visible;
+        private final int visibleCount;
+        /** Decoded pairs, filled in as they are read. */
+        private final NameValue[] pairs;
+
+        Sequences(final String query) {
+            final int length = query.length();
+            int[] bounds = new int[24];
+            int[] hashes = new int[8];
+            int count = 0;
+            int empty = 0;
+            int start = 0;
+            while (true) {
+                int end = start;
+                int equals = -1;
+                int hash = 0;
+                for (; end < length; end++) {
+                    final char c = query.charAt(end);
+                    if (c == '&') {
+                        break;
+                    }
+                    if (equals == -1) {
+                        if (c == '=') {
+                            equals = end;
+                        } else {
+                            hash = 31 * hash + decode(c);
+                        }
+                    }
+                }
+                if (count == hashes.length) {
+                    bounds = copyOf(bounds, bounds.length * 2);
+                    hashes = copyOf(hashes, hashes.length * 2);
+                }
+                bounds[count * 3] = start;
+                bounds[count * 3 + 1] = (equals == -1) ? end : equals;
+                bounds[count * 3 + 2] = end;
+                hashes[count] = hash;
+                count++;
+                if (end == start) {
+                    empty++;
+                }
+                if (end == length) {
+                    break;
+                }
+                start = end + 1;
+            }
+
+            this.bounds = bounds;
+            this.hashes = hashes;
+            this.count = count;
+            this.visibleCount = count - empty;
+            if (empty == 0) {
+                this.visible = null;
+            } else {
+                this.visible = new int[visibleCount];
+                for (int seq = 0, i = 0; seq < count; seq++) {
+                    if (!isEmpty(seq)) {
+                        visible[i++] = seq;
+                    }
+                }
+            }
+            this.pairs = new NameValue[visibleCount];
+        }
+
+        int start(final int seq) {
+            return bounds[seq * 3];
+        }
+
+        int equals(final int seq) {
+            return bounds[seq * 3 + 1];
+        }
+
+        int end(final int seq) {
+            return bounds[seq * 3 + 2];
+        }
+
+        boolean isEmpty(final int seq) {
+            return bounds[seq * 3] == bounds[seq * 3 + 2];
+        }
+
+        private static int[] copyOf(final int[] array, final int length) {
+            final int[] result = new int[length];
+            System.arraycopy(array, 0, result, 0, array.length);
+            return result;
+        }
+    }
+
+    /**
+     * Open-addressing hash table from decoded names to the first sequence with that name.
+     * Sequences sharing a name are chained in query order through {@link #next}.
+     */
+    private static final class Table {
+
+        /** First sequence index plus one, 0 for free slots. Length is a power of two. */
+        private final int[] slots;
+        private final int[] next;
+
+        Table(final QueryIndex index, final Sequences s) {
+            int capacity = 2;
+            while (capacity < s.count * 2) {
+                capacity <<= 1;
+            }
+            final int mask = capacity - 1;
+            final int[] slots = new int[capacity];
+            final int[] next = new int[s.count];
+
+            // Going backwards and prepending keeps every chain in query order.
+            for (int seq = s.count - 1; seq >= 0; seq--) {
+                final int hash = s.hashes[seq];
+                int slot = spread(hash) & mask;
+                while (true) {
+                    final int head = slots[slot] - 1;
+                    if (head == -1) {
+                        next[seq] = -1;
+                        break;
+                    }
+                    if (s.hashes[head] == hash && index.sameDecodedName(s, head, seq)) {
+                        next[seq] = head;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = seq + 1;
+            }
+
+            this.slots = slots;
+            this.next = next;
+        }
+    }
+
+}
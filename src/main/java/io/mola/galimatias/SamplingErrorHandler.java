@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link io.mola.galimatias.ErrorHandler} that keeps a bounded random sample
+ * of the inputs that caused errors, for each {@link ParseIssue} and separately
+ * for recoverable and fatal errors. Errors are then passed on to another
+ * handler, which decides whether parsing goes on.
+ *
+ * Each sample is a reservoir: every error seen so far has the same chance of
+ * being in it, no matter how many there were. Memory is bounded by the sample
+ * size and the maximum input length; inputs are only copied (and truncated)
+ * when they are selected. Recording is lock-free and
+ * {@link #snapshot()} can be called at any time.
+ */
+public final class SamplingErrorHandler implements ErrorHandler {
+
+    /**
+     * Default number of inputs sampled per issue.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+    /**
+     * Default maximum length of sampled inputs. Longer inputs are truncated.
+     */
+    public static final int DEFAULT_MAX_INPUT_LENGTH = 1024;
+
+    private static final ParseIssue[] ISSUES = ParseIssue.values();
+
+    private final ErrorHandler delegate;
+    private final int sampleSize;
+    private final int maxInputLength;
+    private final long seed;
+
+    // Recoverable errors go first, fatal errors after them
+    private final AtomicLongArray counts;
+    private final AtomicReferenceArray<Sample> samples;
+
+    private SamplingErrorHandler(final ErrorHandler delegate, final int sampleSize, final int maxInputLength) {
+        this.delegate = delegate;
+        this.sampleSize = sampleSize;
+        this.maxInputLength = maxInputLength;
+        this.seed = System.nanoTime() ^ System.identityHashCode(this);
+        this.counts = new AtomicLongArray(ISSUES.length * 2);
+        this.samples = new AtomicReferenceArray<Sample>(ISSUES.length * 2 * sampleSize);
+    }
+
+    /**
+     * Samples up to {@link #DEFAULT_SAMPLE_SIZE} inputs per issue, up to
+     * {@link #DEFAULT_MAX_INPUT_LENGTH} characters long, and otherwise
+     * behaves as {@link DefaultErrorHandler}.
+     */
+    public static SamplingErrorHandler create() {
+        return create(DefaultErrorHandler.getInstance(), DEFAULT_SAMPLE_SIZE, DEFAULT_MAX_INPUT_LENGTH);
+    }
+
+    /**
+     * @param delegate Handler errors are passed on to after sampling.
+     * @param sampleSize Maximum number of inputs kept per issue.
+     * @param maxInputLength Inputs are truncated to this length.
+     */
+    public static SamplingErrorHandler create(final ErrorHandler delegate, final int sampleSize,
+                                              final int maxInputLength) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be positive");
+        }
+        if (maxInputLength < 0) {
+            throw new IllegalArgumentException("maxInputLength must not be negative");
+        }
+        return new SamplingErrorHandler(delegate, sampleSize, maxInputLength);
+    }
+
+    @Override
+    public void error(final GalimatiasParseException error) throws GalimatiasParseException {
+        sample(error, false);
+        delegate.error(error);
+    }
+
+    @Override
+    public void fatalError(final GalimatiasParseException error) {
+        sample(error, true);
+        delegate.fatalError(error);
+    }
+
+    private void sample(final GalimatiasParseException error, final boolean fatal) {
+        final int reservoir = reservoir(error.getParseIssue(), fatal);
+        final long seen = counts.incrementAndGet(reservoir);
+        final long slot;
+        if (seen <= sampleSize) {
+            slot = seen - 1;
+        } else {
+            // Algorithm R: keep the n-th error with probability sampleSize / n
+            slot = (mix(seed + seen) >>> 1) % seen;
+            if (slot >= sampleSize) {
+                return;
+            }
+        }
+        samples.set(reservoir * sampleSize + (int) slot, new Sample(error, fatal, maxInputLength));
+    }
+
+    private static int reservoir(final ParseIssue issue, final boolean fatal) {
+        final int ordinal = (issue == null) ? ParseIssue.UNSPECIFIED.ordinal() : issue.ordinal();
+        return fatal ? ISSUES.length + ordinal : ordinal;
+    }
+
+    /**
+     * SplitMix64 finalizer. It maps consecutive counts to well-distributed
+     * values without any shared random generator state.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Copies the current samples. While errors are being recorded, counts and
+     * samples may be slightly out of sync.
+     */
+    public Snapshot snapshot() {
+        final long[] countsCopy = new long[counts.length()];
+        final List<List<Sample>> samplesCopy = new ArrayList<List<Sample>>(counts.length());
+        for (int reservoir = 0; reservoir < countsCopy.length; reservoir++) {
+            countsCopy[reservoir] = counts.get(reservoir);
+            final List<Sample> list = new ArrayList<Sample>();
+            for (int i = 0; i < sampleSize; i++) {
+                final Sample sample = samples.get(reservoir * sampleSize + i);
+                if (sample != null) {
+                    list.add(sample);
+                }
+            }
+            samplesCopy.add(Collections.unmodifiableList(list));
+        }
+        return new Snapshot(countsCopy, samplesCopy);
+    }
+
+    /**
+     * An input that caused an error.
+     */
+    public static final class Sample {
+
+        private final String input;
+        private final boolean truncated;
+        private final int position;
+        private final ParseIssue parseIssue;
+        private final String message;
+        private final boolean fatal;
+
+        private Sample(final GalimatiasParseException error, final boolean fatal, final int maxInputLength) {
+            final String errorInput = error.getInput();
+            if (errorInput != null && errorInput.length() > maxInputLength) {
+                // new String, so that the sample does not hold the whole input
+                this.input = new String(errorInput.substring(0, maxInputLength));
+                this.truncated = true;
+            } else {
+                this.input = errorInput;
+                this.truncated = false;
+            }
+            this.position = error.getPosition();
+            this.parseIssue = error.getParseIssue();
+            this.message = error.getMessage();
+            this.fatal = fatal;
+        }
+
+        /**
+         * @return The input, possibly truncated, or null if the error did not come from the URL parser.
+         */
+        public String getInput() {
+            return input;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * @return Position of the error in the original input, or -1 if unknown.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public ParseIssue getParseIssue() {
+            return parseIssue;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isFatal() {
+            return fatal;
+        }
+
+        @Override
+        public String toString() {
+            return (fatal ? "fatal " : "") + parseIssue + " at " + position + ": " + message +
+                    ((input == null) ? "" : " [" + input + (truncated ? "...]" : "]"));
+        }
+
+    }
+
+    /**
+     * Samples and error counts at some point in time.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final List<List<Sample>> samples;
+
+        private Snapshot(final long[] counts, final List<List<Sample>> samples) {
+            this.counts = counts;
+            this.samples = samples;
+        }
+
+        /**
+         * @return Number of recoverable errors seen for the given issue.
+         */
+        public long errorCount(final ParseIssue issue) {
+            return counts[reservoir(checkIssue(issue), false)];
+        }
+
+        /**
+         * @return Number of fatal errors seen for the given issue.
+         */
+        public long fatalErrorCount(final ParseIssue issue) {
+            return counts[reservoir(checkIssue(issue), true)];
+        }
+
+        /**
+         * @return Sampled recoverable errors for the given issue, in no particular order.
+         */
+        public List<Sample> errors(final ParseIssue issue) {
+            return samples.get(reservoir(checkIssue(issue), false));
+        }
+
+        /**
+         * @return Sampled fatal errors for the given issue, in no particular order.
+         */
+        public List<Sample> fatalErrors(final ParseIssue issue) {
+            return samples.get(reservoir(checkIssue(issue), true));
+        }
+
+        private static ParseIssue checkIssue(final ParseIssue issue) {
+            if (issue == null) {
+                throw new NullPointerException("issue");
+            }
+            return issue;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for (final ParseIssue issue : ISSUES) {
+                for (final boolean fatal : new boolean[] { false, true }) {
+                    final long count = counts[reservoir(issue, fatal)];
+                    if (count == 0) {
+                        continue;
+                    }
+                    sb.append(issue).append(fatal ? " (fatal)" : "").append(": ").append(count).append('\n');
+                    for (final Sample sample : samples.get(reservoir(issue, fatal))) {
+                        sb.append("  ").append(sample).append('\n');
+                    }
+                }
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.Serializable;
+
+/**
+ * Describes a URL scheme: its name, whether URLs with this scheme are hierarchical
+ * (i.e. have host, port and path) and its default port.
+ *
+ * The schemes defined in the URL Standard are available as constants. Other hierarchical
+ * schemes can be added to a {@link SchemeRegistry}; any scheme that is not registered
+ * is parsed as opaque (i.e. only scheme data).
+ *
+ * This class is immutable.
+ */
+public final class Scheme implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final Scheme FTP = new Scheme("ftp", true, 21);
+    public static final Scheme FILE = new Scheme("file", true, -1);
+    public static final Scheme GOPHER = new Scheme("gopher", true, 70);
+    public static final Scheme HTTP = new Scheme("http", true, 80);
+    public static final Scheme HTTPS = new Scheme("https", true, 443);
+    public static final Scheme WS = new Scheme("ws", true, 80);
+    public static final Scheme WSS = new Scheme("wss", true, 443);
+
+    private final String name;
+    private final boolean hierarchical;
+    private final int defaultPort;
+
+    private Scheme(final String name, final boolean hierarchical, final int defaultPort) {
+        this.name = name;
+        this.hierarchical = hierarchical;
+        this.defaultPort = defaultPort;
+    }
+
+    /**
+     * Creates a hierarchical scheme (e.g. s3, git, ssh), to be added to a {@link SchemeRegistry}.
+     *
+     * @param name Scheme name. It must be lowercase and valid according to the URL Standard
+     *             (an ASCII letter followed by ASCII letters, digits, "+", "-" or ".").
+     * @param defaultPort Default port (0-65535), or -1 if there is none.
+     */
+    public static Scheme hierarchical(final String name, final int defaultPort) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid scheme name: " + name);
+        }
+        if (defaultPort < -1 || defaultPort > 65535) {
+            throw new IllegalArgumentException("Invalid default port: " + defaultPort);
+        }
+        return new Scheme(name.intern(), true, defaultPort);
+    }
+
+    /**
+     * Describes a scheme that is not registered. Its name is not validated, since it
+     * has already been parsed.
+     */
+    static Scheme opaque(final String name) {
+        return new Scheme(name, false, -1);
+    }
+
+    private static boolean isValidName(final String name) {
+        if (name.isEmpty() || name.charAt(0) < 'a' || name.charAt(0) > 'z') {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if ((c < 'a' || c > 'z') && (c < '0' || c > '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object readResolve() {
+        // Keeps well-known schemes unique, they are compared by identity
+        final Scheme known = SchemeRegistry.getDefault().get(name);
+        return equals(known) ? known : this;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isHierarchical() {
+        return hierarchical;
+    }
+
+    /**
+     * @return Default port, or -1 if there is none.
+     */
+    public int defaultPort() {
+        return defaultPort;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Scheme)) {
+            return false;
+        }
+        final Scheme other = (Scheme) o;
+        return name.equals(other.name) && hierarchical == other.hierarchical && defaultPort == other.defaultPort;
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of schemes that are parsed as hierarchical URLs, with their default ports.
+ *
+ * The default registry has the schemes defined in the URL Standard (ftp, file, gopher,
+ * http, https, ws, wss). Others can be added with {@link #withScheme(Scheme)} and used
+ * through {@link URLParsingSettings#withSchemeRegistry(SchemeRegistry)}:
+ *
+ * <pre>
+ * <code>
+ *  SchemeRegistry registry = SchemeRegistry.getDefault()
+ *      .withScheme(Scheme.hierarchical("s3", -1))
+ *      .withScheme(Scheme.hierarchical("ssh", 22));
+ *  URLParsingSettings settings = URLParsingSettings.create()
+ *      .withSchemeRegistry(registry);
+ * </code>
+ * </pre>
+ *
+ * Lookups go through an open-addressing hash table and can be done on a
+ * {@link CharSequence} (i.e. the parser buffer) without allocating a String.
+ *
+ * This class is immutable.
+ */
+public final class SchemeRegistry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final SchemeRegistry DEFAULT = new SchemeRegistry(new Scheme[] {
+            Scheme.FTP, Scheme.FILE, Scheme.GOPHER, Scheme.HTTP, Scheme.HTTPS, Scheme.WS, Scheme.WSS
+    });
+
+    private final Scheme[] schemes;
+    private final Scheme[] table;
+    private final int mask;
+
+    private SchemeRegistry(final Scheme[] schemes) {
+        this.schemes = schemes;
+        // At most half full
+        int capacity = 16;
+        while (capacity < schemes.length * 2) {
+            capacity <<= 1;
+        }
+        this.table = new Scheme[capacity];
+        this.mask = capacity - 1;
+        for (final Scheme scheme : schemes) {
+            int slot = scheme.name().hashCode() & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = scheme;
+        }
+    }
+
+    private Object readResolve() {
+        return Arrays.equals(schemes, DEFAULT.schemes) ? DEFAULT : this;
+    }
+
+    /**
+     * Gets the registry with the schemes defined in the URL Standard.
+     */
+    public static SchemeRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets a new registry with an additional scheme.
+     *
+     * @throws IllegalArgumentException If a scheme with the same name is already registered.
+     */
+    public SchemeRegistry withScheme(final Scheme scheme) {
+        if (scheme == null) {
+            throw new NullPointerException("scheme");
+        }
+        if (get(scheme.name()) != null) {
+            throw new IllegalArgumentException("Scheme is already registered: " + scheme.name());
+        }
+        final Scheme[] newSchemes = new Scheme[schemes.length + 1];
+        System.arraycopy(schemes, 0, newSchemes, 0, schemes.length);
+        newSchemes[schemes.length] = scheme;
+        return new SchemeRegistry(newSchemes);
+    }
+
+    /**
+     * Gets a registered scheme by its (lowercase) name.
+     *
+     * @return The scheme, or null if it is not registered.
+     */
+    public Scheme get(final CharSequence name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        // Same as String.hashCode()
+        int hash = 0;
+        final int length = name.length();
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final Scheme scheme = table[slot];
+            if (scheme == null) {
+                return null;
+            }
+            if (scheme.name().contentEquals(name)) {
+                return scheme;
+            }
+        }
+    }
+
+    /**
+     * @return true if the scheme is registered, and thus parsed as hierarchical.
+     */
+    public boolean isHierarchical(final CharSequence name) {
+        final Scheme scheme = get(name);
+        return scheme != null && scheme.isHierarchical();
+    }
+
+    /**
+     * @return Default port of the scheme, or -1 if there is none or it is not registered.
+     */
+    public int defaultPort(final CharSequence name) {
+        final Scheme scheme = get(name);
+        return (scheme == null) ? -1 : scheme.defaultPort();
+    }
+
+    /**
+     * @return Registered schemes, in registration order.
+     */
+    public List<Scheme> schemes() {
+        return Collections.unmodifiableList(Arrays.asList(schemes));
+    }
+
+    @Override
+    public String toString() {
+        return schemes().toString();
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+
+/**
+ * Receives notifications of the start and end of expensive operations:
+ * URL parsing, IDNA conversions, canonicalization and form-urlencoded parsing.
+ *
+ * It is meant to bridge galimatias with tracing and monitoring tools, such as
+ * Java Flight Recorder (see the <code>galimatias-jfr</code> module). A single
+ * tracer can be installed for the whole JVM with {@link #install(Tracer)}.
+ * When none is installed (the default), operations only check a volatile field.
+ *
+ * Each <code>beginX</code> method returns a token that is passed to the matching
+ * <code>endX</code> method, usually an object holding the start time. If it
+ * returns null, <code>endX</code> is not called. Both are called from the thread
+ * running the operation, and they must be thread-safe.
+ *
+ * All methods do nothing by default.
+ */
+public abstract class Tracer {
+
+    private static volatile Tracer installed;
+
+    /**
+     * Installs a tracer, replacing the current one.
+     *
+     * @param tracer Tracer to install, or null to uninstall the current one.
+     */
+    public static void install(final Tracer tracer) {
+        installed = tracer;
+    }
+
+    /**
+     * @return The installed tracer, or null if there is none.
+     */
+    public static Tracer get() {
+        return installed;
+    }
+
+    public Object beginParse() {
+        return null;
+    }
+
+    /**
+     * @param inputLength Length of the input string.
+     * @param outcome Outcome of the parse. {@link ParseMetrics.Outcome#FAILED} if it threw an exception.
+     */
+    public void endParse(final Object token, final int inputLength, final ParseMetrics.Outcome outcome) {
+
+    }
+
+    public Object beginIDNA() {
+        return null;
+    }
+
+    /**
+     * @param toASCII True for <strong>name to ASCII</strong>, false for <strong>name to Unicode</strong>.
+     * @param inputLength Length of the domain.
+     * @param success False if the conversion failed with an exception.
+     */
+    public void endIDNA(final Object token, final boolean toASCII, final int inputLength, final boolean success) {
+
+    }
+
+    public Object beginCanonicalize() {
+        return null;
+    }
+
+    /**
+     * Called by {@link io.mola.galimatias.canonicalize.CombinedCanonicalizer} for each canonicalizer it runs.
+     * Built-in canonicalizers that run fused in a single pass are reported as one canonicalizer.
+     *
+     * @param success False if the canonicalizer threw an exception.
+     */
+    public void endCanonicalize(final Object token, final URLCanonicalizer canonicalizer, final boolean success) {
+
+    }
+
+    public Object beginFormURLEncodedParse() {
+        return null;
+    }
+
+    /**
+     * @param inputLength Length of the input string.
+     * @param pairs Number of name-value pairs, or -1 if parsing threw an exception.
+     */
+    public void endFormURLEncodedParse(final Object token, final int inputLength, final int pairs) {
+
+    }
+
+}
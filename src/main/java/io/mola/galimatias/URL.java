@@ -21,13 +21,14 @@
  */
 package io.mola.galimatias;
 
+import io.mola.galimatias.canonicalize.CanonicalFormMarker;
+
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * A parsed URL. Immutable.
@@ -38,6 +39,10 @@ public class URL implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private final String scheme;
+    /** Null for URLs serialized before it was added. */
+    private final Scheme schemeDescriptor;
+    /** Registry the URL was parsed with, used to parse changes. Null for URLs serialized before it was added. */
+    private final SchemeRegistry schemeRegistry;
     private final String schemeData;
     private final String username;
     private final String password;
@@ -49,17 +54,48 @@ public class URL implements Serializable {
 
     private final boolean isHierarchical;
 
-    URL(final String scheme, final String schemeData,
+    /**
+     * Bitset of {@link CanonicalForm}s this URL is known to satisfy. It is only set on
+     * instances that have not been published yet, so URLs stay effectively immutable.
+     */
+    private transient int canonicalForms;
+
+    static {
+        CanonicalFormMarker.install(new CanonicalFormMarker() {
+            @Override
+            protected void markCanonical(final URL url, final CanonicalForm form) {
+                url.markCanonical(form);
+            }
+        });
+    }
+
+    /**
+     * Lazily created by {@link #searchParameters()}. It is immutable, so it is safe to
+     * publish without synchronization.
+     */
+    private transient URLSearchParameters searchParameters;
+
+    /**
+     * Set by the parser or lazily created by {@link #pathSegments()}. It is immutable, so it
+     * is safe to publish without synchronization.
+     */
+    private transient PathSegments pathSegments;
+
+    URL(final Scheme scheme, final SchemeRegistry schemeRegistry, final String schemeData,
         final String username, final String password,
         final Host host, final int port,
-        final Iterable<String> pathSegments,
+        final PathSegments pathSegments,
         final String query, final String fragment,
         final boolean isHierarchical) {
-        this(scheme, schemeData, username, password, host, port, pathSegmentsToString(pathSegments),
+        this(scheme, schemeRegistry, schemeData, username, password, host, port,
+                (pathSegments == null)? null : pathSegments.path(),
                 query, fragment, isHierarchical);
+        if (this.path != null) {
+            this.pathSegments = pathSegments;
+        }
     }
 
-    URL(final String scheme, final String schemeData,
+    URL(final Scheme scheme, final SchemeRegistry schemeRegistry, final String schemeData,
             final String username, final String password,
             final Host host, final int port,
             final String path,
@@ -68,14 +104,16 @@ public class URL implements Serializable {
         if (scheme == null) {
             throw new NullPointerException("scheme cannot be null");
         }
-        this.scheme = scheme;
+        this.scheme = scheme.name();
+        this.schemeDescriptor = scheme;
+        this.schemeRegistry = schemeRegistry;
         this.schemeData = (schemeData == null)? "" : schemeData;
         if (isHierarchical) {
             this.username = (username == null)? "" : username;
             this.password = password;
             this.host = host;
             //XXX: This is already done in some cases by the URLParser
-            this.port = (port == defaultPort(this.scheme))? -1 : port;
+            this.port = (port == scheme.defaultPort())? -1 : port;
             this.path = path;
         } else {
             this.username = "";
@@ -116,7 +154,7 @@ public class URL implements Serializable {
         if (password == null) {
             return username;
         }
-        return String.format("%s:%s", username, password);
+        return username + ':' + password;
     }
 
     public Host host() {
@@ -146,27 +184,52 @@ public class URL implements Serializable {
         return (port == -1)? defaultPort() : port;
     }
 
-    private static int defaultPort(final String scheme) {
-        String defaultPort = URLUtils.getDefaultPortForScheme(scheme);
-        if (defaultPort == null) {
-            return -1;
+    public int defaultPort() {
+        return schemeDescriptor().defaultPort();
+    }
+
+    SchemeRegistry schemeRegistry() {
+        return (schemeRegistry == null)? SchemeRegistry.getDefault() : schemeRegistry;
+    }
+
+    /**
+     * Settings to parse changes to this URL, so that they know the same schemes.
+     */
+    private URLParsingSettings settings() {
+        final SchemeRegistry registry = schemeRegistry();
+        if (registry == SchemeRegistry.getDefault()) {
+            return URLParsingSettings.create();
         }
-        return Integer.parseInt(defaultPort);
+        return URLParsingSettings.create().withSchemeRegistry(registry);
     }
 
-    public int defaultPort() {
-        return defaultPort(scheme);
+    Scheme schemeDescriptor() {
+        if (schemeDescriptor != null) {
+            return schemeDescriptor;
+        }
+        final Scheme known = SchemeRegistry.getDefault().get(scheme);
+        return (known == null)? Scheme.opaque(scheme) : known;
     }
 
     public String path() {
         return path;
     }
 
+    /**
+     * Gets the path segments, without the leading slash.
+     *
+     * @return A read-only list, or null if the URL is not hierarchical.
+     */
     public List<String> pathSegments() {
         if (!isHierarchical) {
             return null;
         }
-        return pathStringToSegments(path);
+        PathSegments segments = pathSegments;
+        if (segments == null) {
+            segments = PathSegments.parse(path);
+            pathSegments = segments;
+        }
+        return segments;
     }
 
     public String query() {
@@ -188,28 +251,7 @@ public class URL implements Serializable {
         if (query == null || query.isEmpty()) {
             return null;
         }
-        int start = 0;
-        do {
-            final int nextAmpersand = query.indexOf('&', start);
-            final int end = (nextAmpersand == -1)? query.length() : nextAmpersand;
-            int nextEquals = query.indexOf('=', start);
-            if (nextEquals == -1 || nextEquals > end) {
-                nextEquals = end;
-            }
-            final int thisNameLength = nextEquals - start;
-            final int thisValueLength = end - nextEquals;
-            if (thisNameLength == name.length() && query.regionMatches(start, name, 0, name.length())) {
-                if (thisValueLength == 0) {
-                    return "";
-                }
-                return query.substring(nextEquals + 1, end);
-            }
-            if (nextAmpersand == -1) {
-                break;
-            }
-            start = nextAmpersand + 1;
-        } while (true);
-        return null;
+        return searchParameters().rawValue(name);
     }
 
     /**
@@ -225,34 +267,20 @@ public class URL implements Serializable {
         if (query == null || query.isEmpty()) {
             return null;
         }
-        int start = 0;
-        final List<String> result = new ArrayList<String>();
-        do {
-            final int nextAmpersand = query.indexOf('&', start);
-            final int end = (nextAmpersand == -1) ? query.length() : nextAmpersand;
-            int nextEquals = query.indexOf('=', start);
-            if (nextEquals == -1 || nextEquals > end) {
-                nextEquals = end;
-            }
-            final int thisNameLength = nextEquals - start;
-            final int thisValueLength = end - nextEquals;
-            if (thisNameLength == name.length() && query.regionMatches(start, name, 0, name.length())) {
-                if (thisValueLength == 0) {
-                    result.add("");
-                } else {
-                    result.add(query.substring(nextEquals + 1, end));
-                }
-            }
-            if (nextAmpersand == -1) {
-                break;
-            }
-            start = nextAmpersand + 1;
-        } while (true);
-        return result;
+        return searchParameters().rawValues(name);
     }
 
+    /**
+     * Gets the query parameters. They are created on first use and cached, names and values
+     * are decoded as they are read.
+     */
     public URLSearchParameters searchParameters() {
-        return new URLSearchParameters(query);
+        URLSearchParameters result = searchParameters;
+        if (result == null) {
+            result = new URLSearchParameters(query);
+            searchParameters = result;
+        }
+        return result;
     }
 
     public String fragment() {
@@ -298,35 +326,33 @@ public class URL implements Serializable {
         return !isHierarchical;
     }
 
-    private static String pathSegmentsToString(final Iterable<String> segments) {
-        if (segments == null) {
-            return null;
-        }
-        final StringBuilder output = new StringBuilder();
-        for (final String segment : segments) {
-            output.append('/').append(segment);
-        }
-        if (output.length() == 0) {
-            return "/";
-        }
-        return output.toString();
+    /**
+     * Whether this URL is known to satisfy a given canonical form. A false
+     * result means that it is not known, not that the URL is not canonical.
+     *
+     * @param form Canonical form.
+     * @return true if the URL is known to be in the given form.
+     */
+    public boolean isCanonical(final CanonicalForm form) {
+        return (canonicalForms & (1 << form.ordinal())) != 0;
     }
 
-    private static List<String> pathStringToSegments(String path) {
-        if (path == null) {
-            return new ArrayList<String>();
-        }
-        if (path.startsWith("/")) {
-            path = path.substring(1);
-        }
-        final String[] segments = path.split("/", -1);
-        final List<String> result = new ArrayList<String>(segments.length + 1);
-        if (segments.length == 0) {
-            result.add("");
-            return result;
-        }
-        result.addAll(Arrays.asList(segments));
-        return result;
+    /**
+     * Records that this URL satisfies a given canonical form. Only built-in canonicalizers
+     * do it (through {@link CanonicalFormMarker}), on the URLs they build. It does not
+     * affect {@link #equals(Object)} or serialization.
+     */
+    void markCanonical(final CanonicalForm form) {
+        canonicalForms |= 1 << form.ordinal();
+    }
+
+    /**
+     * Copies known canonical forms from a URL this one was derived from, for changes
+     * that cannot make a canonical URL non-canonical (i.e. host, port or removing parts).
+     */
+    private URL inheritCanonicalForms(final URL other) {
+        canonicalForms = other.canonicalForms;
+        return this;
     }
 
     /**
@@ -347,7 +373,7 @@ public class URL implements Serializable {
      * @throws GalimatiasParseException
      */
     public URL resolve(final String input) throws GalimatiasParseException {
-        return new URLParser(this, input).parse();
+        return new URLParser(this, input).settings(settings()).parse();
     }
 
     /**
@@ -463,10 +489,10 @@ public class URL implements Serializable {
         if (newScheme.isEmpty()) {
             throw new GalimatiasParseException("empty scheme");
         }
-        if (URLUtils.isRelativeScheme(newScheme) == URLUtils.isRelativeScheme(this.scheme)) {
-            return new URLParser(newScheme + ":", this, URLParser.ParseURLState.SCHEME_START).parse();
+        if (schemeRegistry().isHierarchical(newScheme.toLowerCase(Locale.ENGLISH)) == schemeDescriptor().isHierarchical()) {
+            return new URLParser(newScheme + ":", this, URLParser.ParseURLState.SCHEME_START).settings(settings()).parse();
         }
-        return new URLParser(toString().replaceFirst(this.scheme, newScheme)).parse();
+        return new URLParser(toString().replaceFirst(this.scheme, newScheme)).settings(settings()).parse();
     }
 
     public URL withUsername(String newUserName) throws GalimatiasParseException {
@@ -477,7 +503,7 @@ public class URL implements Serializable {
         if (this.username.equals(newUserName)) {
             return this;
         }
-        return new URL(this.scheme, this.schemeData, newUserName, this.password, this.host, this.port, this.path, this.query, this.fragment, true);
+        return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, newUserName, this.password, this.host, this.port, this.path, this.query, this.fragment, true);
     }
 
     public URL withPassword(String newPassword) throws GalimatiasParseException {
@@ -488,7 +514,7 @@ public class URL implements Serializable {
             return this;
         }
         newPassword = (newPassword == null || newPassword.isEmpty())? null : new URLParser(newPassword).parsePassword();
-        return new URL(this.scheme, this.schemeData, this.username, newPassword, this.host, this.port, this.path, this.query, this.fragment, true);
+        return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, newPassword, this.host, this.port, this.path, this.query, this.fragment, true);
     }
 
     public URL withHost(final String newHost) throws GalimatiasParseException {
@@ -508,7 +534,8 @@ public class URL implements Serializable {
         if (this.host != null && this.host.equals(newHost)) {
             return this;
         }
-        return new URL(this.scheme, this.schemeData, this.username, this.password, newHost, this.port, this.path, this.query, this.fragment, true);
+        return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, this.password, newHost, this.port, this.path, this.query, this.fragment, true)
+                .inheritCanonicalForms(this);
     }
 
     public URL withPort(final int newPort) throws GalimatiasParseException {
@@ -521,7 +548,8 @@ public class URL implements Serializable {
         if (this.port == -1 && newPort == defaultPort()) {
             return this;
         }
-        return new URL(this.scheme, this.schemeData, this.username, this.password, this.host, newPort, this.path, this.query, this.fragment, true);
+        return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, this.password, this.host, newPort, this.path, this.query, this.fragment, true)
+                .inheritCanonicalForms(this);
     }
 
     public URL withPath(final String newPath) throws GalimatiasParseException {
@@ -539,10 +567,11 @@ public class URL implements Serializable {
             return this;
         }
         if (newQuery == null) {
-            return new URL(this.scheme, this.schemeData, this.username, this.password, this.host, this.port, this.path, null, this.fragment, true);
+            return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, this.password, this.host, this.port, this.path, null, this.fragment, true)
+                    .inheritCanonicalForms(this);
         }
         if (newQuery.isEmpty()) {
-            return new URL(this.scheme, this.schemeData, this.username, this.password, this.host, this.port, this.path, newQuery, this.fragment, true);
+            return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, this.password, this.host, this.port, this.path, newQuery, this.fragment, true);
         }
         final String parseQuery = (newQuery.charAt(0) == '?')? newQuery.substring(1, newQuery.length()) : newQuery;
         return new URLParser(parseQuery, this, URLParser.ParseURLState.QUERY).parse();
@@ -559,10 +588,11 @@ public class URL implements Serializable {
             return this;
         }
         if (newFragment == null) {
-            return new URL(this.scheme, this.schemeData, this.username, this.password, this.host, this.port, this.path, this.query, null, true);
+            return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, this.password, this.host, this.port, this.path, this.query, null, true)
+                    .inheritCanonicalForms(this);
         }
         if (newFragment.isEmpty()) {
-            return new URL(this.scheme, this.schemeData, this.username, this.password, this.host, this.port, this.path, this.query, newFragment, true);
+            return new URL(schemeDescriptor(), schemeRegistry(), this.schemeData, this.username, this.password, this.host, this.port, this.path, this.query, newFragment, true);
         }
         final String parseFragment = (newFragment.charAt(0) == '#')? newFragment.substring(1, newFragment.length()) : newFragment;
         return new URLParser(parseFragment, this, URLParser.ParseURLState.FRAGMENT).parse();
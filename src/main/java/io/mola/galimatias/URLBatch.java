@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses, and optionally canonicalizes, large batches of URLs in parallel.
+ *
+ * Inputs are split into chunks that workers claim one at a time, so that a few slow inputs
+ * do not leave the other workers idle. Results are written at the index of their input, so
+ * output order is input order. Failures are not returned as exceptions but as compact
+ * (index, {@link ParseIssue}, position) records.
+ *
+ * The {@link ErrorHandler} of the settings and the canonicalizer are shared by all workers,
+ * so they must be thread-safe. All the built-in ones are.
+ */
+public final class URLBatch {
+
+    /** Batches smaller than this are parsed in the calling thread. */
+    private static final int MIN_PARALLEL_SIZE = 2048;
+    private static final int MIN_CHUNK_SIZE = 256;
+    /** Target number of chunks per worker, to balance load. */
+    private static final int CHUNKS_PER_WORKER = 8;
+
+    private URLBatch() {}
+
+    /**
+     * Parses a batch on a shared pool with one thread per available processor.
+     *
+     * @param inputs URL strings. Must not contain null elements.
+     * @param settings Parsing settings, or null for the defaults.
+     * @param canonicalizer Canonicalizer applied to every parsed URL, or null.
+     */
+    public static Result parseAll(final List<? extends CharSequence> inputs,
+                                  final URLParsingSettings settings,
+                                  final URLCanonicalizer canonicalizer) throws InterruptedException {
+        return parseAll(inputs, settings, canonicalizer, SharedPool.EXECUTOR, SharedPool.PARALLELISM);
+    }
+
+    /**
+     * Parses a batch on the given executor, using up to {@code parallelism} workers, one of
+     * them being the calling thread.
+     *
+     * @see #parseAll(java.util.List, URLParsingSettings, io.mola.galimatias.canonicalize.URLCanonicalizer)
+     */
+    public static Result parseAll(final List<? extends CharSequence> inputs,
+                                  final URLParsingSettings settings,
+                                  final URLCanonicalizer canonicalizer,
+                                  final ExecutorService executor,
+                                  final int parallelism) throws InterruptedException {
+        if (inputs == null) {
+            throw new NullPointerException("inputs");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+
+        final int size = inputs.size();
+        final int workers = (size < MIN_PARALLEL_SIZE) ? 1 : parallelism;
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (workers * CHUNKS_PER_WORKER) + 1);
+        final Batch batch = new Batch(inputs, (settings == null) ? URLParsingSettings.create() : settings,
+                canonicalizer, chunkSize);
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>(workers - 1);
+        try {
+            for (int i = 1; i < workers; i++) {
+                futures.add(executor.submit(batch));
+            }
+            batch.call();
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return batch.result();
+    }
+
+    /**
+     * URLs and failures of a batch.
+     */
+    public static final class Result {
+
+        private final URL[] urls;
+        private final int[] failureIndexes;
+        private final ParseIssue[] failureIssues;
+        private final int[] failurePositions;
+
+        private Result(final URL[] urls, final int[] failureIndexes, final ParseIssue[] failureIssues,
+                       final int[] failurePositions) {
+            this.urls = urls;
+            this.failureIndexes = failureIndexes;
+            this.failureIssues = failureIssues;
+            this.failurePositions = failurePositions;
+        }
+
+        /**
+         * Gets the URLs, in input order, with null for failed inputs. The array is not copied.
+         */
+        public URL[] urls() {
+            return urls;
+        }
+
+        public int size() {
+            return urls.length;
+        }
+
+        public int failureCount() {
+            return failureIndexes.length;
+        }
+
+        /**
+         * Gets the input indexes of failures, in increasing order. The array is not copied.
+         */
+        public int[] failureIndexes() {
+            return failureIndexes;
+        }
+
+        /**
+         * Gets the {@link ParseIssue} of the failure at the given position of
+         * {@link #failureIndexes()}.
+         */
+        public ParseIssue failureIssue(final int failure) {
+            return failureIssues[failure];
+        }
+
+        /**
+         * Gets the input position reported by the failure at the given position of
+         * {@link #failureIndexes()}, or -1 if unknown.
+         */
+        public int failurePosition(final int failure) {
+            return failurePositions[failure];
+        }
+    }
+
+    /**
+     * Shared state of a batch. Every worker runs {@link #call()} until there are no chunks left.
+     */
+    private static final class Batch implements Callable<Void> {
+
+        private final List<? extends CharSequence> inputs;
+        private final URLParsingSettings settings;
+        private final URLCanonicalizer canonicalizer;
+        private final int chunkSize;
+        private final URL[] urls;
+        /** Failures of each chunk, if any, so that they can be merged in order. */
+        private final Failures[] failures;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+
+        Batch(final List<? extends CharSequence> inputs, final URLParsingSettings settings,
+              final URLCanonicalizer canonicalizer, final int chunkSize) {
+            this.inputs = inputs;
+            this.settings = settings;
+            this.canonicalizer = canonicalizer;
+            this.chunkSize = chunkSize;
+            this.urls = new URL[inputs.size()];
+            this.failures = new Failures[(inputs.size() + chunkSize - 1) / chunkSize];
+        }
+
+        @Override
+        public Void call() {
+            try {
+                parseChunks();
+            } catch (RuntimeException ex) {
+                // Let other workers stop after their current chunk.
+                nextChunk.set(failures.length);
+                throw ex;
+            }
+            return null;
+        }
+
+        private void parseChunks() {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < failures.length) {
+                final int end = Math.min(urls.length, (chunk + 1) * chunkSize);
+                Failures chunkFailures = null;
+                for (int i = chunk * chunkSize; i < end; i++) {
+                    try {
+                        URL url = URL.parse(settings, inputs.get(i).toString());
+                        if (canonicalizer != null) {
+                            url = canonicalizer.canonicalize(url);
+                        }
+                        urls[i] = url;
+                    } catch (GalimatiasParseException ex) {
+                        if (chunkFailures == null) {
+                            chunkFailures = new Failures();
+                        }
+                        chunkFailures.add(i, ex.getParseIssue(), ex.getPosition());
+                    }
+                }
+                failures[chunk] = chunkFailures;
+            }
+        }
+
+        /**
+         * Only called once every worker is done, which orders it after all their writes.
+         */
+        Result result() {
+            int count = 0;
+            for (final Failures chunkFailures : failures) {
+                if (chunkFailures != null) {
+                    count += chunkFailures.count;
+                }
+            }
+            final int[] indexes = new int[count];
+            final ParseIssue[] issues = new ParseIssue[count];
+            final int[] positions = new int[count];
+            int offset = 0;
+            for (final Failures chunkFailures : failures) {
+                if (chunkFailures != null) {
+                    System.arraycopy(chunkFailures.indexes, 0, indexes, offset, chunkFailures.count);
+                    System.arraycopy(chunkFailures.issues, 0, issues, offset, chunkFailures.count);
+                    System.arraycopy(chunkFailures.positions, 0, positions, offset, chunkFailures.count);
+                    offset += chunkFailures.count;
+                }
+            }
+            return new Result(urls, indexes, issues, positions);
+        }
+    }
+
+    private static final class Failures {
+        private int[] indexes = new int[4];
+        private ParseIssue[] issues = new ParseIssue[4];
+        private int[] positions = new int[4];
+        private int count;
+
+        void add(final int index, final ParseIssue issue, final int position) {
+            if (count == indexes.length) {
+                final int capacity = count * 2;
+                final int[] newIndexes = new int[capacity];
+                final ParseIssue[] newIssues = new ParseIssue[capacity];
+                final int[] newPositions = new int[capacity];
+                System.arraycopy(indexes, 0, newIndexes, 0, count);
+                System.arraycopy(issues, 0, newIssues, 0, count);
+                System.arraycopy(positions, 0, newPositions, 0, count);
+                indexes = newIndexes;
+                issues = newIssues;
+                positions = newPositions;
+            }
+            indexes[count] = index;
+            issues[count] = issue;
+            positions[count] = position;
+            count++;
+        }
+    }
+
+    /**
+     * Lazily created pool of daemon threads for {@link #parseAll(java.util.List, URLParsingSettings, io.mola.galimatias.canonicalize.URLCanonicalizer)}.
+     * The calling thread is one of the workers, so it has one thread less than processors.
+     */
+    private static final class SharedPool {
+        static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, PARALLELISM - 1),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "galimatias-batch-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads newline-delimited files of URLs through memory-mapped windows.
+ *
+ * Lines are handed to a {@link LineVisitor} as byte regions of the mapped file, without creating a
+ * {@link String} unless {@link Line#toString()} is called. Files are read as UTF-8, a trailing
+ * {@code \r} is not part of a line and the last line may lack a terminator.
+ *
+ * A file can be split at line boundaries into {@link Region}s that can be read concurrently,
+ * so that each core reads and parses its own part of the file:
+ *
+ * <pre>
+ * final URLFileReader reader = URLFileReader.open(file);
+ * for (final URLFileReader.Region region : reader.region().split(threads)) {
+ *     executor.submit(... region.forEachLine(visitor) ...);
+ * }
+ * </pre>
+ *
+ * Mapped windows are released by the garbage collector, so the virtual memory in use may
+ * exceed the window size for a while.
+ */
+public final class URLFileReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    /** Regions smaller than this are not split. */
+    private static final long MIN_SPLIT_SIZE = 64 << 10;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives lines in file order. The {@link Line} is reused for the following lines, so it
+     * must not be kept.
+     */
+    public interface LineVisitor {
+        void visit(Line line) throws IOException;
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    private URLFileReader(final RandomAccessFile file, final int windowSize) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    public static URLFileReader open(final File file) throws IOException {
+        return open(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize Size of the mapped windows. Lines longer than this are still read,
+     *                   with a larger window.
+     */
+    public static URLFileReader open(final File file, final int windowSize) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        return new URLFileReader(new RandomAccessFile(file, "r"), windowSize);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets a region covering the whole file.
+     */
+    public Region region() {
+        return new Region(0, size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Finds the start of the first line that starts after {@code position}, or {@code end}.
+     */
+    private long nextLineStart(long position, final long end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < end) {
+            ((Buffer) buffer).clear();
+            if (end - position < buffer.capacity()) {
+                ((Buffer) buffer).limit((int) (end - position));
+            }
+            final int count = channel.read(buffer, position);
+            if (count <= 0) {
+                return end;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += count;
+        }
+        return end;
+    }
+
+    /**
+     * A range of whole lines of the file. Regions of the same reader can be read concurrently,
+     * but a single region must only be used by one thread at a time.
+     */
+    public final class Region {
+
+        private long start;
+        private final long end;
+
+        private Region(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Offset of the first line.
+         */
+        public long start() {
+            return start;
+        }
+
+        /**
+         * Offset after the last line.
+         */
+        public long end() {
+            return end;
+        }
+
+        /**
+         * Splits off about the first half of this region, at a line boundary, in the manner of
+         * {@code java.util.Spliterator#trySplit()}: the returned region is the first part and this
+         * one is left with the rest.
+         *
+         * @return The first part, or null if this region is too small or has a single line.
+         */
+        public Region trySplit() throws IOException {
+            if (end - start < MIN_SPLIT_SIZE) {
+                return null;
+            }
+            final long boundary = nextLineStart(start + (end - start) / 2 - 1, end);
+            if (boundary >= end) {
+                return null;
+            }
+            final Region prefix = new Region(start, boundary);
+            start = boundary;
+            return prefix;
+        }
+
+        /**
+         * Splits this region at line boundaries into at most {@code parts} regions of about the
+         * same size, in file order.
+         */
+        public List<Region> split(final int parts) throws IOException {
+            if (parts < 1) {
+                throw new IllegalArgumentException("parts must be positive");
+            }
+            final List<Region> result = new ArrayList<Region>(parts);
+            long partStart = start;
+            for (int i = 1; i < parts && partStart < end; i++) {
+                final long target = start + (end - start) * i / parts;
+                if (target <= partStart) {
+                    continue;
+                }
+                final long boundary = nextLineStart(target - 1, end);
+                if (boundary >= end) {
+                    break;
+                }
+                result.add(new Region(partStart, boundary));
+                partStart = boundary;
+            }
+            result.add(new Region(partStart, end));
+            return result;
+        }
+
+        /**
+         * Visits every line of this region, in order.
+         */
+        public void forEachLine(final LineVisitor visitor) throws IOException {
+            if (visitor == null) {
+                throw new NullPointerException("visitor");
+            }
+            final Line line = new Line();
+            long position = start;
+            int window = windowSize;
+            while (position < end) {
+                final int length = (int) Math.min(window, end - position);
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer.get(i) == '\n') {
+                        visitor.visit(line.set(buffer, lineStart, i));
+                        lineStart = i + 1;
+                    }
+                }
+                if (position + length == end) {
+                    if (lineStart < length) {
+                        visitor.visit(line.set(buffer, lineStart, length));
+                    }
+                    return;
+                }
+                if (lineStart == 0) {
+                    // A line longer than the window.
+                    if (window == Integer.MAX_VALUE) {
+                        throw new IOException("Line too long at offset " + position);
+                    }
+                    window = (int) Math.min(Integer.MAX_VALUE, window * 2L);
+                    continue;
+                }
+                // Map the next window from the start of the incomplete line.
+                position += lineStart;
+                window = windowSize;
+            }
+        }
+    }
+
+    /**
+     * A line, as a region of a mapped window. Decoding it with {@link #toString()} reuses
+     * buffers and a decoder, and skips the decoder for ASCII lines.
+     */
+    public static final class Line {
+
+        private ByteBuffer buffer;
+        private int start;
+        private int end;
+
+        private char[] chars = new char[256];
+        private CharBuffer charsView = CharBuffer.wrap(chars);
+        private CharsetDecoder decoder;
+
+        private Line() {}
+
+        private Line set(final ByteBuffer buffer, final int start, final int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = (end > start && buffer.get(end - 1) == '\r') ? end - 1 : end;
+            return this;
+        }
+
+        /**
+         * Gets the mapped window the line is in. Use {@link #start()} and {@link #end()}
+         * for absolute access.
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        public boolean isEmpty() {
+            return end == start;
+        }
+
+        public byte byteAt(final int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + (end - start));
+            }
+            return buffer.get(start + index);
+        }
+
+        /**
+         * Decodes the line as UTF-8, replacing malformed input.
+         */
+        @Override
+        public String toString() {
+            final int length = end - start;
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                charsView = CharBuffer.wrap(chars);
+            }
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                final byte b = buffer.get(start + i);
+                if (b < 0) {
+                    ascii = false;
+                    break;
+                }
+                chars[i] = (char) b;
+            }
+            if (ascii) {
+                return new String(chars, 0, length);
+            }
+
+            if (decoder == null) {
+                decoder = UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            // UTF-8 never decodes to more chars than bytes.
+            final ByteBuffer bytes = buffer.duplicate();
+            ((Buffer) bytes).limit(end).position(start);
+            ((Buffer) charsView).clear();
+            decoder.reset();
+            decoder.decode(bytes, charsView, true);
+            decoder.flush(charsView);
+            return new String(chars, 0, charsView.position());
+        }
+    }
+
+}
@@ -21,10 +21,6 @@
  */
 package io.mola.galimatias;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-
 import static io.mola.galimatias.URLUtils.*;
 
 final class URLParser {
@@ -40,6 +36,8 @@ final class URLParser {
     private int idx;
     private boolean isEOF;
     private int c;
+    private boolean hadIssue;
+    private ParseProfile.Recorder profile;
 
     public URLParser(final String input) {
         this(null, input, null, null);
@@ -119,7 +117,17 @@ final class URLParser {
         return input.charAt(i);
     }
 
+    private void recordIssue(final GalimatiasParseException parseException) {
+        hadIssue = true;
+        parseException.setInput(input);
+        final ParseMetrics metrics = this.settings.metrics();
+        if (metrics != null) {
+            metrics.recordIssue(parseException.getParseIssue());
+        }
+    }
+
     private void handleError(GalimatiasParseException parseException) throws GalimatiasParseException {
+        recordIssue(parseException);
         this.settings.errorHandler().error(parseException);
     }
 
@@ -128,6 +136,7 @@ final class URLParser {
     }
 
     private void handleFatalError(GalimatiasParseException parseException) throws GalimatiasParseException {
+        recordIssue(parseException);
         this.settings.errorHandler().fatalError(parseException);
         throw parseException;
     }
@@ -196,6 +205,45 @@ final class URLParser {
                 .build());
     }
 
+    private void handleFatalLimitError(final String message, final ParseIssue parseIssue, final int position)
+            throws GalimatiasParseException {
+        handleFatalError(GalimatiasParseException.builder()
+                .withMessage(message)
+                .withParseIssue(parseIssue)
+                .withPosition(position)
+                .build());
+    }
+
+    private void handleFatalQueryTooLongError() throws GalimatiasParseException {
+        handleFatalLimitError("Query is longer than " + settings.maxQueryLength() + " characters",
+                ParseIssue.QUERY_TOO_LONG, idx);
+    }
+
+    /**
+     * Fails if the host has more labels than allowed, before it goes through IDNA.
+     * Besides dots, counts the other separators IDNA maps to dots, and percent-encoded dots.
+     */
+    private void checkHostLabels(final CharSequence host) throws GalimatiasParseException {
+        final int maxHostLabels = settings.maxHostLabels();
+        if (host.length() < maxHostLabels) {
+            // Every label but the last one takes at least one character
+            return;
+        }
+        int labels = 1;
+        for (int i = 0; i < host.length(); i++) {
+            final char ch = host.charAt(i);
+            if (ch == '.' || ch == '\u3002' || ch == '\uFF0E' || ch == '\uFF61' ||
+                    (ch == '%' && i + 2 < host.length() && host.charAt(i + 1) == '2' &&
+                            (host.charAt(i + 2) == 'e' || host.charAt(i + 2) == 'E'))) {
+                labels++;
+            }
+        }
+        if (labels > maxHostLabels) {
+            handleFatalLimitError("Host has more than " + maxHostLabels + " labels",
+                    ParseIssue.TOO_MANY_HOST_LABELS, idx);
+        }
+    }
+
     private void handleFatalInvalidHostError(Exception exception) throws GalimatiasParseException {
         handleFatalError(GalimatiasParseException.builder()
                 .withMessage("Invalid host: " + exception.getMessage())
@@ -205,32 +253,68 @@ final class URLParser {
                 .build());
     }
 
+    public URL parse() throws GalimatiasParseException {
+        final ParseMetrics metrics = this.settings.metrics();
+        final Tracer tracer = Tracer.get();
+        if (metrics == null && tracer == null && !ParseProfile.ENABLED) {
+            return parseURL();
+        }
+        if (ParseProfile.ENABLED) {
+            profile = new ParseProfile.Recorder();
+        }
+        final Object event = (tracer == null) ? null : tracer.beginParse();
+        final long start = System.nanoTime();
+        ParseMetrics.Outcome outcome = ParseMetrics.Outcome.FAILED;
+        try {
+            final URL result = parseURL();
+            outcome = hadIssue ? ParseMetrics.Outcome.RECOVERED : ParseMetrics.Outcome.SUCCESS;
+            return result;
+        } finally {
+            if (ParseProfile.ENABLED) {
+                profile.finish();
+            }
+            if (event != null) {
+                tracer.endParse(event, (input == null) ? 0 : input.length(), outcome);
+            }
+            if (metrics != null) {
+                metrics.recordParse(outcome, System.nanoTime() - start);
+            }
+        }
+    }
+
     // Based on http://src.chromium.org/viewvc/chrome/trunk/src/url/third_party/mozilla/url_parse.cc
     // http://url.spec.whatwg.org/#parsing
     //
-    public URL parse() throws GalimatiasParseException {
+    private URL parseURL() throws GalimatiasParseException {
 
         if (input == null) {
             throw new NullPointerException("null input");
         }
 
-        final StringBuilder buffer = new StringBuilder(input.length()*2);
+        // Checked before anything is allocated for the input
+        if (input.length() > settings.maxInputLength()) {
+            handleFatalLimitError("Input is longer than " + settings.maxInputLength() + " characters",
+                    ParseIssue.INPUT_TOO_LONG, settings.maxInputLength());
+        }
+
+        // Percent-encoding may grow it, but most inputs need no more than their own length
+        final StringBuilder buffer = new StringBuilder(input.length());
 
         String encodingOverride = "utf-8";
-        String scheme = (url == null)? null : url.scheme();
+        Scheme scheme = (url == null)? null : url.schemeDescriptor();
         StringBuilder schemeData = (url == null)? new StringBuilder() : new StringBuilder(url.schemeData());
         String username = (url == null)? null : url.username();
         String password = (url == null)? null : url.password();
         Host host = (url == null)? null : url.host();
-        int port = (url == null)? -1 : url.port();
+        int port = (url == null || url.port() == url.defaultPort())? -1 : url.port();
         boolean relativeFlag = (url != null) && url.isHierarchical();
         boolean atFlag = false; // @-flag
         boolean bracketsFlag = false; // []-flag
-        List<String> pathSegments = (url == null || stateOverride == ParseURLState.RELATIVE_PATH_START)? new ArrayList<String>() : url.pathSegments();
+        PathSegments.Builder pathSegments = (url == null || stateOverride == ParseURLState.RELATIVE_PATH_START)? new PathSegments.Builder() : pathOf(url);
         StringBuilder query = (url == null || url.query() == null || stateOverride == ParseURLState.QUERY)? null : new StringBuilder(url.query());
         StringBuilder fragment = (url == null || url.fragment() == null|| stateOverride == ParseURLState.FRAGMENT)? null : new StringBuilder(url.fragment());
 
-        final StringBuilder usernameBuffer = new StringBuilder(buffer.length());
+        final StringBuilder usernameBuffer = new StringBuilder();
         StringBuilder passwordBuffer = null;
 
         endIdx = input.length();
@@ -258,6 +342,10 @@ final class URLParser {
 
             //log.trace("STATE: {} | IDX: {} | C: {} | {}", state.name(), idx, c, new String(Character.toChars(c)));
 
+            if (ParseProfile.ENABLED) {
+                profile.step(state, idx);
+            }
+
             switch (state) {
 
                 case SCHEME_START: {
@@ -287,7 +375,11 @@ final class URLParser {
                     // WHATWG URL .8.2: Otherwise, if c is ":", set url's scheme to buffer, buffer to the empty string,
                     //                  and then run these substeps:
                     else if (c == ':') {
-                        scheme = buffer.toString();
+                        // Well-known and registered schemes are looked up without allocating their names
+                        scheme = settings.schemeRegistry().get(buffer);
+                        if (scheme == null) {
+                            scheme = Scheme.opaque(buffer.toString());
+                        }
                         buffer.setLength(0);
 
                         // WHATWG URL .1: If state override is given, terminate this algorithm.
@@ -297,7 +389,7 @@ final class URLParser {
                         }
 
                         // WHATWG URL .2: If url's scheme is a relative scheme, set url's relative flag.
-                        relativeFlag = isRelativeScheme(scheme);
+                        relativeFlag = scheme.isHierarchical();
 
                         //XXX: This is a deviation from the URL Specification in its current form, in favour of
                         //     URIs as specified in RFC 3986. That is, if we find scheme://, we expect a hierarchical URI.
@@ -308,12 +400,12 @@ final class URLParser {
                         //}
 
                         // WHATWG URL .3: If url's scheme is "file", set state to relative state.
-                        if ("file".equals(scheme)) {
+                        if (scheme == Scheme.FILE) {
                             state = ParseURLState.RELATIVE;
                         }
                         // WHATWG URL .4: Otherwise, if url's relative flag is set, base is not null and base's
                         //                     scheme is equal to url's scheme, set state to relative or authority state.
-                        else if (relativeFlag && base != null && base.scheme().equals(scheme)) {
+                        else if (relativeFlag && base != null && base.scheme().equals(scheme.name())) {
                             state = ParseURLState.RELATIVE_OR_AUTHORITY;
                         }
                         // WHATWG URL .5: Otherwise, if url's relative flag is set, set state to authority first slash state.
@@ -384,7 +476,10 @@ final class URLParser {
                         // WHATWG URL: If c is none of EOF code point, U+0009, U+000A, and U+000D, utf-8 percent encode
                         //             c using the simple encode set, and append the result to url's scheme data.
                         if (!isEOF && c != 0x0009 && c != 0x000A && c != 0x000D) {
-                            utf8PercentEncode(c, EncodeSet.SIMPLE, schemeData);
+                            final int encoded = utf8PercentEncode(c, EncodeSet.SIMPLE, schemeData);
+                            if (ParseProfile.ENABLED) {
+                                profile.percentEncoded(ParseProfile.Component.SCHEME_DATA, encoded);
+                            }
                         }
                         //TODO: Shouldn't the "else" clause give parse error?
 
@@ -394,7 +489,7 @@ final class URLParser {
                 }
 
                 case NO_SCHEME: {
-                    if (base == null || !isRelativeScheme(base.scheme())) {
+                    if (base == null || !base.schemeDescriptor().isHierarchical()) {
                         handleFatalMissingSchemeError();
                     }
                     state = ParseURLState.RELATIVE;
@@ -417,14 +512,14 @@ final class URLParser {
                 case RELATIVE: {
                     relativeFlag = true;
 
-                    if (!"file".equals(scheme)) {
-                        scheme = (base == null)? null : base.scheme();
+                    if (scheme != Scheme.FILE) {
+                        scheme = (base == null)? null : base.schemeDescriptor();
                     }
 
                     if (isEOF) {
                         host = (base == null)? null : base.host();
                         port = (base == null || base.port() == base.defaultPort())? -1 : base.port();
-                        pathSegments = (base == null)? null : base.pathSegments();
+                        pathSegments = (base == null)? null : pathOf(base);
                         query = (base == null || base.query() == null)? null : new StringBuilder(base.query());
                     } else if (c == '/' || c == '\\') {
                         if (c == '\\') {
@@ -434,18 +529,18 @@ final class URLParser {
                     } else if (c == '?') {
                         host = (base == null)? null : base.host();
                         port = (base == null || base.port() == base.defaultPort())? -1 : base.port();
-                        pathSegments = (base == null)? null : base.pathSegments();
+                        pathSegments = (base == null)? null : pathOf(base);
                         query = new StringBuilder();
                         state = ParseURLState.QUERY;
                     } else if (c == '#') {
                         host = (base == null)? null : base.host();
                         port = (base == null || base.port() == base.defaultPort())? -1 : base.port();
-                        pathSegments = (base == null)? null : base.pathSegments();
+                        pathSegments = (base == null)? null : pathOf(base);
                         query = (base == null || base.query() == null)? null : new StringBuilder(base.query());
                         fragment = new StringBuilder();
                         state = ParseURLState.FRAGMENT;
                     } else {
-                        if (!"file".equals(scheme) ||
+                        if (scheme != Scheme.FILE ||
                             !isASCIIAlpha(c) ||
                             (at(idx+1) != ':' && at(idx+1) != '|') ||
                             (idx + 1 == endIdx - 1) ||
@@ -455,11 +550,9 @@ final class URLParser {
 
                             host = (base == null)? null : base.host();
                             port = (base == null || base.port() == base.defaultPort())? -1 : base.port();
-                            pathSegments = (base == null)? new ArrayList<String>() : base.pathSegments();
+                            pathSegments = (base == null)? new PathSegments.Builder() : pathOf(base);
                             // Pop path
-                            if (!pathSegments.isEmpty()) {
-                                pathSegments.remove(pathSegments.size() - 1);
-                            }
+                            pathSegments.removeLast();
                         }
                         state = ParseURLState.RELATIVE_PATH;
                         idx--;
@@ -472,13 +565,13 @@ final class URLParser {
                         if (c == '\\') {
                             handleBackslashAsDelimiterError();
                         }
-                        if ("file".equals(scheme)) {
+                        if (scheme == Scheme.FILE) {
                             state = ParseURLState.FILE_HOST;
                         } else {
                             state = ParseURLState.AUTHORITY_IGNORE_SLASHES;
                         }
                     } else {
-                        if (!"file".equals(scheme)) {
+                        if (scheme != Scheme.FILE) {
                             host = (base == null)? null : base.host();
                             port = (base == null || base.port() == base.defaultPort())? -1 : base.port();
                         }
@@ -525,12 +618,14 @@ final class URLParser {
                     if (c == '@') {
                         if (atFlag) {
                             handleError("User or password contains an at symbol (\"@\") not percent-encoded");
-                            buffer.insert(0, "%40");
+                            // Same as prepending "%40" to buffer, without moving it
+                            ((passwordBuffer != null) ? passwordBuffer : usernameBuffer).append("%40");
                         }
                         atFlag = true;
 
-
-                        for (int i = 0; i < buffer.codePointCount(0, buffer.length()); i++) {
+                        // Walk code points once: the length is fixed, as the loop only changes the case of hex digits
+                        final int length = buffer.length();
+                        for (int i = 0; i < length; i += Character.charCount(buffer.codePointAt(i))) {
                             final int otherChar = buffer.codePointAt(i);
                             final char startChar = buffer.charAt(i);
                             if (
@@ -545,7 +640,7 @@ final class URLParser {
                                 handleIllegalCharacterError("Illegal character in user or password", otherChar);
                             }
                             if (otherChar == '%') {
-                                if (i + 2 >= buffer.length() || !isASCIIHexDigit(buffer.charAt(i+1)) || !isASCIIHexDigit(buffer.charAt(i+2))) {
+                                if (i + 2 >= length || !isASCIIHexDigit(buffer.charAt(i+1)) || !isASCIIHexDigit(buffer.charAt(i+2))) {
                                     handleInvalidPercentEncodingError();
                                 } else if (isASCIIHexDigit(buffer.charAt(i+1)) && isASCIIHexDigit(buffer.charAt(i+2))) {
                                     buffer.setCharAt(i + 1, Character.toUpperCase(buffer.charAt(i + 1)));
@@ -553,13 +648,13 @@ final class URLParser {
                                 }
                             }
                             if (otherChar == ':' && passwordBuffer == null) {
-                                passwordBuffer = new StringBuilder(buffer.length() - i);
+                                passwordBuffer = new StringBuilder(length - i);
                                 continue;
                             }
-                            if (passwordBuffer != null) {
-                                utf8PercentEncode(otherChar, EncodeSet.DEFAULT, passwordBuffer);
-                            } else {
-                                utf8PercentEncode(otherChar, EncodeSet.DEFAULT, usernameBuffer);
+                            final int encoded = utf8PercentEncode(otherChar, EncodeSet.DEFAULT,
+                                    (passwordBuffer != null) ? passwordBuffer : usernameBuffer);
+                            if (ParseProfile.ENABLED) {
+                                profile.percentEncoded(ParseProfile.Component.USERINFO, encoded);
                             }
                         }
 
@@ -591,6 +686,7 @@ final class URLParser {
                         } else if (buffer.length() == 0) {
                             state = ParseURLState.RELATIVE_PATH_START;
                         } else {
+                            checkHostLabels(buffer);
                             try {
                                 host = Host.parseHost(buffer.toString());
                             } catch (GalimatiasParseException ex) {
@@ -609,6 +705,7 @@ final class URLParser {
 
                 case HOST: { //XXX: WHATWG defines HOSTNAME as an alias, useless here.
                     if (c == ':' && !bracketsFlag) {
+                        checkHostLabels(buffer);
                         try {
                             host = Host.parseHost(buffer.toString());
                         } catch (GalimatiasParseException ex) {
@@ -621,6 +718,7 @@ final class URLParser {
                         }
                     } else if (isEOF || c == '/' || c == '\\' || c == '?' || c == '#') {
                         decrIdx();
+                        checkHostLabels(buffer);
                         try {
                             host = Host.parseHost(buffer.toString());
                         } catch (GalimatiasParseException ex) {
@@ -648,18 +746,25 @@ final class URLParser {
                     if (isASCIIDigit(c)) {
                         buffer.appendCodePoint(c);
                     } else if (isEOF || c == '/' || c == '\\' || c == '?' || c == '#') {
-                        // Remove leading zeroes
-                        while (buffer.length() > 0 && buffer.charAt(0) == 0x0030 && buffer.length() > 1) {
-                            buffer.deleteCharAt(0);
+                        // Remove leading zeroes, all at once
+                        int zeroes = 0;
+                        while (zeroes < buffer.length() - 1 && buffer.charAt(zeroes) == 0x0030) {
+                            zeroes++;
                         }
-                        //XXX: This is redundant with URL constructor
-                        if (buffer.toString().equals(getDefaultPortForScheme(scheme))) {
-                            buffer.setLength(0);
+                        buffer.delete(0, zeroes);
+                        // Integer.MAX_VALUE has 10 digits
+                        if (buffer.length() > 10 || (buffer.length() == 10 &&
+                                buffer.toString().compareTo(Integer.toString(Integer.MAX_VALUE)) > 0)) {
+                            handleFatalLimitError("Port is too large", ParseIssue.INVALID_PORT, idx);
                         }
                         if (buffer.length() == 0) {
                             port = -1;
                         } else {
                             port = Integer.parseInt(buffer.toString());
+                            //XXX: This is redundant with URL constructor
+                            if (scheme != null && port == scheme.defaultPort()) {
+                                port = -1;
+                            }
                         }
                         if (stateOverride != null) {
                             terminate = true;
@@ -692,37 +797,28 @@ final class URLParser {
                         if (c == '\\') {
                             handleBackslashAsDelimiterError();
                         }
-                        final String lowerCasedBuffer = buffer.toString().toLowerCase(Locale.ENGLISH);
-                        if ("%2e".equals(lowerCasedBuffer)) {
-                            buffer.setLength(0);
-                            buffer.append('.');
-                        } else if (
-                                ".%2e".equals(lowerCasedBuffer) ||
-                                "%2e.".equals(lowerCasedBuffer) ||
-                                "%2e%2e".equals(lowerCasedBuffer)
-                                ) {
-                            buffer.setLength(0);
-                            buffer.append("..");
-                        }
-                        if ("..".equals(buffer.toString())) {
+                        final int dots = dotSegment(buffer);
+                        if (dots == 2) {
                             // Pop path
-                            if (!pathSegments.isEmpty()) {
-                                pathSegments.remove(pathSegments.size() - 1);
-                            }
+                            pathSegments.removeLast();
                             if (c != '/' && c != '\\') {
                                 pathSegments.add("");
                             }
 
-                        } else if (".".equals(buffer.toString()) && c != '/' && c != '\\') {
+                        } else if (dots == 1 && c != '/' && c != '\\') {
                             pathSegments.add("");
-                        } else if (!".".equals(buffer.toString())) {
-                            if ("file".equals(scheme) && pathSegments.isEmpty() &&
+                        } else if (dots == 0) {
+                            if (scheme == Scheme.FILE && pathSegments.isEmpty() &&
                                     buffer.length() == 2 &&
                                     isASCIIAlpha(buffer.charAt(0)) &&
                                     buffer.charAt(1) == '|') {
                                 buffer.setCharAt(1, ':');
                             }
-                            pathSegments.add(buffer.toString());
+                            pathSegments.add(buffer);
+                        }
+                        if (pathSegments.size() > settings.maxPathSegments()) {
+                            handleFatalLimitError("More than " + settings.maxPathSegments() + " path segments",
+                                    ParseIssue.TOO_MANY_PATH_SEGMENTS, idx);
                         }
                         buffer.setLength(0);
                         if (c == '?') {
@@ -752,7 +848,10 @@ final class URLParser {
                             }
                         }
 
-                        utf8PercentEncode(c, EncodeSet.DEFAULT, buffer);
+                        final int encoded = utf8PercentEncode(c, EncodeSet.DEFAULT, buffer);
+                        if (ParseProfile.ENABLED) {
+                            profile.percentEncoded(ParseProfile.Component.PATH, encoded);
+                        }
                     }
                     break;
                 }
@@ -773,10 +872,16 @@ final class URLParser {
                             final byte b = bytes[i];
                             if (b < 0x21 || b > 0x7E || b == 0x22 || b == 0x23 || b == 0x3C || b == 0x3E || b == 0x60) {
                                 percentEncode(b, query);
+                                if (ParseProfile.ENABLED) {
+                                    profile.percentEncodedByte(ParseProfile.Component.QUERY, b);
+                                }
                             } else {
                                 query.append((char) b);
                             }
                         }
+                        if (query.length() > settings.maxQueryLength()) {
+                            handleFatalQueryTooLongError();
+                        }
                         buffer.setLength(0);
                         if (c == '#') {
                             fragment = new StringBuilder();
@@ -785,6 +890,10 @@ final class URLParser {
                     }  else if (c == 0x0009 || c == 0x000A || c == 0x000D) {
                         handleIllegalWhitespaceError();
                     } else {
+                        // Percent-encoding never makes it shorter, so fail before it is done
+                        if (query.length() + buffer.length() >= settings.maxQueryLength()) {
+                            handleFatalQueryTooLongError();
+                        }
                         if (!isURLCodePoint(c) && c != '%') {
                             handleIllegalCharacterError("Illegal character in query", c);
                         }
@@ -831,7 +940,10 @@ final class URLParser {
                             }
                         }
 
-                        utf8PercentEncode(c, EncodeSet.SIMPLE, fragment);
+                        final int encoded = utf8PercentEncode(c, EncodeSet.SIMPLE, fragment);
+                        if (ParseProfile.ENABLED) {
+                            profile.percentEncoded(ParseProfile.Component.FRAGMENT, encoded);
+                        }
 
                     }
                     break;
@@ -847,17 +959,52 @@ final class URLParser {
 
         }
 
-        return new URL(scheme, schemeData.toString(),
+        // Changes to a URL keep the schemes it was parsed with
+        final SchemeRegistry schemeRegistry = (url == null)? settings.schemeRegistry() : url.schemeRegistry();
+        return new URL(scheme, schemeRegistry, schemeData.toString(),
                 username, password,
-                host, port, pathSegments,
+                host, port, (pathSegments == null)? null : pathSegments.build(),
                 (query == null)? null : query.toString(),
                 (fragment == null)? null : fragment.toString(),
                 relativeFlag);
 
     }
 
+    private static PathSegments.Builder pathOf(final URL url) {
+        return url.isHierarchical()? new PathSegments.Builder(url.path()) : null;
+    }
+
+    /**
+     * Checks whether a path segment is a single dot segment (".", "%2e") or a double
+     * dot segment ("..", ".%2e", "%2e.", "%2e%2e"), case-insensitively.
+     *
+     * @return 1 or 2 for single or double dot segments, 0 otherwise.
+     */
+    private static int dotSegment(final StringBuilder segment) {
+        final int length = segment.length();
+        if (length == 0 || length > 6) {
+            return 0;
+        }
+        int dots = 0;
+        int i = 0;
+        while (i < length) {
+            if (segment.charAt(i) == '.') {
+                i++;
+            } else if (i + 2 < length && segment.charAt(i) == '%' && segment.charAt(i + 1) == '2' &&
+                    (segment.charAt(i + 2) | 0x20) == 'e') {
+                i += 3;
+            } else {
+                return 0;
+            }
+            if (++dots > 2) {
+                return 0;
+            }
+        }
+        return dots;
+    }
+
     String parseUsername() {
-        StringBuilder buffer = new StringBuilder(input.length() * 2);
+        final StringBuilder buffer = new StringBuilder(input.length());
         startIdx = 0;
         endIdx = input.length();
         setIdx(0);
@@ -869,7 +1016,7 @@ final class URLParser {
     }
 
     String parsePassword() {
-        StringBuilder buffer = new StringBuilder(input.length() * 2);
+        final StringBuilder buffer = new StringBuilder(input.length());
         startIdx = 0;
         endIdx = input.length();
         setIdx(0);
@@ -887,31 +1034,34 @@ final class URLParser {
         USERNAME
     }
 
-    private static void utf8PercentEncode(final int c, final EncodeSet encodeSet, final StringBuilder buffer) {
+    /**
+     * @return Number of percent-encoded bytes appended, or 0 if the code point was appended as is.
+     */
+    private static int utf8PercentEncode(final int c, final EncodeSet encodeSet, final StringBuilder buffer) {
         if (encodeSet != null) {
             switch (encodeSet) {
                 case SIMPLE:
                     if (!isInSimpleEncodeSet(c)) {
                         buffer.appendCodePoint(c);
-                        return;
+                        return 0;
                     }
                     break;
                 case DEFAULT:
                     if (!isInDefaultEncodeSet(c)) {
                         buffer.appendCodePoint(c);
-                        return;
+                        return 0;
                     }
                     break;
                 case PASSWORD:
                     if (!isInPasswordEncodeSet(c)) {
                         buffer.appendCodePoint(c);
-                        return;
+                        return 0;
                     }
                     break;
                 case USERNAME:
                     if (!isInUsernameEncodeSet(c)) {
                         buffer.appendCodePoint(c);
-                        return;
+                        return 0;
                     }
                     break;
             }
@@ -920,6 +1070,7 @@ final class URLParser {
         for (final byte b : bytes) {
             percentEncode(b, buffer);
         }
+        return bytes.length;
     }
 
     private static boolean isInSimpleEncodeSet(final int c) {
@@ -29,29 +29,148 @@ package io.mola.galimatias;
  */
 public final class URLParsingSettings {
 
-    private static URLParsingSettings DEFAULT = new URLParsingSettings();
+    private static final URLParsingSettings DEFAULT = new URLParsingSettings();
 
-
-    private ErrorHandler errorHandler;
+    private final ErrorHandler errorHandler;
+    private final ParseMetrics metrics;
+    private final SchemeRegistry schemeRegistry;
+    private final int maxInputLength;
+    private final int maxPathSegments;
+    private final int maxQueryLength;
+    private final int maxHostLabels;
 
     private URLParsingSettings() {
-        this(DefaultErrorHandler.getInstance());
+        this(DefaultErrorHandler.getInstance(), null, SchemeRegistry.getDefault(),
+                Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
     }
 
-    private URLParsingSettings(final ErrorHandler errorHandler) {
+    private URLParsingSettings(final ErrorHandler errorHandler, final ParseMetrics metrics,
+                               final SchemeRegistry schemeRegistry,
+                               final int maxInputLength, final int maxPathSegments,
+                               final int maxQueryLength, final int maxHostLabels) {
         this.errorHandler = errorHandler;
+        this.metrics = metrics;
+        this.schemeRegistry = schemeRegistry;
+        this.maxInputLength = maxInputLength;
+        this.maxPathSegments = maxPathSegments;
+        this.maxQueryLength = maxQueryLength;
+        this.maxHostLabels = maxHostLabels;
     }
 
     public ErrorHandler errorHandler() {
         return this.errorHandler;
     }
 
+    /**
+     * @return Metrics parsing is recorded to, or null if it is not recorded (the default).
+     */
+    public ParseMetrics metrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return Schemes parsed as hierarchical URLs. {@link SchemeRegistry#getDefault()} by default.
+     */
+    public SchemeRegistry schemeRegistry() {
+        return this.schemeRegistry;
+    }
+
+    public int maxInputLength() {
+        return this.maxInputLength;
+    }
+
+    public int maxPathSegments() {
+        return this.maxPathSegments;
+    }
+
+    public int maxQueryLength() {
+        return this.maxQueryLength;
+    }
+
+    public int maxHostLabels() {
+        return this.maxHostLabels;
+    }
+
     public static URLParsingSettings create() {
         return DEFAULT;
     }
 
     public URLParsingSettings withErrorHandler(final ErrorHandler handler) {
-        return new URLParsingSettings(handler);
+        return new URLParsingSettings(handler, this.metrics, this.schemeRegistry,
+                this.maxInputLength, this.maxPathSegments, this.maxQueryLength, this.maxHostLabels);
+    }
+
+    /**
+     * Records outcome, issues and latency of every parse to the given metrics.
+     * They can be shared by any number of settings and threads.
+     *
+     * @param metrics Metrics to record to, or null to disable recording.
+     */
+    public URLParsingSettings withMetrics(final ParseMetrics metrics) {
+        return new URLParsingSettings(this.errorHandler, metrics, this.schemeRegistry,
+                this.maxInputLength, this.maxPathSegments, this.maxQueryLength, this.maxHostLabels);
+    }
+
+    /**
+     * Parses URLs with the schemes of the given registry as hierarchical, e.g. to
+     * get the host and path of s3, git or ssh URLs.
+     */
+    public URLParsingSettings withSchemeRegistry(final SchemeRegistry schemeRegistry) {
+        if (schemeRegistry == null) {
+            throw new NullPointerException("schemeRegistry");
+        }
+        return new URLParsingSettings(this.errorHandler, this.metrics, schemeRegistry,
+                this.maxInputLength, this.maxPathSegments, this.maxQueryLength, this.maxHostLabels);
+    }
+
+    /**
+     * Limits the length of the input, including leading and trailing whitespace.
+     * Longer inputs fail with {@link ParseIssue#INPUT_TOO_LONG} before any parsing is done.
+     * There is no limit by default.
+     */
+    public URLParsingSettings withMaxInputLength(final int maxInputLength) {
+        checkLimit(maxInputLength, "maxInputLength");
+        return new URLParsingSettings(this.errorHandler, this.metrics, this.schemeRegistry,
+                maxInputLength, this.maxPathSegments, this.maxQueryLength, this.maxHostLabels);
+    }
+
+    /**
+     * Limits the number of path segments, including those inherited from a base URL.
+     * URLs with more segments fail with {@link ParseIssue#TOO_MANY_PATH_SEGMENTS}.
+     * There is no limit by default.
+     */
+    public URLParsingSettings withMaxPathSegments(final int maxPathSegments) {
+        checkLimit(maxPathSegments, "maxPathSegments");
+        return new URLParsingSettings(this.errorHandler, this.metrics, this.schemeRegistry,
+                this.maxInputLength, maxPathSegments, this.maxQueryLength, this.maxHostLabels);
+    }
+
+    /**
+     * Limits the length of the query, once percent-encoded.
+     * Longer queries fail with {@link ParseIssue#QUERY_TOO_LONG}.
+     * There is no limit by default.
+     */
+    public URLParsingSettings withMaxQueryLength(final int maxQueryLength) {
+        checkLimit(maxQueryLength, "maxQueryLength");
+        return new URLParsingSettings(this.errorHandler, this.metrics, this.schemeRegistry,
+                this.maxInputLength, this.maxPathSegments, maxQueryLength, this.maxHostLabels);
+    }
+
+    /**
+     * Limits the number of labels of domain hosts, checked before IDNA processing.
+     * Hosts with more labels fail with {@link ParseIssue#TOO_MANY_HOST_LABELS}.
+     * There is no limit by default.
+     */
+    public URLParsingSettings withMaxHostLabels(final int maxHostLabels) {
+        checkLimit(maxHostLabels, "maxHostLabels");
+        return new URLParsingSettings(this.errorHandler, this.metrics, this.schemeRegistry,
+                this.maxInputLength, this.maxPathSegments, this.maxQueryLength, maxHostLabels);
+    }
+
+    private static void checkLimit(final int limit, final String name) {
+        if (limit < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
     }
 
 }
@@ -21,8 +21,11 @@
  */
 package io.mola.galimatias;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -32,10 +35,18 @@ public final class URLSearchParameters implements Iterable<NameValue> {
 
     private final List<NameValue> nameValues;
 
+    /**
+     * Name index over the raw query, if these parameters come from one.
+     * In that case, it is also {@link #nameValues}.
+     */
+    private final QueryIndex index;
+
     URLSearchParameters(final String query) {
         if (query != null && !query.isEmpty()) {
-            nameValues = Collections.unmodifiableList(FormURLEncodedParser.parse(query));
+            index = new QueryIndex(query);
+            nameValues = index;
         } else {
+            index = null;
             nameValues = EMPTY_NAME_VALUES;
         }
     }
@@ -45,6 +56,28 @@ public final class URLSearchParameters implements Iterable<NameValue> {
             throw new NullPointerException("nameValues");
         }
         this.nameValues = Collections.unmodifiableList(nameValues);
+        this.index = null;
+    }
+
+    /**
+     * Creates an empty {@link Builder}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a {@link Builder} initialized with these parameters. Use it instead of chaining
+     * {@code with*} calls, each of which copies every parameter.
+     */
+    public Builder toBuilder() {
+        final Builder builder = new Builder();
+        builder.entries.ensureCapacity(nameValues.size());
+        for (int i = 0; i < nameValues.size(); i++) {
+            final String raw = (index == null) ? null : index.raw(i);
+            builder.entries.add(new Entry(nameValues.get(i), raw));
+        }
+        return builder;
     }
 
     public URLSearchParameters withAppended(final String name, final String value) {
@@ -111,6 +144,9 @@ public final class URLSearchParameters implements Iterable<NameValue> {
         if (name == null) {
             throw new NullPointerException("name");
         }
+        if (index != null) {
+            return index.first(name);
+        }
         for (final NameValue nv : nameValues) {
             if (name.equals(nv.name())) {
                 return nv.value();
@@ -123,6 +159,9 @@ public final class URLSearchParameters implements Iterable<NameValue> {
         if (name == null) {
             throw new NullPointerException("name");
         }
+        if (index != null) {
+            return index.all(name);
+        }
         final List<String> result = new ArrayList<String>();
         for (final NameValue nv : nameValues) {
             if (name.equals(nv.name())) {
@@ -136,6 +175,9 @@ public final class URLSearchParameters implements Iterable<NameValue> {
         if (name == null) {
             throw new NullPointerException("name");
         }
+        if (index != null) {
+            return index.first(name) != null;
+        }
         for (final NameValue nv : nameValues) {
             if (name.equals(nv.name())) {
                 return true;
@@ -144,6 +186,23 @@ public final class URLSearchParameters implements Iterable<NameValue> {
         return false;
     }
 
+    /**
+     * Raw lookup backing {@link URL#queryParameter(String)}. Only valid for parameters
+     * built from a non-empty query.
+     */
+    String rawValue(final String name) {
+        return index.firstRaw(name);
+    }
+
+    /**
+     * Raw lookup backing {@link URL#queryParameters(String)}.
+     *
+     * @see #rawValue(String)
+     */
+    List<String> rawValues(final String name) {
+        return index.allRaw(name);
+    }
+
     @Override
     public Iterator<NameValue> iterator() {
         return nameValues.iterator();
@@ -165,4 +224,186 @@ public final class URLSearchParameters implements Iterable<NameValue> {
     public int hashCode() {
         return nameValues.hashCode();
     }
-}
\ No newline at end of file
+
+    private static final class Entry {
+        private final NameValue pair;
+        /** Text of the pair in the query it comes from, if any. */
+        private final String raw;
+
+        private Entry(final NameValue pair, final String raw) {
+            this.pair = pair;
+            this.raw = raw;
+        }
+    }
+
+    private static final Comparator<Entry> NAME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry e1, final Entry e2) {
+            return e1.pair.name().compareTo(e2.pair.name());
+        }
+    };
+
+    /**
+     * Mutable builder for bulk edits of {@link URLSearchParameters}. Every operation takes
+     * at most linear time.
+     *
+     * When serialized, pairs that come from a URL's query are kept exactly as they were, and
+     * the rest are serialized with application/x-www-form-urlencoded rules.
+     *
+     * This class is not thread-safe.
+     */
+    public static final class Builder {
+
+        private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+        private Builder() {}
+
+        /**
+         * Appends a pair.
+         */
+        public Builder add(final String name, final String value) {
+            return add(new NameValue(name, value));
+        }
+
+        public Builder add(final NameValue nameValue) {
+            if (nameValue == null) {
+                throw new NullPointerException("nameValue");
+            }
+            entries.add(new Entry(nameValue, null));
+            return this;
+        }
+
+        /**
+         * Sets the value of the first pair with the given name and removes the rest, or appends
+         * a new pair if there is none.
+         *
+         * @see <a href="https://url.spec.whatwg.org/#dom-urlsearchparams-set">URLSearchParams.set()</a>
+         */
+        public Builder set(final String name, final String value) {
+            final NameValue nameValue = new NameValue(name, value);
+            boolean found = false;
+            int kept = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                final Entry entry = entries.get(i);
+                if (entry.pair.name().equals(name)) {
+                    if (found) {
+                        continue;
+                    }
+                    found = true;
+                    entries.set(kept++, new Entry(nameValue, null));
+                } else {
+                    entries.set(kept++, entry);
+                }
+            }
+            truncate(kept);
+            if (!found) {
+                entries.add(new Entry(nameValue, null));
+            }
+            return this;
+        }
+
+        /**
+         * Removes every pair with the given name.
+         */
+        public Builder removeAll(final String name) {
+            if (name == null) {
+                throw new NullPointerException("name");
+            }
+            int kept = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                final Entry entry = entries.get(i);
+                if (!entry.pair.name().equals(name)) {
+                    entries.set(kept++, entry);
+                }
+            }
+            truncate(kept);
+            return this;
+        }
+
+        /**
+         * Removes every pair whose name is not in the given collection.
+         */
+        public Builder retainAll(final Collection<String> names) {
+            if (names == null) {
+                throw new NullPointerException("names");
+            }
+            int kept = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                final Entry entry = entries.get(i);
+                if (names.contains(entry.pair.name())) {
+                    entries.set(kept++, entry);
+                }
+            }
+            truncate(kept);
+            return this;
+        }
+
+        /**
+         * Sorts pairs by name, comparing code units. The relative order of pairs with the same
+         * name is preserved.
+         *
+         * @see <a href="https://url.spec.whatwg.org/#dom-urlsearchparams-sort">URLSearchParams.sort()</a>
+         */
+        public Builder sort() {
+            Collections.sort(entries, NAME_ORDER);
+            return this;
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        public URLSearchParameters build() {
+            final List<NameValue> nameValues = new ArrayList<NameValue>(entries.size());
+            for (final Entry entry : entries) {
+                nameValues.add(entry.pair);
+            }
+            return new URLSearchParameters(nameValues);
+        }
+
+        /**
+         * Serializes the pairs as a query, without the leading {@code ?}.
+         */
+        public String toQuery() {
+            final StringBuilder sb = new StringBuilder();
+            final FormURLEncodedWriter writer = FormURLEncodedWriter.create();
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    if (i != 0) {
+                        sb.append('&');
+                    }
+                    final Entry entry = entries.get(i);
+                    if (entry.raw != null) {
+                        sb.append(entry.raw);
+                    } else {
+                        writer.write(entry.pair, sb);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("BUG", ex);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Gets a copy of the given URL with these pairs as its query. The query is removed
+         * if there are no pairs.
+         */
+        public URL applyTo(final URL url) throws GalimatiasParseException {
+            if (url == null) {
+                throw new NullPointerException("url");
+            }
+            if (entries.isEmpty()) {
+                return url.withQuery(null);
+            }
+            final String query = toQuery();
+            // URL#withQuery drops a leading '?', which may be part of the first pair.
+            return url.withQuery((query.charAt(0) == '?') ? '?' + query : query);
+        }
+
+        private void truncate(final int size) {
+            entries.subList(size, entries.size()).clear();
+        }
+    }
+
+}
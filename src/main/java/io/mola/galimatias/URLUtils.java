@@ -26,8 +26,6 @@ import com.ibm.icu.text.IDNA;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * Utils for parsing and serializing URLs.
@@ -39,6 +37,8 @@ public final class URLUtils {
 
     public static final Charset UTF_8 = Charset.forName("UTF-8");
 
+    // UTS #46 instances are immutable and shared by all threads without locking;
+    // per-call state lives in IDNA.Info.
     private static final IDNA idna = IDNA.getUTS46Instance(IDNA.DEFAULT);
 
     private URLUtils() {
@@ -121,11 +121,21 @@ public final class URLUtils {
     }
 
     static String domainToASCII(final String domain, final ErrorHandler errorHandler) throws GalimatiasParseException {
-        final IDNA.Info idnaInfo = new IDNA.Info();
-        final StringBuilder idnaOutput = new StringBuilder();
-        idna.nameToASCII(domain, idnaOutput, idnaInfo);
-        processIdnaInfo(errorHandler, idnaInfo, false);
-        return idnaOutput.toString();
+        final Tracer tracer = Tracer.get();
+        final Object event = (tracer == null) ? null : tracer.beginIDNA();
+        boolean success = false;
+        try {
+            final IDNA.Info idnaInfo = new IDNA.Info();
+            final StringBuilder idnaOutput = new StringBuilder();
+            idna.nameToASCII(domain, idnaOutput, idnaInfo);
+            processIdnaInfo(errorHandler, idnaInfo, false);
+            success = true;
+            return idnaOutput.toString();
+        } finally {
+            if (event != null) {
+                tracer.endIDNA(event, true, domain.length(), success);
+            }
+        }
     }
 
     /**
@@ -142,11 +152,21 @@ public final class URLUtils {
     }
 
     static String domainToUnicode(final String asciiDomain, final ErrorHandler errorHandler) throws GalimatiasParseException {
-        final IDNA.Info unicodeIdnaInfo = new IDNA.Info();
-        final StringBuilder unicodeIdnaOutput = new StringBuilder();
-        idna.nameToUnicode(asciiDomain, unicodeIdnaOutput, unicodeIdnaInfo);
-        processIdnaInfo(errorHandler, unicodeIdnaInfo, false);
-        return unicodeIdnaOutput.toString();
+        final Tracer tracer = Tracer.get();
+        final Object event = (tracer == null) ? null : tracer.beginIDNA();
+        boolean success = false;
+        try {
+            final IDNA.Info unicodeIdnaInfo = new IDNA.Info();
+            final StringBuilder unicodeIdnaOutput = new StringBuilder();
+            idna.nameToUnicode(asciiDomain, unicodeIdnaOutput, unicodeIdnaInfo);
+            processIdnaInfo(errorHandler, unicodeIdnaInfo, false);
+            success = true;
+            return unicodeIdnaOutput.toString();
+        } finally {
+            if (event != null) {
+                tracer.endIDNA(event, false, asciiDomain.length(), success);
+            }
+        }
     }
 
     private static void processIdnaInfo(final ErrorHandler errorHandler,
@@ -303,19 +323,17 @@ public final class URLUtils {
         byteToHex(b, buffer);
     }
 
-    private static final List<String> RELATIVE_SCHEMES = Arrays.asList(
-            "ftp", "file", "gopher", "http", "https", "ws", "wss"
-    );
-
     /**
      * Returns true if the schema is a known relative schema
      * (ftp, file, gopher, http, https, ws, wss).
      *
+     * @see SchemeRegistry#isHierarchical(CharSequence)
+     *
      * @param scheme
      * @return
      */
     public static boolean isRelativeScheme(final String scheme) {
-        return RELATIVE_SCHEMES.contains(scheme);
+        return scheme != null && SchemeRegistry.getDefault().isHierarchical(scheme);
     }
 
     /**
@@ -328,35 +346,21 @@ public final class URLUtils {
      *     <li>http - 80</li>
      *     <li>https - 443</li>
      *     <li>ws - 80</li>
-     *     <li>wss - 433</li>
+     *     <li>wss - 443</li>
      * </ol>
      *
+     * @deprecated Use {@link SchemeRegistry#defaultPort(CharSequence)}, which returns an int.
+     *
      * @param scheme
      * @return
      */
+    @Deprecated
     public static String getDefaultPortForScheme(final String scheme) {
-        if ("ftp".equals(scheme)) {
-            return "21";
-        }
-        if ("file".equals(scheme)) {
+        if (scheme == null) {
             return null;
         }
-        if ("gopher".equals(scheme)) {
-            return "70";
-        }
-        if ("http".equals(scheme)) {
-            return "80";
-        }
-        if ("https".equals(scheme)) {
-            return "443";
-        }
-        if ("ws".equals(scheme)) {
-            return "80";
-        }
-        if ("wss".equals(scheme)) {
-            return "443";
-        }
-        return null;
+        final int defaultPort = SchemeRegistry.getDefault().defaultPort(scheme);
+        return (defaultPort == -1)? null : Integer.toString(defaultPort);
     }
 
 }
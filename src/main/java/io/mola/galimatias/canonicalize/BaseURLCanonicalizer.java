@@ -21,21 +21,40 @@
  */
 package io.mola.galimatias.canonicalize;
 
+import io.mola.galimatias.CanonicalForm;
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
 import static io.mola.galimatias.URLUtils.UTF_8;
 import static io.mola.galimatias.URLUtils.isASCIIHexDigit;
 import static io.mola.galimatias.URLUtils.percentEncode;
 
 abstract class BaseURLCanonicalizer implements URLCanonicalizer {
 
+  /**
+   * Percent-encodes every code point not matching the given predicate, leaving valid
+   * percent-encoded bytes untouched. Returns the input instance itself if it is
+   * already canonical.
+   */
   protected static String canonicalize(String input, CharacterPredicate unencodedPredicate) {
-    StringBuilder result = new StringBuilder();
     final int length = input.length();
-    for (int offset = 0; offset < length; ) {
+    int offset = 0;
+    while (offset < length) {
+        final int c = input.codePointAt(offset);
+        if (!isUnencoded(input, offset, c, unencodedPredicate)) {
+            break;
+        }
+        offset += Character.charCount(c);
+    }
+    if (offset == length) {
+        return input;
+    }
+    StringBuilder result = new StringBuilder(length + 16);
+    result.append(input, 0, offset);
+    while (offset < length) {
         final int c = input.codePointAt(offset);
 
-        if ((c == '%' && input.length() > offset + 2 &&
-                isASCIIHexDigit(input.charAt(offset + 1)) && isASCIIHexDigit(input.charAt(offset + 2))) ||
-            unencodedPredicate.test(c)) {
+        if (isUnencoded(input, offset, c, unencodedPredicate)) {
             result.append((char) c);
         } else {
             final byte[] bytes = new String(Character.toChars(c)).getBytes(UTF_8);
@@ -49,4 +68,118 @@ abstract class BaseURLCanonicalizer implements URLCanonicalizer {
     return result.toString();
   }
 
+  /**
+   * Canonicalizes user, password, path, query and fragment with the given predicates
+   * and, if the result is a new URL, marks it with the given form. URLs already marked
+   * are returned as is, and <code>withX</code> methods are called only for components
+   * that change.
+   */
+  static URL canonicalize(URL url, final CanonicalForm form,
+          final CharacterPredicate userInfoPredicate,
+          final CharacterPredicate pathPredicate,
+          final CharacterPredicate queryOrFragmentPredicate) throws GalimatiasParseException {
+    if (url.isCanonical(form)) {
+        return url;
+    }
+    final URL input = url;
+
+    // Components are compared by reference: canonicalize(String, CharacterPredicate)
+    // returns its input when there is nothing to encode.
+
+    // User
+    final String username = url.username();
+    if (username != null && !username.isEmpty()) {
+        final String canonical = canonicalize(username, userInfoPredicate);
+        if (canonical != username) {
+            url = url.withUsername(canonical);
+        }
+    }
+
+    // Pass
+    final String password = url.password();
+    if (password != null && !password.isEmpty()) {
+        final String canonical = canonicalize(password, userInfoPredicate);
+        if (canonical != password) {
+            url = url.withPassword(canonical);
+        }
+    }
+
+    // Path
+    final String path = url.path();
+    if (path != null) {
+        final String canonical = canonicalize(path, pathPredicate);
+        if (canonical != path) {
+            url = url.withPath(canonical);
+        }
+    }
+
+    // Query
+    final String query = url.query();
+    if (query != null) {
+        final String canonical = canonicalize(query, queryOrFragmentPredicate);
+        if (canonical != query) {
+            url = url.withQuery(canonical);
+        }
+    }
+
+    // Fragment
+    final String fragment = url.fragment();
+    if (fragment != null) {
+        final String canonical = canonicalize(fragment, queryOrFragmentPredicate);
+        if (canonical != fragment) {
+            url = url.withFragment(canonical);
+        }
+    }
+
+    // The input may be shared, so only URLs built here are marked
+    if (url != input) {
+        CanonicalFormMarker.mark(url, form);
+    }
+    return url;
+  }
+
+  private static boolean isUnencoded(final String input, final int offset, final int c,
+          final CharacterPredicate unencodedPredicate) {
+    return (c == '%' && input.length() > offset + 2 &&
+            isASCIIHexDigit(input.charAt(offset + 1)) && isASCIIHexDigit(input.charAt(offset + 2))) ||
+        unencodedPredicate.test(c);
+  }
+
+  /**
+   * Gets a transformer that canonicalizes non-empty components with the given predicate.
+   */
+  static ComponentTransformer nonEmptyEncoder(final CharacterPredicate unencodedPredicate) {
+    return new ComponentTransformer() {
+      @Override
+      public String transform(final String input) {
+        if (input == null || input.isEmpty()) {
+          return input;
+        }
+        return canonicalize(input, unencodedPredicate);
+      }
+    };
+  }
+
+  /**
+   * Gets a transformer that canonicalizes non-null components with the given predicate.
+   */
+  static ComponentTransformer encoder(final CharacterPredicate unencodedPredicate) {
+    return new ComponentTransformer() {
+      @Override
+      public String transform(final String input) {
+        if (input == null) {
+          return null;
+        }
+        return canonicalize(input, unencodedPredicate);
+      }
+    };
+  }
+
+  /**
+   * Adds the per-component transformations equivalent to {@link #canonicalize(io.mola.galimatias.URL)}.
+   *
+   * @see FusedCanonicalizer
+   */
+  abstract void fuseInto(FusedCanonicalizer.Builder builder);
+
 }
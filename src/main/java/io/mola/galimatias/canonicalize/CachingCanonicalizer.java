@@ -0,0 +1,368 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes the results of another canonicalizer in a bounded cache.
+ *
+ * Only wrap canonicalizers that are pure, that is, whose output depends only on
+ * the input URL. The built-in canonicalizers are. Failures are not cached.
+ *
+ * The cache is split into segments with their own lock and least-recently-used
+ * eviction, bounded both by number of entries and by total weight as computed
+ * by a {@link Weigher}.
+ *
+ * <pre>
+ * <code>
+ *  URLCanonicalizer canon = CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+ *      .maximumSize(100000)
+ *      .build();
+ * </code>
+ * </pre>
+ */
+public class CachingCanonicalizer implements URLCanonicalizer {
+
+    /**
+     * Computes the weight of a cache entry.
+     */
+    public static interface Weigher {
+        long weigh(URL input, URL output);
+    }
+
+    /**
+     * Weighs entries as one, so that maximum weight is the same as maximum size.
+     */
+    public static final Weigher SINGLETON_WEIGHER = new Weigher() {
+        @Override
+        public long weigh(final URL input, final URL output) {
+            return 1;
+        }
+    };
+
+    /**
+     * Weighs entries by the length of their string components, which approximates
+     * their memory footprint.
+     */
+    public static final Weigher LENGTH_WEIGHER = new Weigher() {
+        @Override
+        public long weigh(final URL input, final URL output) {
+            return (input == output)? length(input) : length(input) + length(output);
+        }
+
+        private long length(final URL url) {
+            return length(url.scheme()) + length(url.schemeData()) +
+                    length(url.username()) + length(url.password()) +
+                    length(url.path()) + length(url.query()) + length(url.fragment());
+        }
+
+        private long length(final String s) {
+            return (s == null)? 0 : s.length();
+        }
+    };
+
+    private final URLCanonicalizer canonicalizer;
+    private final Weigher weigher;
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private CachingCanonicalizer(final Builder builder) {
+        this.canonicalizer = builder.canonicalizer;
+        this.weigher = builder.weigher;
+        // Every segment needs room for one entry of weight one, so there are never more
+        // segments than the maximum size or weight
+        int segmentCount = 1;
+        int shift = 0;
+        while (segmentCount < builder.concurrencyLevel &&
+                segmentCount * 2L <= builder.maximumSize && segmentCount * 2L <= builder.maximumWeight) {
+            segmentCount <<= 1;
+            shift++;
+        }
+        this.segmentShift = 32 - shift;
+        this.segments = new Segment[segmentCount];
+        // Remainders are spread over the first segments, so that capacities add up exactly
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(
+                    builder.maximumSize / segmentCount + ((i < builder.maximumSize % segmentCount)? 1 : 0),
+                    builder.maximumWeight / segmentCount + ((i < builder.maximumWeight % segmentCount)? 1 : 0));
+        }
+    }
+
+    public static Builder builder(final URLCanonicalizer canonicalizer) {
+        return new Builder(canonicalizer);
+    }
+
+    @Override
+    public URL canonicalize(final URL input) throws GalimatiasParseException {
+        if (input == null) {
+            return canonicalizer.canonicalize(null);
+        }
+        final int hash = spread(input.hashCode());
+        final Segment segment = (segments.length == 1)? segments[0] : segments[hash >>> segmentShift];
+        final URL cached = segment.get(input);
+        if (cached != null) {
+            return cached;
+        }
+        final URL output = canonicalizer.canonicalize(input);
+        if (output != null) {
+            segment.put(input, output, weigher.weigh(input, output));
+        }
+        return output;
+    }
+
+    /**
+     * Gets the wrapped canonicalizer.
+     */
+    public URLCanonicalizer canonicalizer() {
+        return canonicalizer;
+    }
+
+    public long hitCount() {
+        long result = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.hits;
+            }
+        }
+        return result;
+    }
+
+    public long missCount() {
+        long result = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.misses;
+            }
+        }
+        return result;
+    }
+
+    public long evictionCount() {
+        long result = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.evictions;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ratio of lookups that were served from the cache, or 1.0 if there were no lookups yet.
+     */
+    public double hitRate() {
+        final long hits = hitCount();
+        final long requests = hits + missCount();
+        return (requests == 0)? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Current number of cached entries.
+     */
+    public long size() {
+        long result = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.map.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Current total weight of cached entries.
+     */
+    public long weight() {
+        long result = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.weight;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all cached entries. Statistics are kept.
+     */
+    public void clear() {
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CachingCanonicalizer{" +
+                "canonicalizer=" + canonicalizer +
+                ", size=" + size() +
+                ", weight=" + weight() +
+                ", hits=" + hitCount() +
+                ", misses=" + missCount() +
+                ", evictions=" + evictionCount() +
+                '}';
+    }
+
+    /**
+     * Spreads hash bits, since URL hash codes are weak in the high bits used to pick segments.
+     */
+    private static int spread(int h) {
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h * 0x9E3779B9;
+    }
+
+    private static final class Entry {
+        private final URL output;
+        private final long weight;
+
+        private Entry(final URL output, final long weight) {
+            this.output = output;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A least-recently-used map guarded by its own monitor.
+     */
+    private static final class Segment {
+
+        private final LinkedHashMap<URL, Entry> map = new LinkedHashMap<URL, Entry>(16, 0.75f, true);
+        private final long maximumSize;
+        private final long maximumWeight;
+        private long weight;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Segment(final long maximumSize, final long maximumWeight) {
+            this.maximumSize = maximumSize;
+            this.maximumWeight = maximumWeight;
+        }
+
+        private synchronized URL get(final URL input) {
+            final Entry entry = map.get(input);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.output;
+        }
+
+        private synchronized void put(final URL input, final URL output, final long entryWeight) {
+            if (entryWeight > maximumWeight) {
+                return;
+            }
+            final Entry previous = map.put(input, new Entry(output, entryWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entryWeight;
+            final Iterator<Map.Entry<URL, Entry>> it = map.entrySet().iterator();
+            while ((map.size() > maximumSize || weight > maximumWeight) && it.hasNext()) {
+                final Map.Entry<URL, Entry> eldest = it.next();
+                weight -= eldest.getValue().weight;
+                it.remove();
+                evictions++;
+            }
+        }
+
+    }
+
+    public static final class Builder {
+
+        private final URLCanonicalizer canonicalizer;
+        private long maximumSize = 10000;
+        private long maximumWeight = Long.MAX_VALUE;
+        private Weigher weigher = SINGLETON_WEIGHER;
+        private int concurrencyLevel = 16;
+
+        private Builder(final URLCanonicalizer canonicalizer) {
+            if (canonicalizer == null) {
+                throw new NullPointerException("canonicalizer");
+            }
+            this.canonicalizer = canonicalizer;
+        }
+
+        /**
+         * Maximum number of cached entries. Defaults to 10000.
+         */
+        public Builder maximumSize(final long size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("maximum size must be positive");
+            }
+            this.maximumSize = size;
+            return this;
+        }
+
+        /**
+         * Maximum total weight of cached entries. Unbounded by default.
+         */
+        public Builder maximumWeight(final long weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("maximum weight must be positive");
+            }
+            this.maximumWeight = weight;
+            return this;
+        }
+
+        /**
+         * Weigher for entries. Defaults to {@link CachingCanonicalizer#SINGLETON_WEIGHER}.
+         */
+        public Builder weigher(final Weigher entryWeigher) {
+            if (entryWeigher == null) {
+                throw new NullPointerException("weigher");
+            }
+            this.weigher = entryWeigher;
+            return this;
+        }
+
+        /**
+         * Expected number of threads using the cache concurrently. It is rounded up to
+         * a power of two and used as the number of segments, unless the maximum size or
+         * weight is too small to be split that way. Defaults to 16.
+         */
+        public Builder concurrencyLevel(final int level) {
+            if (level <= 0) {
+                throw new IllegalArgumentException("concurrency level must be positive");
+            }
+            this.concurrencyLevel = level;
+            return this;
+        }
+
+        public CachingCanonicalizer build() {
+            return new CachingCanonicalizer(this);
+        }
+
+    }
+
+}
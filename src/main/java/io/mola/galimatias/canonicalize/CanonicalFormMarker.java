@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.CanonicalForm;
+import io.mola.galimatias.URL;
+
+/**
+ * Lets built-in canonicalizers record the canonical form of the URLs they build,
+ * which {@link URL} does not allow from outside its package.
+ *
+ * This is an internal bridge, public only so that {@link URL} can implement it. Only
+ * the marker nested in {@link URL}, installed when it is initialized, is accepted.
+ */
+public abstract class CanonicalFormMarker {
+
+    private static volatile CanonicalFormMarker instance;
+
+    protected CanonicalFormMarker() {
+
+    }
+
+    /**
+     * Called once by {@link URL}. Any other marker is rejected.
+     */
+    public static synchronized void install(final CanonicalFormMarker marker) {
+        if (marker == null) {
+            throw new NullPointerException("marker");
+        }
+        if (marker.getClass().getEnclosingClass() != URL.class) {
+            throw new IllegalArgumentException("Only URL can install a canonical form marker");
+        }
+        if (instance != null) {
+            throw new IllegalStateException("Canonical form marker is already installed");
+        }
+        instance = marker;
+    }
+
+    protected abstract void markCanonical(URL url, CanonicalForm form);
+
+    /**
+     * Marks a URL that has just been built by a canonicalizer and has not been
+     * published yet. Marking URLs that are already shared is not thread-safe.
+     */
+    static void mark(final URL url, final CanonicalForm form) {
+        // The URL has been created, so the URL class is initialized and its marker installed
+        instance.markCanonical(url, form);
+    }
+
+}
@@ -22,14 +22,23 @@
 package io.mola.galimatias.canonicalize;
 
 import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.Tracer;
 import io.mola.galimatias.URL;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Runs a chain of canonicalizers in order.
+ *
+ * Consecutive built-in canonicalizers ({@link RFC3986Canonicalizer}, {@link RFC2396Canonicalizer},
+ * {@link DecodeUnreservedCanonicalizer} and {@link StripPartCanonicalizer}) are fused, so that each
+ * URL component goes through all of them in a single pass. Any other canonicalizer is run on its own.
+ */
 public class CombinedCanonicalizer implements URLCanonicalizer {
 
     private final List<URLCanonicalizer> canonicalizers;
+    private final List<URLCanonicalizer> pipeline;
 
     public CombinedCanonicalizer(final URLCanonicalizer ... canons) {
         canonicalizers = new ArrayList<URLCanonicalizer>();
@@ -40,13 +49,48 @@ public class CombinedCanonicalizer implements URLCanonicalizer {
                 canonicalizers.add(canon);
             }
         }
+        pipeline = compile(canonicalizers);
+    }
+
+    private static List<URLCanonicalizer> compile(final List<URLCanonicalizer> canonicalizers) {
+        final List<URLCanonicalizer> result = new ArrayList<URLCanonicalizer>(canonicalizers.size());
+        FusedCanonicalizer.Builder fused = FusedCanonicalizer.builder();
+        for (final URLCanonicalizer canon : canonicalizers) {
+            if (FusedCanonicalizer.isFusible(canon)) {
+                fused.add(canon);
+                continue;
+            }
+            if (!fused.isEmpty()) {
+                result.add(fused.build());
+                fused = FusedCanonicalizer.builder();
+            }
+            result.add(canon);
+        }
+        if (!fused.isEmpty()) {
+            result.add(fused.build());
+        }
+        return result;
     }
 
     @Override
     public URL canonicalize(final URL input) throws GalimatiasParseException {
+        final Tracer tracer = Tracer.get();
         URL result = input;
-        for (final URLCanonicalizer canon : canonicalizers) {
-            result = canon.canonicalize(result);
+        for (final URLCanonicalizer canon : pipeline) {
+            if (tracer == null) {
+                result = canon.canonicalize(result);
+                continue;
+            }
+            final Object event = tracer.beginCanonicalize();
+            boolean success = false;
+            try {
+                result = canon.canonicalize(result);
+                success = true;
+            } finally {
+                if (event != null) {
+                    tracer.endCanonicalize(event, canon, success);
+                }
+            }
         }
         return result;
     }
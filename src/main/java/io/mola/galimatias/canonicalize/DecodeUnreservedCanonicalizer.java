@@ -21,44 +21,112 @@
  */
 package io.mola.galimatias.canonicalize;
 
+import io.mola.galimatias.CanonicalForm;
 import io.mola.galimatias.GalimatiasParseException;
 import io.mola.galimatias.URL;
 import io.mola.galimatias.URLUtils;
 
-public class DecodeUnreservedCanonicalizer implements URLCanonicalizer {
+public class DecodeUnreservedCanonicalizer extends BaseURLCanonicalizer {
 
     @Override
     public URL canonicalize(final URL input) throws GalimatiasParseException {
         if (input == null) {
             return input;
         }
+        if (input.isCanonical(CanonicalForm.UNRESERVED_DECODED)) {
+            return input;
+        }
+        // Components are compared by reference: decodeUnreserved returns
+        // its input when there is nothing to decode.
         URL output = input;
         if (output.isHierarchical()) {
-            output = output
-                    .withUsername(decodeUnreserved(output.username()))
-                    .withPassword(decodeUnreserved(output.password()))
-                    .withPath(decodeUnreserved(output.path()));
+            final String username = decodeUnreserved(output.username());
+            if (username != output.username()) {
+                output = output.withUsername(username);
+            }
+            final String password = decodeUnreserved(output.password());
+            if (password != output.password()) {
+                output = output.withPassword(password);
+            }
+            final String path = decodeUnreserved(output.path());
+            if (path != output.path()) {
+                output = output.withPath(path);
+            }
+        }
+        final String query = decodeUnreserved(output.query());
+        if (query != output.query()) {
+            output = output.withQuery(query);
+        }
+        final String fragment = decodeUnreserved(output.fragment());
+        if (fragment != output.fragment()) {
+            output = output.withFragment(fragment);
+        }
+        // The input may be shared, so only URLs built here are marked
+        if (output != input) {
+            CanonicalFormMarker.mark(output, CanonicalForm.UNRESERVED_DECODED);
+        }
+        return output;
+    }
+
+    @Override
+    void fuseInto(final FusedCanonicalizer.Builder builder) {
+        for (final FusedCanonicalizer.Component component : FusedCanonicalizer.Component.values()) {
+            builder.transform(component, DECODE_UNRESERVED);
         }
-        return output
-                .withQuery(decodeUnreserved(output.query()))
-                .withFragment(decodeUnreserved(output.fragment()));
     }
 
+    private static final ComponentTransformer DECODE_UNRESERVED = new ComponentTransformer() {
+        @Override
+        public String transform(final String input) {
+            return decodeUnreserved(input);
+        }
+    };
+
+    private static boolean isUnreserved(final int c) {
+        return URLUtils.isASCIIAlphanumeric(c) || c == 0x2D || c == 0x2E || c == 0x5F || c == 0x7E;
+    }
+
+    /**
+     * Returns the offset of the first percent-encoded unreserved character, or -1 if there is none.
+     */
+    private static int indexOfEncodedUnreserved(final String input) {
+        int i = input.indexOf('%');
+        while (i != -1) {
+            if (input.length() > i + 2 &&
+                    URLUtils.isASCIIHexDigit(input.charAt(i + 1)) &&
+                    URLUtils.isASCIIHexDigit(input.charAt(i + 2)) &&
+                    isUnreserved(URLUtils.hexToInt(input.charAt(i + 1), input.charAt(i + 2)))) {
+                return i;
+            }
+            i = input.indexOf('%', i + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes percent-encoded unreserved characters. Returns the input instance
+     * itself if there is nothing to decode.
+     */
     private static String decodeUnreserved(final String input) {
         if (input == null || input.isEmpty()) {
             return input;
         }
-        final StringBuilder output = new StringBuilder();
-        for (int i = 0; i < input.length(); i++) {
+        final int first = indexOfEncodedUnreserved(input);
+        if (first == -1) {
+            return input;
+        }
+        final StringBuilder output = new StringBuilder(input.length());
+        output.append(input, 0, first);
+        for (int i = first; i < input.length(); i++) {
             final char c = input.charAt(i);
             if (c == '%' && input.length() > i + 2 &&
                     URLUtils.isASCIIHexDigit(input.charAt(i + 1)) &&
                     URLUtils.isASCIIHexDigit(input.charAt(i + 2))) {
                 final int d = URLUtils.hexToInt(input.charAt(i + 1), input.charAt(i + 2));
-                if (URLUtils.isASCIIAlphanumeric(d) || d == 0x2D || d == 0x2E || d == 0x5F || d == 0x7E) {
+                if (isUnreserved(d)) {
                     output.appendCodePoint(d);
                 } else {
-                    output.append(input.substring(i, i + 3));
+                    output.append(input, i, i + 3);
                 }
                 i += 2;
             } else {
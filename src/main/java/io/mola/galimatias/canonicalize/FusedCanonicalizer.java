@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a chain of built-in canonicalizers in a single pass.
+ *
+ * Each canonicalizer in the chain contributes per-component transformations
+ * (encoding, unreserved decoding, stripping). These are applied one after another
+ * on the component strings and the resulting URL is built at the end, calling
+ * the corresponding <code>withX</code> method only once for each component that
+ * actually changed. Running the chain step by step would create an intermediate
+ * URL (and usually a re-parse) for every component of every step.
+ *
+ * @see CombinedCanonicalizer
+ */
+final class FusedCanonicalizer implements URLCanonicalizer {
+
+    static enum Component {
+        USERNAME,
+        PASSWORD,
+        PATH,
+        QUERY,
+        FRAGMENT
+    }
+
+    private static final Component[] COMPONENTS = Component.values();
+
+    private final List<URLCanonicalizer> steps;
+    private final ComponentTransformer[][] transformers;
+    private final boolean stripPort;
+    private final boolean hierarchicalOnly;
+
+    private FusedCanonicalizer(final Builder builder) {
+        this.steps = new ArrayList<URLCanonicalizer>(builder.steps);
+        this.transformers = new ComponentTransformer[COMPONENTS.length][];
+        for (final Component component : COMPONENTS) {
+            final List<ComponentTransformer> list = builder.transformers.get(component.ordinal());
+            this.transformers[component.ordinal()] = list.toArray(new ComponentTransformer[list.size()]);
+        }
+        this.stripPort = builder.stripPort;
+        this.hierarchicalOnly = builder.hierarchicalOnly;
+    }
+
+    /**
+     * Whether a canonicalizer can be part of a fused chain. Only the built-in
+     * classes themselves qualify, since subclasses may override
+     * {@link URLCanonicalizer#canonicalize(URL)}.
+     */
+    static boolean isFusible(final URLCanonicalizer canon) {
+        if (canon == null) {
+            return false;
+        }
+        final Class<?> clazz = canon.getClass();
+        return clazz == RFC3986Canonicalizer.class ||
+                clazz == RFC2396Canonicalizer.class ||
+                clazz == DecodeUnreservedCanonicalizer.class ||
+                clazz == StripPartCanonicalizer.class;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public URL canonicalize(final URL input) throws GalimatiasParseException {
+        if (input == null || (hierarchicalOnly && input.isOpaque())) {
+            // Keep per-step behaviour for corner cases, including the errors
+            // thrown when stripping hierarchical-only parts of opaque URLs.
+            URL result = input;
+            for (final URLCanonicalizer step : steps) {
+                result = step.canonicalize(result);
+            }
+            return result;
+        }
+
+        final String username = apply(Component.USERNAME, input.username());
+        final String password = apply(Component.PASSWORD, input.password());
+        final String path = apply(Component.PATH, input.path());
+        final String query = apply(Component.QUERY, input.query());
+        final String fragment = apply(Component.FRAGMENT, input.fragment());
+
+        URL output = input;
+        if (!equals(username, input.username())) {
+            output = output.withUsername(username);
+        }
+        if (!equals(password, input.password())) {
+            output = output.withPassword(password);
+        }
+        if (stripPort) {
+            output = output.withPort(-1);
+        }
+        if (!equals(path, input.path())) {
+            output = output.withPath(path);
+        }
+        if (!equals(query, input.query())) {
+            output = output.withQuery(query);
+        }
+        if (!equals(fragment, input.fragment())) {
+            output = output.withFragment(fragment);
+        }
+        return output;
+    }
+
+    private String apply(final Component component, String value) {
+        for (final ComponentTransformer transformer : transformers[component.ordinal()]) {
+            value = transformer.transform(value);
+        }
+        return value;
+    }
+
+    private static boolean equals(final String a, final String b) {
+        return (a == null)? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("FusedCanonicalizer[");
+        for (int i = 0; i < steps.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(steps.get(i).getClass().getSimpleName());
+        }
+        return sb.append(']').toString();
+    }
+
+    static final class Builder {
+
+        private final List<URLCanonicalizer> steps = new ArrayList<URLCanonicalizer>();
+        private final List<List<ComponentTransformer>> transformers;
+        private boolean stripPort;
+        private boolean hierarchicalOnly;
+
+        private Builder() {
+            transformers = new ArrayList<List<ComponentTransformer>>(COMPONENTS.length);
+            for (int i = 0; i < COMPONENTS.length; i++) {
+                transformers.add(new ArrayList<ComponentTransformer>());
+            }
+        }
+
+        Builder add(final URLCanonicalizer canon) {
+            if (!isFusible(canon)) {
+                throw new IllegalArgumentException("Canonicalizer cannot be fused: " + canon.getClass().getName());
+            }
+            steps.add(canon);
+            ((BaseURLCanonicalizer) canon).fuseInto(this);
+            return this;
+        }
+
+        Builder transform(final Component component, final ComponentTransformer transformer) {
+            transformers.get(component.ordinal()).add(transformer);
+            return this;
+        }
+
+        Builder stripPort() {
+            stripPort = true;
+            return this;
+        }
+
+        /**
+         * Marks the chain as only applicable to hierarchical URLs. Opaque URLs
+         * will be handled step by step.
+         */
+        Builder hierarchicalOnly() {
+            hierarchicalOnly = true;
+            return this;
+        }
+
+        boolean isEmpty() {
+            return steps.isEmpty();
+        }
+
+        /**
+         * Gets the single added canonicalizer, if there is only one, or the fused chain.
+         */
+        URLCanonicalizer build() {
+            if (steps.size() == 1) {
+                return steps.get(0);
+            }
+            return new FusedCanonicalizer(this);
+        }
+
+    }
+
+}
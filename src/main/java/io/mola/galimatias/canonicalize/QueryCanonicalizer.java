@@ -0,0 +1,437 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Normalizes the query of hierarchical URLs, so that equivalent queries compare equal.
+ *
+ * Depending on its settings, it:
+ * <ul>
+ *     <li>normalizes percent-encoding: unreserved characters are decoded and the hexadecimal
+ *     digits of anything else are upper-cased,</li>
+ *     <li>removes parameters by exact name or by name prefix (for example, tracking parameters),</li>
+ *     <li>removes parameters with an empty value,</li>
+ *     <li>sorts parameters by name, keeping the relative order of parameters with the same name.</li>
+ * </ul>
+ *
+ * Empty sequences (as in <code>a=1&amp;&amp;b=2</code>) are always dropped. Names are compared as
+ * {@link io.mola.galimatias.URLSearchParameters} does (<code>+</code> is a space), after
+ * percent-encoding normalization. Names to remove are matched ignoring ASCII case, with a trie
+ * built once. Every other byte of the query is kept as it is, and only the query is re-parsed
+ * when it changes.
+ */
+public class QueryCanonicalizer implements URLCanonicalizer {
+
+    /**
+     * Exact names removed by {@link Builder#removeTrackingParameters()}.
+     */
+    private static final String[] TRACKING_PARAMETERS = {
+            "gclid", "gclsrc", "dclid", "gbraid", "wbraid", "fbclid", "msclkid", "yclid", "twclid",
+            "igshid", "mc_cid", "mc_eid", "_ga", "_gl", "_hsenc", "_hsmi",
+            "jsessionid", "phpsessid", "sessionid", "session_id"
+    };
+
+    /**
+     * Name prefixes removed by {@link Builder#removeTrackingParameters()}.
+     */
+    private static final String[] TRACKING_PARAMETER_PREFIXES = {
+            "utm_", "pk_"
+    };
+
+    private final NameTrie removedNames;
+    private final boolean removeEmpty;
+    private final boolean sort;
+    private final boolean normalizePercentEncoding;
+
+    private QueryCanonicalizer(final Builder builder) {
+        this.removedNames = new NameTrie(builder.names, builder.prefixes);
+        this.removeEmpty = builder.removeEmpty;
+        this.sort = builder.sort;
+        this.normalizePercentEncoding = builder.normalizePercentEncoding;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public URL canonicalize(final URL input) throws GalimatiasParseException {
+        if (input == null) {
+            return null;
+        }
+        final String query = input.query();
+        if (query == null || query.isEmpty() || !input.isHierarchical()) {
+            return input;
+        }
+        final String output = canonicalize(query);
+        if (output.equals(query)) {
+            return input;
+        }
+        if (output.isEmpty()) {
+            return input.withQuery(null);
+        }
+        // URL#withQuery drops a leading '?', which may be part of the first parameter.
+        return input.withQuery((output.charAt(0) == '?') ? '?' + output : output);
+    }
+
+    String canonicalize(final String query) {
+        final int length = query.length();
+        final StringBuilder buffer = new StringBuilder(length);
+        final List<Parameter> parameters = new ArrayList<Parameter>();
+
+        int start = 0;
+        while (start <= length) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (end > start) {
+                final int bufferStart = buffer.length();
+                int nameEnd = -1;
+                for (int i = start; i < end; i++) {
+                    final char c = query.charAt(i);
+                    if (c == '=' && nameEnd == -1) {
+                        nameEnd = buffer.length();
+                        buffer.append(c);
+                    } else if (c == '%' && normalizePercentEncoding) {
+                        i = appendPercentEncoded(query, i, end, buffer);
+                    } else {
+                        buffer.append(c);
+                    }
+                }
+                final Parameter parameter = new Parameter(buffer, bufferStart, (nameEnd == -1) ? buffer.length() : nameEnd, buffer.length());
+                if ((removeEmpty && parameter.hasEmptyValue()) || removedNames.matches(buffer, parameter.start, parameter.nameEnd)) {
+                    buffer.setLength(bufferStart);
+                } else {
+                    parameters.add(parameter);
+                }
+            }
+            start = end + 1;
+        }
+
+        if (sort && parameters.size() > 1) {
+            final Parameter[] sorted = parameters.toArray(new Parameter[parameters.size()]);
+            // Object sorting is stable.
+            Arrays.sort(sorted, NAME_ORDER);
+            parameters.clear();
+            parameters.addAll(Arrays.asList(sorted));
+        }
+
+        final StringBuilder output = new StringBuilder(buffer.length() + parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i != 0) {
+                output.append('&');
+            }
+            final Parameter parameter = parameters.get(i);
+            output.append(buffer, parameter.start, parameter.end);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Appends the percent-encoded byte at the given position, normalized, and returns the
+     * position of its last character.
+     */
+    private static int appendPercentEncoded(final String query, final int i, final int end, final StringBuilder buffer) {
+        if (i + 2 >= end || !isHexDigit(query.charAt(i + 1)) || !isHexDigit(query.charAt(i + 2))) {
+            buffer.append('%');
+            return i;
+        }
+        final int b = (Character.digit(query.charAt(i + 1), 16) << 4) | Character.digit(query.charAt(i + 2), 16);
+        if (isUnreserved(b)) {
+            buffer.append((char) b);
+        } else {
+            buffer.append('%')
+                    .append(Character.toUpperCase(query.charAt(i + 1)))
+                    .append(Character.toUpperCase(query.charAt(i + 2)));
+        }
+        return i + 2;
+    }
+
+    private static boolean isHexDigit(final char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+    }
+
+    private static boolean isUnreserved(final int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * A parameter, as offsets into the normalized query buffer.
+     */
+    private static final class Parameter {
+        private final CharSequence buffer;
+        private final int start;
+        private final int nameEnd;
+        private final int end;
+
+        private Parameter(final CharSequence buffer, final int start, final int nameEnd, final int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.nameEnd = nameEnd;
+            this.end = end;
+        }
+
+        private boolean hasEmptyValue() {
+            return end - nameEnd <= 1;
+        }
+    }
+
+    private static final Comparator<Parameter> NAME_ORDER = new Comparator<Parameter>() {
+        @Override
+        public int compare(final Parameter p1, final Parameter p2) {
+            final int length1 = p1.nameEnd - p1.start;
+            final int length2 = p2.nameEnd - p2.start;
+            final int length = Math.min(length1, length2);
+            for (int i = 0; i < length; i++) {
+                final char c1 = decode(p1.buffer.charAt(p1.start + i));
+                final char c2 = decode(p2.buffer.charAt(p2.start + i));
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return length1 - length2;
+        }
+    };
+
+    private static char decode(final char c) {
+        return (c == '+') ? ' ' : c;
+    }
+
+    /**
+     * Trie of lower-cased names and name prefixes, flattened into arrays. The edges of each
+     * node are contiguous and sorted by character.
+     */
+    private static final class NameTrie {
+
+        private static final byte EXACT = 1;
+        private static final byte PREFIX = 2;
+
+        private final byte[] flags;
+        private final int[] firstEdge;
+        private final int[] edgeCount;
+        private final char[] edgeChars;
+        private final int[] edgeTargets;
+
+        NameTrie(final List<String> names, final List<String> prefixes) {
+            final Node root = new Node();
+            int nodeCount = 1;
+            for (int pass = 0; pass < 2; pass++) {
+                for (final String key : (pass == 0) ? names : prefixes) {
+                    Node node = root;
+                    for (int i = 0; i < key.length(); i++) {
+                        final char c = toLowerCase(decode(key.charAt(i)));
+                        Node child = node.child(c);
+                        if (child == null) {
+                            child = node.addChild(c);
+                            nodeCount++;
+                        }
+                        node = child;
+                    }
+                    node.flags |= (pass == 0) ? EXACT : PREFIX;
+                }
+            }
+
+            flags = new byte[nodeCount];
+            firstEdge = new int[nodeCount];
+            edgeCount = new int[nodeCount];
+            edgeChars = new char[nodeCount - 1];
+            edgeTargets = new int[nodeCount - 1];
+
+            // Breadth-first numbering, so that the children of a node get consecutive numbers
+            // and their edges end up contiguous.
+            final List<Node> queue = new ArrayList<Node>(nodeCount);
+            queue.add(root);
+            int edge = 0;
+            for (int n = 0; n < queue.size(); n++) {
+                final Node node = queue.get(n);
+                flags[n] = node.flags;
+                firstEdge[n] = edge;
+                edgeCount[n] = node.chars.size();
+                for (final Node child : node.sortedChildren()) {
+                    edgeChars[edge] = child.c;
+                    edgeTargets[edge] = queue.size();
+                    queue.add(child);
+                    edge++;
+                }
+            }
+        }
+
+        boolean matches(final CharSequence input, final int start, final int end) {
+            if (edgeChars.length == 0 && flags[0] == 0) {
+                return false;
+            }
+            int node = 0;
+            for (int i = start; i < end; i++) {
+                if ((flags[node] & PREFIX) != 0) {
+                    return true;
+                }
+                node = next(node, toLowerCase(decode(input.charAt(i))));
+                if (node == -1) {
+                    return false;
+                }
+            }
+            return flags[node] != 0;
+        }
+
+        private int next(final int node, final char c) {
+            int low = firstEdge[node];
+            int high = low + edgeCount[node] - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final char midChar = edgeChars[mid];
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return edgeTargets[mid];
+                }
+            }
+            return -1;
+        }
+
+        private static char toLowerCase(final char c) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + 0x20) : c;
+        }
+
+        /**
+         * Mutable node, only used while building.
+         */
+        private static final class Node {
+            private char c;
+            private byte flags;
+            private final List<Character> chars = new ArrayList<Character>(2);
+            private final List<Node> children = new ArrayList<Node>(2);
+
+            Node child(final char c) {
+                final int i = chars.indexOf(c);
+                return (i == -1) ? null : children.get(i);
+            }
+
+            Node addChild(final char c) {
+                final Node child = new Node();
+                child.c = c;
+                chars.add(c);
+                children.add(child);
+                return child;
+            }
+
+            List<Node> sortedChildren() {
+                final Node[] sorted = children.toArray(new Node[children.size()]);
+                Arrays.sort(sorted, new Comparator<Node>() {
+                    @Override
+                    public int compare(final Node n1, final Node n2) {
+                        return n1.c - n2.c;
+                    }
+                });
+                return Arrays.asList(sorted);
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<String> names = new ArrayList<String>();
+        private final List<String> prefixes = new ArrayList<String>();
+        private boolean removeEmpty = true;
+        private boolean sort = true;
+        private boolean normalizePercentEncoding = true;
+
+        private Builder() {}
+
+        /**
+         * Removes parameters with the given name, ignoring ASCII case.
+         */
+        public Builder removeParameter(final String name) {
+            if (name == null) {
+                throw new NullPointerException("name");
+            }
+            names.add(name);
+            return this;
+        }
+
+        /**
+         * Removes parameters whose name starts with the given prefix, ignoring ASCII case.
+         */
+        public Builder removeParametersWithPrefix(final String prefix) {
+            if (prefix == null) {
+                throw new NullPointerException("prefix");
+            }
+            if (prefix.isEmpty()) {
+                throw new IllegalArgumentException("Empty prefix");
+            }
+            prefixes.add(prefix);
+            return this;
+        }
+
+        /**
+         * Removes common tracking and session parameters: <code>utm_*</code>, <code>pk_*</code>,
+         * <code>gclid</code>, <code>fbclid</code>, <code>msclkid</code>, <code>jsessionid</code>,
+         * <code>phpsessid</code> and the like.
+         */
+        public Builder removeTrackingParameters() {
+            names.addAll(Arrays.asList(TRACKING_PARAMETERS));
+            prefixes.addAll(Arrays.asList(TRACKING_PARAMETER_PREFIXES));
+            return this;
+        }
+
+        /**
+         * Whether to remove parameters with an empty value (<code>a</code> or <code>a=</code>).
+         * Enabled by default.
+         */
+        public Builder removeEmpty(final boolean removeEmpty) {
+            this.removeEmpty = removeEmpty;
+            return this;
+        }
+
+        /**
+         * Whether to sort parameters by name. Enabled by default.
+         */
+        public Builder sort(final boolean sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        /**
+         * Whether to normalize percent-encoding. Enabled by default.
+         */
+        public Builder normalizePercentEncoding(final boolean normalizePercentEncoding) {
+            this.normalizePercentEncoding = normalizePercentEncoding;
+            return this;
+        }
+
+        public QueryCanonicalizer build() {
+            return new QueryCanonicalizer(this);
+        }
+    }
+
+}
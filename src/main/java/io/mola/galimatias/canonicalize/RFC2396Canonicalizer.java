@@ -21,6 +21,7 @@
  */
 package io.mola.galimatias.canonicalize;
 
+import io.mola.galimatias.CanonicalForm;
 import io.mola.galimatias.GalimatiasParseException;
 import io.mola.galimatias.URL;
 
@@ -29,33 +30,17 @@ import static io.mola.galimatias.URLUtils.*;
 public class RFC2396Canonicalizer extends BaseURLCanonicalizer {
 
     @Override
-    public URL canonicalize(URL url) throws GalimatiasParseException {
-        // User
-        if (url.username() != null && !url.username().isEmpty()) {
-            url = url.withUsername(canonicalize(url.username(), USERINFO_PREDICATE));
-        }
-
-        // Pass
-        if (url.password() != null && !url.password().isEmpty()) {
-            url = url.withPassword(canonicalize(url.password(), USERINFO_PREDICATE));
-        }
-
-        // Path
-        if (url.path() != null) {
-            url = url.withPath(canonicalize(url.path(), PATH_PREDICATE));
-        }
-
-        // Query
-        if (url.query() != null) {
-            url = url.withQuery(canonicalize(url.query(), URIC_PREDICATE));
-        }
-
-        // Fragment
-        if (url.fragment() != null) {
-            url = url.withFragment(canonicalize(url.fragment(), URIC_PREDICATE));
-        }
+    public URL canonicalize(final URL url) throws GalimatiasParseException {
+        return canonicalize(url, CanonicalForm.RFC2396, USERINFO_PREDICATE, PATH_PREDICATE, URIC_PREDICATE);
+    }
 
-        return url;
+    @Override
+    void fuseInto(final FusedCanonicalizer.Builder builder) {
+        builder.transform(FusedCanonicalizer.Component.USERNAME, nonEmptyEncoder(USERINFO_PREDICATE))
+                .transform(FusedCanonicalizer.Component.PASSWORD, nonEmptyEncoder(USERINFO_PREDICATE))
+                .transform(FusedCanonicalizer.Component.PATH, encoder(PATH_PREDICATE))
+                .transform(FusedCanonicalizer.Component.QUERY, encoder(URIC_PREDICATE))
+                .transform(FusedCanonicalizer.Component.FRAGMENT, encoder(URIC_PREDICATE));
     }
 
     private static boolean isMark(final int c) {
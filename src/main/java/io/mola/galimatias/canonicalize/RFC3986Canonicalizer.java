@@ -21,6 +21,7 @@
  */
 package io.mola.galimatias.canonicalize;
 
+import io.mola.galimatias.CanonicalForm;
 import io.mola.galimatias.GalimatiasParseException;
 import io.mola.galimatias.URL;
 import static io.mola.galimatias.URLUtils.*;
@@ -28,33 +29,17 @@ import static io.mola.galimatias.URLUtils.*;
 public class RFC3986Canonicalizer extends BaseURLCanonicalizer {
 
     @Override
-    public URL canonicalize(URL url) throws GalimatiasParseException {
-        // User
-        if (url.username() != null && !url.username().isEmpty()) {
-            url = url.withUsername(canonicalize(url.username(), USERINFO_PREDICATE));
-        }
-
-        // Pass
-        if (url.password() != null && !url.password().isEmpty()) {
-            url = url.withPassword(canonicalize(url.password(), USERINFO_PREDICATE));
-        }
-
-        // Path
-        if (url.path() != null) {
-            url = url.withPath(canonicalize(url.path(), PATH_PREDICATE));
-        }
-
-        // Query
-        if (url.query() != null) {
-          url = url.withQuery(canonicalize(url.query(), QUERY_OR_FRAGMENT_PREDICATE));
-        }
-
-        // Fragment
-        if (url.fragment() != null) {
-            url = url.withFragment(canonicalize(url.fragment(), QUERY_OR_FRAGMENT_PREDICATE));
-        }
+    public URL canonicalize(final URL url) throws GalimatiasParseException {
+        return canonicalize(url, CanonicalForm.RFC3986, USERINFO_PREDICATE, PATH_PREDICATE, QUERY_OR_FRAGMENT_PREDICATE);
+    }
 
-        return url;
+    @Override
+    void fuseInto(final FusedCanonicalizer.Builder builder) {
+        builder.transform(FusedCanonicalizer.Component.USERNAME, nonEmptyEncoder(USERINFO_PREDICATE))
+                .transform(FusedCanonicalizer.Component.PASSWORD, nonEmptyEncoder(USERINFO_PREDICATE))
+                .transform(FusedCanonicalizer.Component.PATH, encoder(PATH_PREDICATE))
+                .transform(FusedCanonicalizer.Component.QUERY, encoder(QUERY_OR_FRAGMENT_PREDICATE))
+                .transform(FusedCanonicalizer.Component.FRAGMENT, encoder(QUERY_OR_FRAGMENT_PREDICATE));
     }
 
     private static boolean isUnreserved(final int c) {
@@ -0,0 +1,451 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static io.mola.galimatias.URLUtils.UTF_8;
+
+/**
+ * Applies a large set of regex rewrite rules, evaluating only the rules that apply to the host of each URL.
+ *
+ * Each rule works like a {@link RegexCanonicalizer} restricted to a host, but rules are not applied
+ * in the order they are given (see below). Rules are indexed by host (any host, exact host or host
+ * suffix) and by scope. The patterns in each of these buckets are combined into a single alternation,
+ * which is used to skip the rules before the first one that matches. This is not a multi-pattern
+ * automaton: the alternation still tries every pattern at every position, so it saves per-rule
+ * matching and substitution overhead, not regex work, in large buckets.
+ *
+ * Rules files are UTF-8 text, one rule per line with tab-separated fields:
+ *
+ * <pre>
+ * # host         scope    pattern          substitution
+ * *              QUERY    (^|&amp;)sid=[^&amp;]*
+ * .example.com   PATH     ;jsessionid=.*$
+ * m.example.com  HOST     ^m\.             www.
+ * </pre>
+ *
+ * The host is either <code>*</code> (any host), a host name (exact match) or a host name
+ * starting with a dot (the host itself and any subdomain). Host names are matched against
+ * {@link io.mola.galimatias.Host#toString()}, so IDN must be given in their ASCII form. Scopes are those of
+ * {@link RegexCanonicalizer.Scope}. The substitution can be omitted, meaning the empty string.
+ * Empty lines and lines starting with <code>#</code> are ignored.
+ *
+ * Rules are applied scope by scope, in the order of {@link RegexCanonicalizer.Scope}
+ * ({@link RegexCanonicalizer.Scope#HOST} first and {@link RegexCanonicalizer.Scope#FULL} last), and,
+ * within a scope, from the least to the most specific host, in file order. This is the contract, so
+ * results may differ from applying the same rules in file order. Rules after the host scope are
+ * looked up with the rewritten host.
+ */
+public class RuleSetCanonicalizer implements URLCanonicalizer {
+
+    private static final RegexCanonicalizer.Scope[] SCOPES = RegexCanonicalizer.Scope.values();
+
+    /**
+     * Backreferences cannot be renumbered when combining patterns, and <code>\G</code> depends on
+     * previous matches, so buckets containing them are not pre-filtered.
+     */
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\([1-9]|k<|G)");
+
+    /**
+     * Named groups cannot be defined twice in the same pattern, so buckets containing
+     * them are not pre-filtered either. Lookbehinds (<code>(?&lt;=</code>, <code>(?&lt;!</code>) are fine.
+     */
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<[a-zA-Z]");
+
+    private final Bucket[] anyHost;
+    private final Map<String, Bucket[]> exactHosts;
+    private final Map<String, Bucket[]> hostSuffixes;
+
+    private RuleSetCanonicalizer(final Builder builder) {
+        this.anyHost = compile(builder.anyHost);
+        this.exactHosts = compile(builder.exactHosts);
+        this.hostSuffixes = compile(builder.hostSuffixes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Loads rules from a UTF-8 rules file.
+     *
+     * @param file Rules file.
+     * @return The rule set canonicalizer.
+     * @throws IOException
+     * @throws IllegalArgumentException if a rule is malformed.
+     */
+    public static RuleSetCanonicalizer load(final File file) throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            return load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Loads rules in the rules file format. The reader is not closed.
+     *
+     * @param reader Rules.
+     * @return The rule set canonicalizer.
+     * @throws IOException
+     * @throws IllegalArgumentException if a rule is malformed.
+     */
+    public static RuleSetCanonicalizer load(final Reader reader) throws IOException {
+        final Builder builder = builder();
+        final BufferedReader br = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = br.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\t", -1);
+            if (fields.length < 3 || fields.length > 4) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected 3 or 4 tab-separated fields");
+            }
+            final RegexCanonicalizer.Scope scope;
+            try {
+                scope = RegexCanonicalizer.Scope.valueOf(fields[1].trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": unknown scope: " + fields[1], ex);
+            }
+            try {
+                builder.rule(fields[0].trim(), scope, Pattern.compile(fields[2]), (fields.length == 4)? fields[3] : "");
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + ex.getMessage(), ex);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public URL canonicalize(final URL input) throws GalimatiasParseException {
+        URL url = input;
+        String host = host(url);
+        List<Bucket[]> buckets = bucketsFor(host);
+        for (final RegexCanonicalizer.Scope scope : SCOPES) {
+            if (scope == RegexCanonicalizer.Scope.PATH) {
+                final String newHost = host(url);
+                if ((host == null)? newHost != null : !host.equals(newHost)) {
+                    host = newHost;
+                    buckets = bucketsFor(host);
+                }
+            }
+            url = apply(url, scope, buckets);
+        }
+        return url;
+    }
+
+    private static String host(final URL url) {
+        return (url.host() == null)? null : url.host().toString();
+    }
+
+    /**
+     * Gets the rule buckets applicable to a host, from the least to the most specific.
+     */
+    private List<Bucket[]> bucketsFor(final String host) {
+        final List<Bucket[]> result = new ArrayList<Bucket[]>(4);
+        if (anyHost != null) {
+            result.add(anyHost);
+        }
+        if (host == null) {
+            return result;
+        }
+        if (!hostSuffixes.isEmpty()) {
+            int dot = host.length();
+            while (dot > 0) {
+                dot = host.lastIndexOf('.', dot - 1);
+                final Bucket[] suffix = hostSuffixes.get(host.substring(dot + 1));
+                if (suffix != null) {
+                    result.add(suffix);
+                }
+                if (dot == -1) {
+                    break;
+                }
+            }
+        }
+        final Bucket[] exact = exactHosts.get(host);
+        if (exact != null) {
+            result.add(exact);
+        }
+        return result;
+    }
+
+    private static URL apply(final URL url, final RegexCanonicalizer.Scope scope, final List<Bucket[]> buckets)
+            throws GalimatiasParseException {
+        String original = null;
+        String value = null;
+        for (final Bucket[] scopes : buckets) {
+            final Bucket bucket = scopes[scope.ordinal()];
+            if (bucket == null) {
+                continue;
+            }
+            if (original == null) {
+                original = component(url, scope);
+                if (original == null) {
+                    return url;
+                }
+                value = original;
+            }
+            value = bucket.apply(value);
+        }
+        if (value == null || value.equals(original)) {
+            return url;
+        }
+        switch (scope) {
+            case HOST:
+                return url.withHost(value);
+            case PATH:
+                return url.withPath(value);
+            case QUERY:
+                return url.withQuery(value);
+            case FRAGMENT:
+                return url.withFragment(value);
+            case FULL:
+                return URL.parse(value);
+            default:
+                return url;
+        }
+    }
+
+    private static String component(final URL url, final RegexCanonicalizer.Scope scope) {
+        switch (scope) {
+            case HOST:
+                return host(url);
+            case PATH:
+                return url.path();
+            case QUERY:
+                return url.query();
+            case FRAGMENT:
+                return url.fragment();
+            case FULL:
+                return url.toString();
+            default:
+                return null;
+        }
+    }
+
+    private static Bucket[] compile(final List<List<Rule>> rulesByScope) {
+        if (rulesByScope == null) {
+            return null;
+        }
+        final Bucket[] result = new Bucket[SCOPES.length];
+        for (int i = 0; i < SCOPES.length; i++) {
+            final List<Rule> rules = rulesByScope.get(i);
+            if (!rules.isEmpty()) {
+                result[i] = new Bucket(rules);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Bucket[]> compile(final Map<String, List<List<Rule>>> rulesByHost) {
+        final Map<String, Bucket[]> result = new HashMap<String, Bucket[]>(rulesByHost.size() * 2);
+        for (final Map.Entry<String, List<List<Rule>>> entry : rulesByHost.entrySet()) {
+            result.put(entry.getKey(), compile(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static final class Rule {
+        private final Pattern pattern;
+        private final String substitution;
+
+        private Rule(final Pattern pattern, final String substitution) {
+            this.pattern = pattern;
+            this.substitution = substitution;
+        }
+    }
+
+    /**
+     * Rules for a given host key and scope.
+     */
+    private static final class Bucket {
+
+        private final Rule[] rules;
+        /**
+         * Group of the combined pattern that captures each rule, or null without a pre-filter.
+         */
+        private final int[] groups;
+        private final Pattern prefilter;
+
+        private Bucket(final List<Rule> rules) {
+            this.rules = rules.toArray(new Rule[rules.size()]);
+            this.groups = new int[this.rules.length];
+            this.prefilter = (this.rules.length > 1)? combine(this.rules, groups) : null;
+        }
+
+        /**
+         * Combines all patterns into a single alternation with one capturing group per rule,
+         * which matches if and only if some rule matches.
+         */
+        private static Pattern combine(final Rule[] rules, final int[] groups) {
+            final StringBuilder regex = new StringBuilder();
+            int group = 1;
+            for (int i = 0; i < rules.length; i++) {
+                final Pattern pattern = rules[i].pattern;
+                if (pattern.flags() != 0 ||
+                        BACKREFERENCE.matcher(pattern.pattern()).find() ||
+                        NAMED_GROUP.matcher(pattern.pattern()).find()) {
+                    return null;
+                }
+                if (regex.length() > 0) {
+                    regex.append('|');
+                }
+                regex.append('(').append(pattern.pattern()).append(')');
+                groups[i] = group;
+                group += pattern.matcher("").groupCount() + 1;
+            }
+            try {
+                return Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException ex) {
+                // Every pattern compiles on its own, so the rules still work without a pre-filter
+                return null;
+            }
+        }
+
+        /**
+         * Gets the first rule matching the input, or the number of rules if none does.
+         *
+         * At each position, the alternation matches the first rule that matches there, so
+         * visiting every position where some rule matches finds the first matching rule.
+         */
+        private int firstMatchingRule(final String input) {
+            final Matcher matcher = prefilter.matcher(input);
+            int first = rules.length;
+            int start = 0;
+            while (first > 0 && start <= input.length() && matcher.find(start)) {
+                for (int i = 0; i < first; i++) {
+                    if (matcher.start(groups[i]) != -1) {
+                        first = i;
+                        break;
+                    }
+                }
+                start = matcher.start() + 1;
+            }
+            return first;
+        }
+
+        private String apply(final String input) {
+            // Rules before the first matching one would leave the input unchanged
+            String result = input;
+            for (int i = (prefilter == null)? 0 : firstMatchingRule(input); i < rules.length; i++) {
+                result = rules[i].pattern.matcher(result).replaceAll(rules[i].substitution);
+            }
+            return result;
+        }
+
+    }
+
+    public static final class Builder {
+
+        private List<List<Rule>> anyHost;
+        private final Map<String, List<List<Rule>>> exactHosts = new HashMap<String, List<List<Rule>>>();
+        private final Map<String, List<List<Rule>>> hostSuffixes = new HashMap<String, List<List<Rule>>>();
+
+        private Builder() {}
+
+        /**
+         * Adds a rule.
+         *
+         * @param host <code>*</code> for any host, a host name, or a host name starting
+         *             with a dot for the host and its subdomains.
+         * @param scope Part of the URL the rule applies to.
+         * @param pattern Pattern to replace.
+         * @param substitution Replacement, as in {@link java.util.regex.Matcher#replaceAll(String)}.
+         * @return This builder.
+         */
+        public Builder rule(final String host, final RegexCanonicalizer.Scope scope,
+                            final Pattern pattern, final String substitution) {
+            if (host == null) {
+                throw new NullPointerException("host");
+            }
+            if (scope == null) {
+                throw new NullPointerException("scope");
+            }
+            if (pattern == null) {
+                throw new NullPointerException("pattern");
+            }
+            if (substitution == null) {
+                throw new NullPointerException("substitution");
+            }
+            if (host.isEmpty() || ".".equals(host)) {
+                throw new IllegalArgumentException("Invalid host: " + host);
+            }
+            final List<List<Rule>> rules;
+            if ("*".equals(host)) {
+                if (anyHost == null) {
+                    anyHost = newRulesByScope();
+                }
+                rules = anyHost;
+            } else if (host.charAt(0) == '.') {
+                rules = rulesFor(hostSuffixes, host.substring(1).toLowerCase(Locale.ENGLISH));
+            } else {
+                rules = rulesFor(exactHosts, host.toLowerCase(Locale.ENGLISH));
+            }
+            rules.get(scope.ordinal()).add(new Rule(pattern, substitution));
+            return this;
+        }
+
+        public RuleSetCanonicalizer build() {
+            return new RuleSetCanonicalizer(this);
+        }
+
+        private static List<List<Rule>> rulesFor(final Map<String, List<List<Rule>>> map, final String key) {
+            List<List<Rule>> rules = map.get(key);
+            if (rules == null) {
+                rules = newRulesByScope();
+                map.put(key, rules);
+            }
+            return rules;
+        }
+
+        private static List<List<Rule>> newRulesByScope() {
+            final List<List<Rule>> result = new ArrayList<List<Rule>>(SCOPES.length);
+            for (int i = 0; i < SCOPES.length; i++) {
+                result.add(new ArrayList<Rule>());
+            }
+            return result;
+        }
+
+    }
+
+}
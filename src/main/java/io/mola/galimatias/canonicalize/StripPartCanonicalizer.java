@@ -24,7 +24,7 @@ package io.mola.galimatias.canonicalize;
 import io.mola.galimatias.GalimatiasParseException;
 import io.mola.galimatias.URL;
 
-public class StripPartCanonicalizer implements URLCanonicalizer {
+public class StripPartCanonicalizer extends BaseURLCanonicalizer {
 
     public static enum Part {
         USERNAME,
@@ -61,4 +61,37 @@ public class StripPartCanonicalizer implements URLCanonicalizer {
         }
     }
 
+    @Override
+    void fuseInto(final FusedCanonicalizer.Builder builder) {
+        switch (part) {
+            case USERNAME:
+                builder.hierarchicalOnly().transform(FusedCanonicalizer.Component.USERNAME, constant(""));
+                break;
+            case PASSWORD:
+                builder.hierarchicalOnly().transform(FusedCanonicalizer.Component.PASSWORD, constant(null));
+                break;
+            case PORT:
+                builder.hierarchicalOnly().stripPort();
+                break;
+            case PATH:
+                builder.hierarchicalOnly().transform(FusedCanonicalizer.Component.PATH, constant("/"));
+                break;
+            case QUERY:
+                builder.transform(FusedCanonicalizer.Component.QUERY, constant(null));
+                break;
+            case FRAGMENT:
+                builder.transform(FusedCanonicalizer.Component.FRAGMENT, constant(null));
+                break;
+        }
+    }
+
+    private static ComponentTransformer constant(final String value) {
+        return new ComponentTransformer() {
+            @Override
+            public String transform(final String input) {
+                return value;
+            }
+        };
+    }
+
 }
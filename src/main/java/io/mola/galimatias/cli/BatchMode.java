@@ -0,0 +1,467 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.cli;
+
+import io.mola.galimatias.ErrorHandler;
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.ParseIssue;
+import io.mola.galimatias.URL;
+import io.mola.galimatias.URLParsingSettings;
+import io.mola.galimatias.canonicalize.RFC2396Canonicalizer;
+import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Batch mode of the command line interface: parses one URL per line from files or the
+ * standard input with a pool of worker threads, writes one TSV or JSON line per input URL,
+ * in input order, and reports throughput, errors and latency percentiles at the end.
+ *
+ * <pre>
+ * --batch [--base URL] [--threads N] [--format tsv|json] [--canonicalize rfc3986|rfc2396] [FILE|-]...
+ * </pre>
+ *
+ * The exit status is 0 if every URL was parsed, 1 if some URL failed to parse or on I/O errors,
+ * and 2 for invalid options.
+ */
+final class BatchMode {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BATCH_SIZE = 1024;
+    private static final ParseIssue[] PARSE_ISSUES = ParseIssue.values();
+
+    static final String USAGE =
+            "Usage: --batch [--base URL] [--threads N] [--format tsv|json] [--canonicalize rfc3986|rfc2396] [FILE|-]...";
+
+    private URL base;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean json;
+    private URLCanonicalizer canonicalizer;
+    private final List<String> files = new ArrayList<String>();
+
+    private BatchMode() {}
+
+    /**
+     * Parses options.
+     *
+     * @throws IllegalArgumentException with a message for the user if they are invalid.
+     */
+    static BatchMode fromArgs(final String[] args) {
+        final BatchMode mode = new BatchMode();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--base".equals(arg)) {
+                final String value = value(args, ++i, arg);
+                try {
+                    mode.base = URL.parse(value);
+                } catch (GalimatiasParseException ex) {
+                    throw new IllegalArgumentException("Invalid base URL: " + ex.getMessage());
+                }
+            } else if ("--threads".equals(arg)) {
+                final String value = value(args, ++i, arg);
+                try {
+                    mode.threads = Integer.parseInt(value);
+                } catch (NumberFormatException ex) {
+                    mode.threads = 0;
+                }
+                if (mode.threads < 1) {
+                    throw new IllegalArgumentException("Invalid number of threads: " + value);
+                }
+            } else if ("--format".equals(arg)) {
+                final String value = value(args, ++i, arg);
+                if ("json".equals(value)) {
+                    mode.json = true;
+                } else if ("tsv".equals(value)) {
+                    mode.json = false;
+                } else {
+                    throw new IllegalArgumentException("Unknown format: " + value);
+                }
+            } else if ("--canonicalize".equals(arg)) {
+                final String value = value(args, ++i, arg);
+                if ("rfc3986".equals(value)) {
+                    mode.canonicalizer = new RFC3986Canonicalizer();
+                } else if ("rfc2396".equals(value)) {
+                    mode.canonicalizer = new RFC2396Canonicalizer();
+                } else {
+                    throw new IllegalArgumentException("Unknown canonicalizer: " + value);
+                }
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                mode.files.add(arg);
+            }
+        }
+        return mode;
+    }
+
+    private static String value(final String[] args, final int i, final String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    /**
+     * Runs the batch, reading the standard input if no files were given.
+     *
+     * @return The number of URLs that failed to parse.
+     */
+    long run(final InputStream stdin, final Writer out, final PrintStream stats) throws IOException, InterruptedException {
+        final Totals totals = new Totals();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        try {
+            final Pipeline pipeline = new Pipeline(executor, out, totals);
+            if (files.isEmpty()) {
+                read(stdin, pipeline);
+            } else {
+                for (final String file : files) {
+                    if ("-".equals(file)) {
+                        read(stdin, pipeline);
+                    } else {
+                        final InputStream input = new FileInputStream(file);
+                        try {
+                            read(input, pipeline);
+                        } finally {
+                            input.close();
+                        }
+                    }
+                }
+            }
+            pipeline.finish();
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        totals.print(stats, System.nanoTime() - start);
+        return totals.errors;
+    }
+
+    private void read(final InputStream input, final Pipeline pipeline) throws IOException, InterruptedException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8), 1 << 16);
+        List<String> lines = new ArrayList<String>(BATCH_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+            if (lines.size() == BATCH_SIZE) {
+                pipeline.submit(lines);
+                lines = new ArrayList<String>(BATCH_SIZE);
+            }
+        }
+        if (!lines.isEmpty()) {
+            pipeline.submit(lines);
+        }
+    }
+
+    /**
+     * Keeps a bounded window of batches in flight and writes their output in submission order.
+     */
+    private final class Pipeline {
+
+        private final ExecutorService executor;
+        private final Writer out;
+        private final Totals totals;
+        private final LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+
+        Pipeline(final ExecutorService executor, final Writer out, final Totals totals) {
+            this.executor = executor;
+            this.out = out;
+            this.totals = totals;
+        }
+
+        void submit(final List<String> lines) throws IOException, InterruptedException {
+            pending.add(executor.submit(new Task(lines)));
+            if (pending.size() > threads * 2) {
+                writeOldest();
+            }
+        }
+
+        void finish() throws IOException, InterruptedException {
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        }
+
+        private void writeOldest() throws IOException, InterruptedException {
+            final Chunk chunk;
+            try {
+                chunk = pending.removeFirst().get();
+            } catch (ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            out.write(chunk.output);
+            totals.add(chunk);
+        }
+    }
+
+    /**
+     * Output and statistics of a batch.
+     */
+    private static final class Chunk {
+        private final String output;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] issueCounts = new long[PARSE_ISSUES.length];
+        private long errors;
+
+        Chunk(final String output) {
+            this.output = output;
+        }
+    }
+
+    private static final class Totals {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] issueCounts = new long[PARSE_ISSUES.length];
+        private long errors;
+
+        void add(final Chunk chunk) {
+            latencies.add(chunk.latencies);
+            for (int i = 0; i < issueCounts.length; i++) {
+                issueCounts[i] += chunk.issueCounts[i];
+            }
+            errors += chunk.errors;
+        }
+
+        void print(final PrintStream stats, final long elapsedNanos) {
+            final long urls = latencies.count();
+            final double seconds = elapsedNanos / 1e9;
+            stats.println(String.format(Locale.ROOT, "URLs: %d, errors: %d (%.2f%%)",
+                    urls, errors, (urls == 0) ? 0.0 : errors * 100.0 / urls));
+            stats.println(String.format(Locale.ROOT, "Elapsed: %.3f s, throughput: %.0f URLs/s",
+                    seconds, (seconds == 0) ? 0.0 : urls / seconds));
+            stats.println(String.format(Locale.ROOT, "Latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                    latencies.percentile(50) / 1e3, latencies.percentile(90) / 1e3, latencies.percentile(99) / 1e3,
+                    latencies.percentile(99.9) / 1e3, latencies.max() / 1e3));
+            for (int i = 0; i < issueCounts.length; i++) {
+                if (issueCounts[i] != 0) {
+                    stats.println("Issue " + PARSE_ISSUES[i] + ": " + issueCounts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the issues of the URL being parsed. Each task has its own.
+     */
+    private static final class CollectingErrorHandler implements ErrorHandler {
+        private final List<ParseIssue> issues = new ArrayList<ParseIssue>();
+
+        @Override
+        public void error(final GalimatiasParseException error) {
+            issues.add(error.getParseIssue());
+        }
+
+        @Override
+        public void fatalError(final GalimatiasParseException error) {
+            // Reported by the thrown exception.
+        }
+    }
+
+    private final class Task implements Callable<Chunk> {
+
+        private final List<String> lines;
+
+        Task(final List<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public Chunk call() {
+            final CollectingErrorHandler handler = new CollectingErrorHandler();
+            final URLParsingSettings settings = URLParsingSettings.create().withErrorHandler(handler);
+            final StringBuilder output = new StringBuilder(lines.size() * 128);
+            final LatencyHistogram latencies = new LatencyHistogram();
+            final long[] issueCounts = new long[PARSE_ISSUES.length];
+            long errors = 0;
+
+            for (final String line : lines) {
+                handler.issues.clear();
+                URL url = null;
+                GalimatiasParseException failure = null;
+                final long start = System.nanoTime();
+                try {
+                    url = (base == null) ? URL.parse(settings, line) : URL.parse(settings, base, line);
+                    if (canonicalizer != null) {
+                        url = canonicalizer.canonicalize(url);
+                    }
+                } catch (GalimatiasParseException ex) {
+                    failure = ex;
+                    handler.issues.add(ex.getParseIssue());
+                }
+                latencies.record(System.nanoTime() - start);
+
+                if (failure != null) {
+                    errors++;
+                }
+                for (final ParseIssue issue : handler.issues) {
+                    issueCounts[issue.ordinal()]++;
+                }
+                if (json) {
+                    writeJSON(output, line, url, failure, handler.issues);
+                } else {
+                    writeTSV(output, line, url, failure, handler.issues);
+                }
+            }
+
+            final Chunk chunk = new Chunk(output.toString());
+            chunk.latencies.add(latencies);
+            System.arraycopy(issueCounts, 0, chunk.issueCounts, 0, issueCounts.length);
+            chunk.errors = errors;
+            return chunk;
+        }
+    }
+
+    /**
+     * Columns: input, status, URL, scheme, scheme data, username, password, host, port, path, query,
+     * fragment, issues (comma-separated), error message. Absent values are empty.
+     */
+    static void writeTSV(final StringBuilder output, final String input, final URL url,
+                         final GalimatiasParseException failure, final List<ParseIssue> issues) {
+        tsv(output, input).append('\t').append((failure == null) ? "ok" : "error");
+        if (url == null) {
+            output.append("\t\t\t\t\t\t\t\t\t\t");
+        } else {
+            tsv(output.append('\t'), url.toString());
+            tsv(output.append('\t'), url.scheme());
+            tsv(output.append('\t'), url.schemeData());
+            tsv(output.append('\t'), url.username());
+            tsv(output.append('\t'), url.password());
+            tsv(output.append('\t'), (url.host() == null) ? null : url.host().toString());
+            output.append('\t');
+            if (url.port() != -1) {
+                output.append(url.port());
+            }
+            tsv(output.append('\t'), url.path());
+            tsv(output.append('\t'), url.query());
+            tsv(output.append('\t'), url.fragment());
+        }
+        output.append('\t');
+        for (int i = 0; i < issues.size(); i++) {
+            if (i != 0) {
+                output.append(',');
+            }
+            output.append(issues.get(i).name());
+        }
+        tsv(output.append('\t'), (failure == null) ? null : failure.getMessage());
+        output.append('\n');
+    }
+
+    private static StringBuilder tsv(final StringBuilder output, final String value) {
+        if (value == null) {
+            return output;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\t': output.append("\\t"); break;
+                case '\n': output.append("\\n"); break;
+                case '\r': output.append("\\r"); break;
+                case '\\': output.append("\\\\"); break;
+                default: output.append(c);
+            }
+        }
+        return output;
+    }
+
+    static void writeJSON(final StringBuilder output, final String input, final URL url,
+                          final GalimatiasParseException failure, final List<ParseIssue> issues) {
+        output.append('{');
+        json(output, "input", input);
+        if (url != null) {
+            json(output.append(','), "url", url.toString());
+            json(output.append(','), "scheme", url.scheme());
+            json(output.append(','), "schemeData", url.schemeData());
+            json(output.append(','), "username", url.username());
+            json(output.append(','), "password", url.password());
+            json(output.append(','), "host", (url.host() == null) ? null : url.host().toString());
+            output.append(",\"port\":");
+            if (url.port() == -1) {
+                output.append("null");
+            } else {
+                output.append(url.port());
+            }
+            json(output.append(','), "path", url.path());
+            json(output.append(','), "query", url.query());
+            json(output.append(','), "fragment", url.fragment());
+        }
+        output.append(",\"issues\":[");
+        for (int i = 0; i < issues.size(); i++) {
+            if (i != 0) {
+                output.append(',');
+            }
+            jsonString(output, issues.get(i).name());
+        }
+        output.append(']');
+        if (failure != null) {
+            json(output.append(','), "error", failure.getMessage());
+        }
+        output.append("}\n");
+    }
+
+    private static void json(final StringBuilder output, final String name, final String value) {
+        jsonString(output, name).append(':');
+        if (value == null) {
+            output.append("null");
+        } else {
+            jsonString(output, value);
+        }
+    }
+
+    private static StringBuilder jsonString(final StringBuilder output, final String value) {
+        output.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                output.append('\\').append(c);
+            } else if (c < 0x20) {
+                output.append(String.format("\\u%04x", (int) c));
+            } else {
+                output.append(c);
+            }
+        }
+        return output.append('"');
+    }
+
+}
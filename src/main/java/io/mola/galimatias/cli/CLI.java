@@ -28,8 +28,16 @@ import io.mola.galimatias.URLParsingSettings;
 import io.mola.galimatias.canonicalize.RFC2396Canonicalizer;
 import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
 /**
  * A command line interface to Galimatias URL parser.
+ *
+ * With <code>--batch</code> as first argument, it runs in batch mode. See {@link BatchMode}.
  */
 public class CLI {
 
@@ -90,8 +98,33 @@ public class CLI {
 
     private static ErrorHandler errorHandler = new PrintErrorHandler();
 
+    private static int batch(final String[] args) {
+        final BatchMode mode;
+        try {
+            mode = BatchMode.fromArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(BatchMode.USAGE);
+            return 2;
+        }
+        try {
+            final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), 1 << 16);
+            return (mode.run(System.in, out, System.err) == 0)? 0 : 1;
+        } catch (IOException ex) {
+            System.err.println("I/O error: " + ex.getMessage());
+            return 1;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
     public static void main(String[] args) {
 
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            System.exit(batch(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         URLParsingSettings settings = URLParsingSettings.create().withErrorHandler(errorHandler);
         URL url = null;
         String whatwgUrlSerialized = "";
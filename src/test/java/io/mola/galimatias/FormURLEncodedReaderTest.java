@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class FormURLEncodedReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Collector implements FormURLEncodedReader.Visitor {
+        final List<NameValue> pairs = new ArrayList<NameValue>();
+
+        @Override
+        public void visit(final String name, final String value) {
+            pairs.add(new NameValue(name, value));
+        }
+    }
+
+    private static List<NameValue> parse(final FormURLEncodedReader reader, final String input) throws GalimatiasParseException {
+        final Collector collector = new Collector();
+        reader.parse(ByteBuffer.wrap(input.getBytes(UTF_8)), collector);
+        return collector.pairs;
+    }
+
+    private static List<NameValue> parse(final String input) throws GalimatiasParseException {
+        return parse(FormURLEncodedReader.create(), input);
+    }
+
+    @Test
+    public void parse() throws GalimatiasParseException {
+        assertThat(parse("foo=123&bar=456")).isEqualTo(Arrays.asList(new NameValue("foo", "123"), new NameValue("bar", "456")));
+        assertThat(parse("=123")).isEqualTo(Arrays.asList(new NameValue("", "123")));
+        assertThat(parse("foo")).isEqualTo(Arrays.asList(new NameValue("foo", "")));
+        assertThat(parse("foo=")).isEqualTo(Arrays.asList(new NameValue("foo", "")));
+        assertThat(parse("&&a=b=c&&")).isEqualTo(Arrays.asList(new NameValue("a", "b=c")));
+        assertThat(parse("")).isEqualTo(new ArrayList<NameValue>());
+        assertThat(parse("©=ß")).isEqualTo(Arrays.asList(new NameValue("©", "ß")));
+    }
+
+    @Test
+    public void decoding() throws GalimatiasParseException {
+        assertThat(parse("a+=b+")).isEqualTo(Arrays.asList(new NameValue("a ", "b ")));
+        assertThat(parse("a%20=b%2B%2b")).isEqualTo(Arrays.asList(new NameValue("a ", "b++")));
+        assertThat(parse("%C2%A9=%c3%9f")).isEqualTo(Arrays.asList(new NameValue("©", "ß")));
+        assertThat(parse("a%3Db=c%26d")).isEqualTo(Arrays.asList(new NameValue("a=b", "c&d")));
+        assertThat(parse("%=%2&%zz=%2z&x=%")).isEqualTo(Arrays.asList(
+                new NameValue("%", "%2"), new NameValue("%zz", "%2z"), new NameValue("x", "%")));
+        assertThat(parse("%FF=%C3")).isEqualTo(Arrays.asList(new NameValue("�", "�")));
+    }
+
+    @Test
+    public void charset() throws GalimatiasParseException {
+        final FormURLEncodedReader reader = FormURLEncodedReader.builder()
+                .withCharset(Charset.forName("ISO-8859-1"))
+                .build();
+        assertThat(parse(reader, "%A9=%DF")).isEqualTo(Arrays.asList(new NameValue("©", "ß")));
+    }
+
+    @Test
+    public void streamsAcrossChunks() throws IOException, GalimatiasParseException {
+        final StringBuilder input = new StringBuilder();
+        final List<NameValue> expected = new ArrayList<NameValue>();
+        for (int i = 0; i < 5000; i++) {
+            input.append("name").append(i).append("=%C3%9F").append(i).append('&');
+            expected.add(new NameValue("name" + i, "ß" + i));
+        }
+        final byte[] bytes = input.toString().getBytes(UTF_8);
+        final FormURLEncodedReader reader = FormURLEncodedReader.create();
+
+        Collector collector = new Collector();
+        reader.parse(new ByteArrayInputStream(bytes), collector);
+        assertThat(collector.pairs).isEqualTo(expected);
+
+        collector = new Collector();
+        reader.parse(Channels.newChannel(new TrickleInputStream(bytes)), collector);
+        assertThat(collector.pairs).isEqualTo(expected);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        collector = new Collector();
+        reader.parse(direct, collector);
+        assertThat(collector.pairs).isEqualTo(expected);
+        assertThat(direct.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void maxPairs() throws GalimatiasParseException {
+        final FormURLEncodedReader reader = FormURLEncodedReader.builder().withMaxPairs(2).build();
+        assertThat(parse(reader, "a=1&&b=2&")).hasSize(2);
+        try {
+            parse(reader, "a=1&b=2&c=3");
+            fail("Expected GalimatiasParseException");
+        } catch (GalimatiasParseException ex) {
+            assertThat(ex.getPosition()).isEqualTo(11);
+        }
+    }
+
+    @Test
+    public void maxPairLength() throws GalimatiasParseException {
+        final FormURLEncodedReader reader = FormURLEncodedReader.builder().withMaxPairLength(5).build();
+        assertThat(parse(reader, "a=123&b=%20")).isEqualTo(Arrays.asList(new NameValue("a", "123"), new NameValue("b", " ")));
+        try {
+            parse(reader, "a=1&b=2345");
+            fail("Expected GalimatiasParseException");
+        } catch (GalimatiasParseException ex) {
+            assertThat(ex.getPosition()).isEqualTo(9);
+        }
+        // The reader is still usable after a failure.
+        assertThat(parse(reader, "c=3")).isEqualTo(Arrays.asList(new NameValue("c", "3")));
+    }
+
+    /**
+     * Returns at most 7 bytes per read, to split pairs and percent-encoded bytes across reads.
+     */
+    private static class TrickleInputStream extends InputStream {
+        private final ByteArrayInputStream delegate;
+
+        TrickleInputStream(final byte[] bytes) {
+            delegate = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return delegate.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            return delegate.read(b, off, Math.min(len, 7));
+        }
+    }
+
+}
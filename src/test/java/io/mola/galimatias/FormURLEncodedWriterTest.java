@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class FormURLEncodedWriterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static String write(final FormURLEncodedWriter writer, final NameValue... pairs) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        writer.write(Arrays.asList(pairs), sb);
+        return sb.toString();
+    }
+
+    @Test
+    public void write() throws IOException {
+        final FormURLEncodedWriter writer = FormURLEncodedWriter.create();
+        assertThat(write(writer, new NameValue("foo", "123"), new NameValue("bar", "456"))).isEqualTo("foo=123&bar=456");
+        assertThat(write(writer, new NameValue("", "123"))).isEqualTo("=123");
+        assertThat(write(writer)).isEqualTo("");
+        assertThat(write(writer, new NameValue("a b", "*-._~+&="))).isEqualTo("a+b=*-._%7E%2B%26%3D");
+        assertThat(write(writer, new NameValue("©", "💩"))).isEqualTo("%C2%A9=%F0%9F%92%A9");
+        assertThat(write(writer, new NameValue("\uD800", "\uDC00x"))).isEqualTo("%3F=%3Fx");
+    }
+
+    @Test
+    public void charset() throws IOException {
+        assertThat(write(FormURLEncodedWriter.create(Charset.forName("ISO-8859-1")), new NameValue("©", "€")))
+                .isEqualTo("%A9=%3F");
+        assertThat(write(FormURLEncodedWriter.create(Charset.forName("Shift_JIS")), new NameValue("a", "日本")))
+                .isEqualTo("a=%93%FA%96%7B");
+    }
+
+    @Test
+    public void streams() throws IOException, GalimatiasParseException {
+        final List<NameValue> pairs = new ArrayList<NameValue>();
+        for (int i = 0; i < 2000; i++) {
+            pairs.add(new NameValue("name " + i, "ß€" + i));
+        }
+        final FormURLEncodedWriter writer = FormURLEncodedWriter.create();
+        final StringBuilder sb = new StringBuilder();
+        writer.write(pairs, sb);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.write(pairs, stream);
+        assertThat(new String(stream.toByteArray(), UTF_8)).isEqualTo(sb.toString());
+
+        final ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+        writer.write(pairs, Channels.newChannel(channelStream));
+        assertThat(new String(channelStream.toByteArray(), UTF_8)).isEqualTo(sb.toString());
+
+        final List<NameValue> parsed = new ArrayList<NameValue>();
+        FormURLEncodedReader.create().parse(ByteBuffer.wrap(stream.toByteArray()), new FormURLEncodedReader.Visitor() {
+            @Override
+            public void visit(final String name, final String value) {
+                parsed.add(new NameValue(name, value));
+            }
+        });
+        assertThat(parsed).isEqualTo(pairs);
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ParseMetricsTest {
+
+    @Test
+    public void disabledByDefault() {
+        assertThat(URLParsingSettings.create().metrics()).isNull();
+    }
+
+    @Test
+    public void recordsOutcomes() throws GalimatiasParseException {
+        final ParseMetrics metrics = ParseMetrics.create();
+        final URLParsingSettings settings = URLParsingSettings.create().withMetrics(metrics);
+        URL.parse(settings, "http://example.com/");
+        URL.parse(settings, "http://example.com/");
+        URL.parse(settings, "http://example.com\\foo\\bar");
+        try {
+            URL.parse(settings, "+http://example.com");
+        } catch (GalimatiasParseException ex) {
+            // Expected
+        }
+
+        final ParseMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.count()).isEqualTo(4);
+        assertThat(snapshot.count(ParseMetrics.Outcome.SUCCESS)).isEqualTo(2);
+        assertThat(snapshot.count(ParseMetrics.Outcome.RECOVERED)).isEqualTo(1);
+        assertThat(snapshot.count(ParseMetrics.Outcome.FAILED)).isEqualTo(1);
+        assertThat(snapshot.issueCount(ParseIssue.BACKSLASH_AS_DELIMITER)).isEqualTo(2);
+        assertThat(snapshot.maxNanos()).isGreaterThan(0);
+        assertThat(snapshot.totalNanos()).isGreaterThanOrEqualTo(snapshot.maxNanos());
+    }
+
+    @Test
+    public void strictErrorHandlerFails() {
+        final ParseMetrics metrics = ParseMetrics.create();
+        final URLParsingSettings settings = URLParsingSettings.create()
+                .withMetrics(metrics)
+                .withErrorHandler(StrictErrorHandler.getInstance());
+        assertThat(settings.metrics()).isSameAs(metrics);
+        try {
+            URL.parse(settings, "http://example.com\\foo");
+        } catch (GalimatiasParseException ex) {
+            // Expected
+        }
+        final ParseMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.count(ParseMetrics.Outcome.FAILED)).isEqualTo(1);
+        assertThat(snapshot.issueCount(ParseIssue.BACKSLASH_AS_DELIMITER)).isEqualTo(1);
+    }
+
+    @Test
+    public void percentiles() {
+        final ParseMetrics metrics = ParseMetrics.create();
+        for (int i = 1; i <= 1000; i++) {
+            metrics.recordParse(ParseMetrics.Outcome.SUCCESS, i * 1000L);
+        }
+        final ParseMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.count()).isEqualTo(1000);
+        assertThat(snapshot.maxNanos()).isEqualTo(1000000L);
+        assertThat(snapshot.totalNanos()).isEqualTo(500500000L);
+        assertThat(snapshot.percentileNanos(50)).isGreaterThanOrEqualTo(500000L).isLessThanOrEqualTo(562500L);
+        assertThat(snapshot.percentileNanos(99)).isGreaterThanOrEqualTo(990000L).isLessThanOrEqualTo(1000000L);
+        assertThat(snapshot.percentileNanos(100)).isEqualTo(1000000L);
+        assertThat(ParseMetrics.create().snapshot().percentileNanos(50)).isEqualTo(0);
+    }
+
+    @Test
+    public void export() throws GalimatiasParseException {
+        final ParseMetrics metrics = ParseMetrics.create();
+        URL.parse(URLParsingSettings.create().withMetrics(metrics), "http://example.com\\foo");
+        final String text = metrics.snapshot().toString();
+        assertThat(text).contains("galimatias_parse_total{outcome=\"recovered\"} 1\n");
+        assertThat(text).contains("galimatias_parse_total{outcome=\"success\"} 0\n");
+        assertThat(text).contains("galimatias_parse_issues_total{issue=\"BACKSLASH_AS_DELIMITER\"} 1\n");
+        for (final String quantile : new String[] { "0.5", "0.9", "0.99", "0.999" }) {
+            assertThat(text).contains("galimatias_parse_duration_nanoseconds{quantile=\"" + quantile + "\"} ");
+        }
+        assertThat(text).contains("# TYPE galimatias_parse_duration_nanoseconds_max gauge\n");
+        assertThat(text).contains("galimatias_parse_duration_nanoseconds_count 1\n");
+    }
+
+    @Test
+    public void concurrentRecording() throws InterruptedException {
+        final ParseMetrics metrics = ParseMetrics.create();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        metrics.recordIssue(ParseIssue.INVALID_HOST);
+                        metrics.recordParse(ParseMetrics.Outcome.RECOVERED, i);
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final ParseMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.count(ParseMetrics.Outcome.RECOVERED)).isEqualTo(80000);
+        assertThat(snapshot.issueCount(ParseIssue.INVALID_HOST)).isEqualTo(80000);
+        assertThat(snapshot.maxNanos()).isEqualTo(9999);
+    }
+
+}
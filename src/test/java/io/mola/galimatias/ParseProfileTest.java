@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(JUnit4.class)
+public class ParseProfileTest {
+
+    @Before
+    public void reset() {
+        ParseProfile.reset();
+    }
+
+    @Test
+    public void recorder() {
+        final ParseProfile.Recorder recorder = new ParseProfile.Recorder();
+        recorder.step(URLParser.ParseURLState.SCHEME_START, 0);
+        // Decrease pointer by one and switch state
+        recorder.step(URLParser.ParseURLState.NO_SCHEME, 0);
+        recorder.step(URLParser.ParseURLState.RELATIVE, 1);
+        recorder.step(URLParser.ParseURLState.RELATIVE, 2);
+        recorder.step(URLParser.ParseURLState.RELATIVE, 3);
+        // Restart from the beginning
+        recorder.step(URLParser.ParseURLState.RELATIVE_PATH, 0);
+        recorder.percentEncoded(ParseProfile.Component.PATH, 0);
+        recorder.percentEncoded(ParseProfile.Component.PATH, 2);
+        recorder.percentEncodedByte(ParseProfile.Component.QUERY, (byte) 0x20);
+        recorder.percentEncodedByte(ParseProfile.Component.QUERY, (byte) 0xC3);
+        recorder.percentEncodedByte(ParseProfile.Component.QUERY, (byte) 0xA9);
+        recorder.finish();
+
+        final ParseProfile.Snapshot snapshot = ParseProfile.snapshot();
+        assertThat(snapshot.parses()).isEqualTo(1);
+        assertThat(snapshot.entries("SCHEME_START")).isEqualTo(1);
+        assertThat(snapshot.entries("RELATIVE")).isEqualTo(1);
+        assertThat(snapshot.characters("RELATIVE")).isEqualTo(3);
+        assertThat(snapshot.backtracks("SCHEME_START")).isEqualTo(1);
+        assertThat(snapshot.backtrackedCharacters("SCHEME_START")).isEqualTo(1);
+        assertThat(snapshot.backtracks("RELATIVE")).isEqualTo(1);
+        assertThat(snapshot.backtrackedCharacters("RELATIVE")).isEqualTo(4);
+        assertThat(snapshot.backtracks("NO_SCHEME")).isEqualTo(0);
+        assertThat(snapshot.percentEncodedCodePoints(ParseProfile.Component.PATH)).isEqualTo(1);
+        assertThat(snapshot.percentEncodedBytes(ParseProfile.Component.PATH)).isEqualTo(2);
+        assertThat(snapshot.percentEncodedCodePoints(ParseProfile.Component.QUERY)).isEqualTo(2);
+        assertThat(snapshot.percentEncodedBytes(ParseProfile.Component.QUERY)).isEqualTo(3);
+        assertThat(snapshot.states()).contains("AUTHORITY", "RELATIVE_PATH");
+        assertThat(snapshot.toString()).contains("RELATIVE_PATH").contains("USERINFO");
+
+        ParseProfile.reset();
+        assertThat(ParseProfile.snapshot().parses()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownState() {
+        ParseProfile.snapshot().entries("UNKNOWN");
+    }
+
+    @Test
+    public void parse() throws GalimatiasParseException {
+        // Runs in the parse-profile surefire execution, which enables profiling
+        assumeTrue(ParseProfile.isEnabled());
+        URL.parse("http://user@example.com/café?q=é#a b");
+        final ParseProfile.Snapshot snapshot = ParseProfile.snapshot();
+        assertThat(snapshot.parses()).isEqualTo(1);
+        assertThat(snapshot.entries("SCHEME_START")).isEqualTo(1);
+        assertThat(snapshot.entries("AUTHORITY")).isEqualTo(1);
+        // Moves back to the start of the host after finding its end
+        assertThat(snapshot.backtracks("AUTHORITY")).isEqualTo(1);
+        assertThat(snapshot.percentEncodedCodePoints(ParseProfile.Component.PATH)).isEqualTo(1);
+        assertThat(snapshot.percentEncodedBytes(ParseProfile.Component.PATH)).isEqualTo(2);
+        assertThat(snapshot.percentEncodedBytes(ParseProfile.Component.QUERY)).isEqualTo(2);
+        assertThat(snapshot.percentEncodedBytes(ParseProfile.Component.FRAGMENT)).isEqualTo(0);
+    }
+
+}
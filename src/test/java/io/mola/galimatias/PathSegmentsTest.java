@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class PathSegmentsTest {
+
+    @Test
+    public void pathSegments() throws GalimatiasParseException {
+        assertThat(URL.parse("http://example.com").pathSegments()).isEqualTo(Arrays.asList(""));
+        assertThat(URL.parse("http://example.com/").pathSegments()).isEqualTo(Arrays.asList(""));
+        assertThat(URL.parse("http://example.com/a/b").pathSegments()).isEqualTo(Arrays.asList("a", "b"));
+        assertThat(URL.parse("http://example.com/a/b/").pathSegments()).isEqualTo(Arrays.asList("a", "b", ""));
+        assertThat(URL.parse("http://example.com//a").pathSegments()).isEqualTo(Arrays.asList("", "a"));
+        assertThat(URL.parse("mailto:user@example.com").pathSegments()).isNull();
+    }
+
+    @Test
+    public void pathSegmentsIsCached() throws GalimatiasParseException {
+        final URL url = URL.parse("http://example.com/a/b");
+        assertThat(url.pathSegments()).isSameAs(url.pathSegments());
+        final URL other = url.withQuery("q");
+        assertThat(other.pathSegments()).isSameAs(other.pathSegments());
+        assertThat(other.pathSegments()).isEqualTo(url.pathSegments());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void pathSegmentsIsReadOnly() throws GalimatiasParseException {
+        URL.parse("http://example.com/a/b").pathSegments().remove(0);
+    }
+
+    @Test
+    public void dotSegments() throws GalimatiasParseException {
+        assertThat(URL.parse("http://example.com/a/./b/../c").path()).isEqualTo("/a/c");
+        assertThat(URL.parse("http://example.com/a/%2e/b/%2E%2e/c").path()).isEqualTo("/a/c");
+        assertThat(URL.parse("http://example.com/a/b/.%2E").path()).isEqualTo("/a/");
+        assertThat(URL.parse("http://example.com/a/b/%2e.").path()).isEqualTo("/a/");
+        assertThat(URL.parse("http://example.com/a/b/%2e").path()).isEqualTo("/a/b/");
+        assertThat(URL.parse("http://example.com/../../a").path()).isEqualTo("/a");
+        assertThat(URL.parse("http://example.com/.../%2e%2e%2e/%2ex/.%2").path()).isEqualTo("/.../%2E%2E%2E/%2Ex/.%2");
+    }
+
+    @Test
+    public void relativeToBase() throws GalimatiasParseException {
+        final URL base = URL.parse("http://example.com/a/b/c");
+        assertThat(URL.parse(base, "d").pathSegments()).isEqualTo(Arrays.asList("a", "b", "d"));
+        assertThat(URL.parse(base, "../d").pathSegments()).isEqualTo(Arrays.asList("a", "d"));
+        assertThat(URL.parse(base, "../../../../d").pathSegments()).isEqualTo(Arrays.asList("d"));
+        assertThat(URL.parse(base, "?q").pathSegments()).isEqualTo(Arrays.asList("a", "b", "c"));
+        assertThat(URL.parse(base, "#f").path()).isEqualTo("/a/b/c");
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class SamplingErrorHandlerTest {
+
+    @Test
+    public void samplesErrors() throws GalimatiasParseException {
+        final SamplingErrorHandler handler = SamplingErrorHandler.create();
+        final URLParsingSettings settings = URLParsingSettings.create().withErrorHandler(handler);
+        URL.parse(settings, "http://example.com\\foo");
+        try {
+            URL.parse(settings, "+http://example.com");
+        } catch (GalimatiasParseException ex) {
+            // Expected
+        }
+
+        final SamplingErrorHandler.Snapshot snapshot = handler.snapshot();
+        assertThat(snapshot.errorCount(ParseIssue.BACKSLASH_AS_DELIMITER)).isEqualTo(1);
+        final List<SamplingErrorHandler.Sample> errors = snapshot.errors(ParseIssue.BACKSLASH_AS_DELIMITER);
+        assertThat(errors).hasSize(1);
+        assertThat(errors.get(0).getInput()).isEqualTo("http://example.com\\foo");
+        assertThat(errors.get(0).getPosition()).isEqualTo(18);
+        assertThat(errors.get(0).isFatal()).isFalse();
+        assertThat(errors.get(0).isTruncated()).isFalse();
+
+        assertThat(snapshot.fatalErrorCount(ParseIssue.MISSING_SCHEME)).isEqualTo(1);
+        assertThat(snapshot.errorCount(ParseIssue.MISSING_SCHEME)).isEqualTo(0);
+        final SamplingErrorHandler.Sample fatal = snapshot.fatalErrors(ParseIssue.MISSING_SCHEME).get(0);
+        assertThat(fatal.getInput()).isEqualTo("+http://example.com");
+        assertThat(fatal.isFatal()).isTrue();
+        assertThat(snapshot.toString()).contains("MISSING_SCHEME (fatal): 1");
+    }
+
+    @Test(expected = GalimatiasParseException.class)
+    public void delegates() throws GalimatiasParseException {
+        final SamplingErrorHandler handler = SamplingErrorHandler.create(StrictErrorHandler.getInstance(), 10, 100);
+        URL.parse(URLParsingSettings.create().withErrorHandler(handler), "http://example.com\\foo");
+    }
+
+    @Test
+    public void truncates() throws GalimatiasParseException {
+        final SamplingErrorHandler handler = SamplingErrorHandler.create(DefaultErrorHandler.getInstance(), 10, 20);
+        final String input = "http://example.com/long/path/to\\resource";
+        URL.parse(URLParsingSettings.create().withErrorHandler(handler), input);
+        final SamplingErrorHandler.Sample sample = handler.snapshot().errors(ParseIssue.BACKSLASH_AS_DELIMITER).get(0);
+        assertThat(sample.getInput()).isEqualTo(input.substring(0, 20));
+        assertThat(sample.isTruncated()).isTrue();
+        assertThat(sample.getPosition()).isEqualTo(input.indexOf('\\'));
+    }
+
+    @Test
+    public void boundedAndUniform() throws GalimatiasParseException {
+        final SamplingErrorHandler handler = SamplingErrorHandler.create(DefaultErrorHandler.getInstance(), 100, 100);
+        final int errors = 100000;
+        for (int i = 0; i < errors; i++) {
+            handler.error(GalimatiasParseException.builder()
+                    .withParseIssue(ParseIssue.ILLEGAL_CHARACTER)
+                    .withPosition(i)
+                    .build());
+        }
+        final SamplingErrorHandler.Snapshot snapshot = handler.snapshot();
+        assertThat(snapshot.errorCount(ParseIssue.ILLEGAL_CHARACTER)).isEqualTo(errors);
+        final List<SamplingErrorHandler.Sample> samples = snapshot.errors(ParseIssue.ILLEGAL_CHARACTER);
+        assertThat(samples).hasSize(100);
+        long sum = 0;
+        int late = 0;
+        for (final SamplingErrorHandler.Sample sample : samples) {
+            assertThat(sample.getInput()).isNull();
+            sum += sample.getPosition();
+            if (sample.getPosition() >= 100) {
+                late++;
+            }
+        }
+        // Not just the first errors; on average, from the middle
+        assertThat(late).isGreaterThan(90);
+        assertThat(sum / samples.size()).isGreaterThan(errors / 4).isLessThan(errors * 3 / 4);
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        final SamplingErrorHandler handler = SamplingErrorHandler.create(DefaultErrorHandler.getInstance(), 50, 100);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        handler.fatalError(GalimatiasParseException.builder()
+                                .withParseIssue(ParseIssue.INVALID_HOST)
+                                .withPosition(i)
+                                .build());
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final SamplingErrorHandler.Snapshot snapshot = handler.snapshot();
+        assertThat(snapshot.fatalErrorCount(ParseIssue.INVALID_HOST)).isEqualTo(80000);
+        assertThat(snapshot.fatalErrors(ParseIssue.INVALID_HOST)).hasSize(50);
+    }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class SchemeRegistryTest {
+
+    private static final SchemeRegistry REGISTRY = SchemeRegistry.getDefault()
+            .withScheme(Scheme.hierarchical("s3", -1))
+            .withScheme(Scheme.hierarchical("git", 9418))
+            .withScheme(Scheme.hierarchical("ssh", 22));
+
+    private static final URLParsingSettings SETTINGS = URLParsingSettings.create().withSchemeRegistry(REGISTRY);
+
+    @Test
+    public void defaultRegistry() {
+        final SchemeRegistry registry = SchemeRegistry.getDefault();
+        assertThat(registry.schemes()).isEqualTo(Arrays.asList(
+                Scheme.FTP, Scheme.FILE, Scheme.GOPHER, Scheme.HTTP, Scheme.HTTPS, Scheme.WS, Scheme.WSS));
+        assertThat(registry.get("http")).isSameAs(Scheme.HTTP);
+        assertThat(registry.get(new StringBuilder("wss"))).isSameAs(Scheme.WSS);
+        assertThat(registry.get("HTTP")).isNull();
+        assertThat(registry.get("")).isNull();
+        assertThat(registry.get("s3")).isNull();
+        assertThat(registry.defaultPort("https")).isEqualTo(443);
+        assertThat(registry.defaultPort("file")).isEqualTo(-1);
+        assertThat(registry.defaultPort("mailto")).isEqualTo(-1);
+        assertThat(registry.isHierarchical("ftp")).isTrue();
+        assertThat(registry.isHierarchical("git")).isFalse();
+        assertThat(URLParsingSettings.create().schemeRegistry()).isSameAs(registry);
+    }
+
+    @Test
+    public void urlUtils() {
+        assertThat(URLUtils.isRelativeScheme("gopher")).isTrue();
+        assertThat(URLUtils.isRelativeScheme("git")).isFalse();
+        assertThat(URLUtils.isRelativeScheme(null)).isFalse();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedGetDefaultPortForScheme() {
+        assertThat(URLUtils.getDefaultPortForScheme("ws")).isEqualTo("80");
+        assertThat(URLUtils.getDefaultPortForScheme("file")).isNull();
+        assertThat(URLUtils.getDefaultPortForScheme(null)).isNull();
+    }
+
+    @Test
+    public void withScheme() {
+        assertThat(REGISTRY.schemes().size()).isEqualTo(10);
+        assertThat(REGISTRY.get("ssh").defaultPort()).isEqualTo(22);
+        assertThat(REGISTRY.get(new StringBuilder("s3")).isHierarchical()).isTrue();
+        assertThat(REGISTRY.get("http")).isSameAs(Scheme.HTTP);
+        // Registries are immutable
+        assertThat(SchemeRegistry.getDefault().get("ssh")).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withSchemeAlreadyRegistered() {
+        SchemeRegistry.getDefault().withScheme(Scheme.hierarchical("http", 8080));
+    }
+
+    @Test
+    public void invalidSchemes() {
+        for (final String name : new String[] { "", "S3", "3s", "a b", "a:" }) {
+            try {
+                Scheme.hierarchical(name, -1);
+                throw new AssertionError("Expected IllegalArgumentException for " + name);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+        try {
+            Scheme.hierarchical("svn+ssh", 65536);
+            throw new AssertionError("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parseRegisteredSchemes() throws GalimatiasParseException {
+        final URL s3 = URL.parse(SETTINGS, "s3://my-bucket/path/to/object.tar.gz");
+        assertThat(s3.isHierarchical()).isTrue();
+        assertThat(s3.host().toString()).isEqualTo("my-bucket");
+        assertThat(s3.port()).isEqualTo(-1);
+        assertThat(s3.pathSegments()).isEqualTo(Arrays.asList("path", "to", "object.tar.gz"));
+
+        final URL ssh = URL.parse(SETTINGS, "ssh://git@github.com:22/smola/galimatias.git");
+        assertThat(ssh.username()).isEqualTo("git");
+        assertThat(ssh.host().toString()).isEqualTo("github.com");
+        assertThat(ssh.port()).isEqualTo(22);
+        assertThat(ssh.defaultPort()).isEqualTo(22);
+        assertThat(ssh.toString()).isEqualTo("ssh://git@github.com/smola/galimatias.git");
+
+        final URL git = URL.parse(SETTINGS, "git://github.com:1234/smola/galimatias.git");
+        assertThat(git.port()).isEqualTo(1234);
+        assertThat(git.toString()).isEqualTo("git://github.com:1234/smola/galimatias.git");
+        assertThat(git.path()).isEqualTo("/smola/galimatias.git");
+    }
+
+    @Test
+    public void unregisteredSchemesAreOpaque() throws GalimatiasParseException {
+        final URL git = URL.parse("git://github.com/smola/galimatias.git");
+        assertThat(git.isHierarchical()).isFalse();
+        assertThat(git.scheme()).isEqualTo("git");
+        assertThat(git.schemeData()).isEqualTo("//github.com/smola/galimatias.git");
+        assertThat(git.host()).isNull();
+        assertThat(git.port()).isEqualTo(-1);
+    }
+
+    @Test
+    public void resolveAgainstRegisteredScheme() throws GalimatiasParseException {
+        final URL base = URL.parse(SETTINGS, "s3://my-bucket/a/b");
+        assertThat(base.resolve("c").toString()).isEqualTo("s3://my-bucket/a/c");
+        assertThat(base.resolve("/c?d").toString()).isEqualTo("s3://my-bucket/c?d");
+        assertThat(base.withPath("/x/y").toString()).isEqualTo("s3://my-bucket/x/y");
+        assertThat(URL.parse(SETTINGS, base, "s3://other-bucket/z").host().toString()).isEqualTo("other-bucket");
+    }
+
+    @Test
+    public void withSchemeKeepsRegisteredSchemes() throws GalimatiasParseException {
+        final URL s3 = URL.parse(SETTINGS, "s3://my-bucket/a/b");
+        final URL ssh = s3.withScheme("ssh");
+        assertThat(ssh.isHierarchical()).isTrue();
+        assertThat(ssh.toString()).isEqualTo("ssh://my-bucket/a/b");
+        assertThat(ssh.defaultPort()).isEqualTo(22);
+
+        final URL https = s3.withScheme("https");
+        assertThat(https.toString()).isEqualTo("https://my-bucket/a/b");
+        final URL git = https.withScheme("git");
+        assertThat(git.isHierarchical()).isTrue();
+        assertThat(git.host().toString()).isEqualTo("my-bucket");
+        assertThat(git.withPath("/c").withScheme("s3").toString()).isEqualTo("s3://my-bucket/c");
+
+        // Implicit default ports are not carried over
+        assertThat(URL.parse("http://example.com/").withScheme("https").toString()).isEqualTo("https://example.com/");
+        assertThat(URL.parse("http://example.com:8080/").withScheme("https").port()).isEqualTo(8080);
+
+        // Without registration, the scheme is still opaque
+        assertThat(URL.parse("https://my-bucket/a/b").withScheme("s3").isHierarchical()).isFalse();
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final URL ssh = URL.parse(SETTINGS, "ssh://github.com:2222/");
+        final URL http = URL.parse("http://example.com:8080/");
+        final URL copy = roundTrip(ssh);
+        assertThat(copy).isEqualTo(ssh);
+        assertThat(copy.defaultPort()).isEqualTo(22);
+        assertThat(copy.port()).isEqualTo(2222);
+        assertThat(copy.withScheme("git").defaultPort()).isEqualTo(9418);
+        assertThat(roundTrip(http).schemeDescriptor()).isSameAs(Scheme.HTTP);
+        assertThat(roundTrip(http).schemeRegistry()).isSameAs(SchemeRegistry.getDefault());
+    }
+
+    private static URL roundTrip(final URL url) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(url);
+        out.close();
+        return (URL) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+}
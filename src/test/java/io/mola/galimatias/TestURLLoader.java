@@ -153,17 +153,18 @@ public class TestURLLoader {
                     }
                 }
 
+                Scheme schemeDescriptor = SchemeRegistry.getDefault().get(scheme);
+                if (schemeDescriptor == null) {
+                    schemeDescriptor = Scheme.opaque(scheme);
+                }
                 if (!isHierarchical) {
                     schemeData = path;
                     path = null;
-                } else {
-                    final String defaultPortString = URLUtils.getDefaultPortForScheme(scheme);
-                    if (defaultPortString != null && port == Integer.parseInt(defaultPortString)) {
-                        port = -1;
-                    }
+                } else if (port == schemeDescriptor.defaultPort()) {
+                    port = -1;
                 }
 
-                testURL.parsedURL = new URL(scheme, schemeData, username, password,
+                testURL.parsedURL = new URL(schemeDescriptor, SchemeRegistry.getDefault(), schemeData, username, password,
                         host, port, path, query, fragment, isHierarchical);
 
             }
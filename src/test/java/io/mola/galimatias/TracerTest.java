@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import io.mola.galimatias.canonicalize.CombinedCanonicalizer;
+import io.mola.galimatias.canonicalize.RFC3986Canonicalizer;
+import io.mola.galimatias.canonicalize.StripPartCanonicalizer;
+import io.mola.galimatias.canonicalize.URLCanonicalizer;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class TracerTest {
+
+    private static final class RecordingTracer extends Tracer {
+
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public Object beginParse() {
+            return "parse";
+        }
+
+        @Override
+        public void endParse(final Object token, final int inputLength, final ParseMetrics.Outcome outcome) {
+            events.add(token + " " + inputLength + " " + outcome);
+        }
+
+        @Override
+        public Object beginIDNA() {
+            return "idna";
+        }
+
+        @Override
+        public void endIDNA(final Object token, final boolean toASCII, final int inputLength, final boolean success) {
+            events.add(token + " " + (toASCII ? "ascii" : "unicode") + " " + inputLength + " " + success);
+        }
+
+        @Override
+        public Object beginCanonicalize() {
+            return "canonicalize";
+        }
+
+        @Override
+        public void endCanonicalize(final Object token, final URLCanonicalizer canonicalizer, final boolean success) {
+            events.add(token + " " + canonicalizer.getClass().getSimpleName() + " " + success);
+        }
+
+        @Override
+        public Object beginFormURLEncodedParse() {
+            return "form";
+        }
+
+        @Override
+        public void endFormURLEncodedParse(final Object token, final int inputLength, final int pairs) {
+            events.add(token + " " + inputLength + " " + pairs);
+        }
+
+    }
+
+    @After
+    public void uninstall() {
+        Tracer.install(null);
+    }
+
+    @Test
+    public void notInstalled() {
+        assertThat(Tracer.get()).isNull();
+    }
+
+    @Test
+    public void parse() throws GalimatiasParseException {
+        final RecordingTracer tracer = new RecordingTracer();
+        Tracer.install(tracer);
+        assertThat(Tracer.get()).isSameAs(tracer);
+        URL.parse("http://example.com/");
+        URL.parse("http://example.com\\foo");
+        try {
+            URL.parse("+http://example.com");
+        } catch (GalimatiasParseException ex) {
+            // Expected
+        }
+        assertThat(tracer.events).isEqualTo(Arrays.asList(
+                "idna ascii 11 true",
+                "parse 19 SUCCESS",
+                "idna ascii 11 true",
+                "parse 22 RECOVERED",
+                "parse 19 FAILED"));
+    }
+
+    @Test
+    public void idna() throws GalimatiasParseException {
+        final RecordingTracer tracer = new RecordingTracer();
+        Tracer.install(tracer);
+        URLUtils.domainToUnicode("example.com");
+        assertThat(tracer.events).isEqualTo(Arrays.asList("idna unicode 11 true"));
+    }
+
+    @Test
+    public void canonicalize() throws GalimatiasParseException {
+        final URL url = URL.parse("http://example.com/a?b#c");
+        final RecordingTracer tracer = new RecordingTracer();
+        Tracer.install(tracer);
+        new CombinedCanonicalizer(new RFC3986Canonicalizer()).canonicalize(url);
+        assertThat(tracer.events).contains("canonicalize RFC3986Canonicalizer true");
+        tracer.events.clear();
+        new CombinedCanonicalizer(new RFC3986Canonicalizer(),
+                new StripPartCanonicalizer(StripPartCanonicalizer.Part.FRAGMENT)).canonicalize(url);
+        assertThat(tracer.events).contains("canonicalize FusedCanonicalizer true");
+    }
+
+    @Test
+    public void formURLEncodedParse() {
+        final RecordingTracer tracer = new RecordingTracer();
+        Tracer.install(tracer);
+        FormURLEncodedParser.parse("a=1&b=2&&c");
+        assertThat(tracer.events).isEqualTo(Arrays.asList("form 10 3"));
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import io.mola.galimatias.canonicalize.DecodeUnreservedCanonicalizer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class URLBatchTest {
+
+    @Test
+    public void parseAll() throws Exception {
+        final List<CharSequence> inputs = new ArrayList<CharSequence>();
+        inputs.add("http://example.com/a");
+        inputs.add("example.com");
+        inputs.add(new StringBuilder("http://example.com/%7e"));
+        final URLBatch.Result result = URLBatch.parseAll(inputs, null, new DecodeUnreservedCanonicalizer());
+        assertThat(result.size()).isEqualTo(3);
+        assertThat(result.urls()[0]).isEqualTo(URL.parse("http://example.com/a"));
+        assertThat(result.urls()[1]).isNull();
+        assertThat(result.urls()[2]).isEqualTo(URL.parse("http://example.com/~"));
+        assertThat(result.failureCount()).isEqualTo(1);
+        assertThat(result.failureIndexes()[0]).isEqualTo(1);
+        assertThat(result.failureIssue(0)).isEqualTo(ParseIssue.MISSING_SCHEME);
+    }
+
+    @Test
+    public void parseAllInParallel() throws Exception {
+        final List<String> inputs = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            inputs.add((i % 7 == 0) ? "bad" + i : "http://example.com/" + i);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final URLBatch.Result result = URLBatch.parseAll(inputs, URLParsingSettings.create(), null, executor, 4);
+            assertThat(result.size()).isEqualTo(inputs.size());
+            int failure = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                if (i % 7 == 0) {
+                    assertThat(result.urls()[i]).isNull();
+                    assertThat(result.failureIndexes()[failure++]).isEqualTo(i);
+                } else {
+                    assertThat(result.urls()[i].path()).isEqualTo("/" + i);
+                }
+            }
+            assertThat(result.failureCount()).isEqualTo(failure);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void runtimeExceptionsArePropagated() throws Exception {
+        final List<String> inputs = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            inputs.add("http://example.com/");
+        }
+        inputs.set(4321, null);
+        try {
+            URLBatch.parseAll(inputs, null, null);
+            fail("Expected NullPointerException");
+        } catch (NullPointerException ex) {
+            // Expected
+        }
+    }
+
+}
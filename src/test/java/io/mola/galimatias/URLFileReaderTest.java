@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class URLFileReaderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("urls", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void write(final String content) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static List<String> lines(final URLFileReader.Region region) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        region.forEachLine(new URLFileReader.LineVisitor() {
+            @Override
+            public void visit(final URLFileReader.Line line) {
+                lines.add(line.toString());
+            }
+        });
+        return lines;
+    }
+
+    @Test
+    public void forEachLine() throws IOException {
+        write("http://example.com/\r\n\nhttp://example.com/ñ\nhttp://example.org");
+        final URLFileReader reader = URLFileReader.open(file);
+        try {
+            assertThat(lines(reader.region())).isEqualTo(Arrays.asList(
+                    "http://example.com/", "", "http://example.com/ñ", "http://example.org"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void smallWindows() throws IOException {
+        write("a\nbb\nthis line is longer than the window\nccc\n");
+        final URLFileReader reader = URLFileReader.open(file, 4);
+        try {
+            assertThat(lines(reader.region())).isEqualTo(Arrays.asList(
+                    "a", "bb", "this line is longer than the window", "ccc"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void split() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            final String line = "http://example.com/" + i;
+            content.append(line).append('\n');
+            expected.add(line);
+        }
+        write(content.toString());
+        final URLFileReader reader = URLFileReader.open(file, 1000);
+        try {
+            final List<String> lines = new ArrayList<String>();
+            for (final URLFileReader.Region region : reader.region().split(7)) {
+                lines.addAll(lines(region));
+            }
+            assertThat(lines).isEqualTo(expected);
+
+            final URLFileReader.Region rest = reader.region();
+            final URLFileReader.Region first = rest.trySplit();
+            assertThat(first.end()).isEqualTo(rest.start());
+            lines.clear();
+            lines.addAll(lines(first));
+            lines.addAll(lines(rest));
+            assertThat(lines).isEqualTo(expected);
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -257,4 +257,75 @@ public class URLSearchParamsTest {
         assertThat(it.hasNext()).isFalse();
     }
 
+    @Test
+    public void searchParametersAreCached() throws GalimatiasParseException {
+        final URL url = URL.parse("http://example.com/?a=1");
+        assertThat((Object) url.searchParameters()).isSameAs(url.searchParameters());
+    }
+
+    @Test
+    public void lookupsMatchParsedPairs() {
+        final StringBuilder query = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            query.append("k").append(i % 100).append("+x=v").append(i).append("&&");
+        }
+        query.append("=empty&flag");
+        final URLSearchParameters params = new URLSearchParameters(query.toString());
+        final List<NameValue> parsed = FormURLEncodedParser.parse(query.toString());
+
+        assertThat((Object) params).isEqualTo(new URLSearchParameters(parsed));
+        assertThat(params.get("k7 x")).isEqualTo("v7");
+        assertThat(params.get("k7+x")).isNull();
+        assertThat(params.getAll("k7 x")).hasSize(10);
+        assertThat(params.getAll("k7 x").get(9)).isEqualTo("v907");
+        assertThat(params.get("")).isEqualTo("empty");
+        assertThat(params.get("flag")).isEqualTo("");
+        assertThat(params.has("k100 x")).isFalse();
+    }
+
+    @Test
+    public void rawQueryParameters() throws GalimatiasParseException {
+        final URL url = URL.parse("http://example.com/?a+b=c+d&a%20b=1&&a b=2");
+        assertThat(url.queryParameter("a+b")).isEqualTo("c+d");
+        assertThat(url.queryParameters("a b")).isEqualTo(Arrays.asList());
+        assertThat(url.queryParameter("a%20b")).isEqualTo("1");
+        assertThat(url.queryParameter("")).isEqualTo("");
+        assertThat(url.searchParameters().getAll("a b")).isEqualTo(Arrays.asList("c d"));
+    }
+
+    @Test
+    public void builder() {
+        final URLSearchParameters params = URLSearchParameters.builder()
+                .add("b", "1")
+                .add("a", "2")
+                .add("b", "3")
+                .add(new NameValue("c", "4"))
+                .set("a", "5")
+                .set("d", "6")
+                .removeAll("c")
+                .sort()
+                .build();
+        assertThat((Object) params).isEqualTo(new URLSearchParameters(Arrays.asList(
+                new NameValue("a", "5"), new NameValue("b", "1"), new NameValue("b", "3"), new NameValue("d", "6"))));
+
+        final URLSearchParameters.Builder builder = params.toBuilder()
+                .set("b", "7")
+                .retainAll(Arrays.asList("b", "d"));
+        assertThat(builder.size()).isEqualTo(2);
+        assertThat(builder.toQuery()).isEqualTo("b=7&d=6");
+    }
+
+    @Test
+    public void builderKeepsRawPairs() throws GalimatiasParseException {
+        final URL url = URL.parse("http://example.com/?z=%41+b&utm_source=x&a=1#frag");
+        final URLSearchParameters.Builder builder = url.searchParameters().toBuilder()
+                .removeAll("utm_source")
+                .add("q", "a b&c")
+                .sort();
+        assertThat(builder.toQuery()).isEqualTo("a=1&q=a+b%26c&z=%41+b");
+        assertThat(builder.applyTo(url).toString()).isEqualTo("http://example.com/?a=1&q=a+b%26c&z=%41+b#frag");
+        assertThat(url.searchParameters().toBuilder().removeAll("z").removeAll("utm_source").removeAll("a")
+                .applyTo(url).toString()).isEqualTo("http://example.com/#frag");
+    }
+
 }
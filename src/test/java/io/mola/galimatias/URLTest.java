@@ -379,7 +379,7 @@ public class URLTest {
 
     @Test(expected = NullPointerException.class)
     public void schemeCannotBeNull() throws GalimatiasParseException {
-        new URL(null, null, null, null, Host.parseHost("example.com"), -1, "/", null, null, true);
+        new URL(null, null, null, null, null, Host.parseHost("example.com"), -1, "/", null, null, true);
     }
 
     @Test
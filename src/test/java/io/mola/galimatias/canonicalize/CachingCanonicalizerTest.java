@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class CachingCanonicalizerTest {
+
+    private static final class CountingCanonicalizer implements URLCanonicalizer {
+        private final URLCanonicalizer canonicalizer = new RFC3986Canonicalizer();
+        private int calls;
+
+        @Override
+        public URL canonicalize(final URL url) throws GalimatiasParseException {
+            calls++;
+            if ("fail".equals(url.query())) {
+                return URL.parse("missing scheme");
+            }
+            return canonicalizer.canonicalize(url);
+        }
+    }
+
+    @Test
+    public void test() throws GalimatiasParseException {
+        final CountingCanonicalizer counting = new CountingCanonicalizer();
+        final CachingCanonicalizer canon = CachingCanonicalizer.builder(counting).build();
+        final URL expected = new RFC3986Canonicalizer().canonicalize(URL.parse("http://example.com/^"));
+        assertThat(canon.canonicalize(URL.parse("http://example.com/^"))).isEqualTo(expected);
+        assertThat(canon.canonicalize(URL.parse("http://example.com/^"))).isEqualTo(expected);
+        assertThat(counting.calls).isEqualTo(1);
+        assertThat(canon.hitCount()).isEqualTo(1L);
+        assertThat(canon.missCount()).isEqualTo(1L);
+        assertThat(canon.size()).isEqualTo(1L);
+        assertThat(canon.hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        final CountingCanonicalizer counting = new CountingCanonicalizer();
+        final CachingCanonicalizer canon = CachingCanonicalizer.builder(counting).build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                canon.canonicalize(URL.parse("http://example.com/?fail"));
+                fail("Did not throw GalimatiasParseException");
+            } catch (GalimatiasParseException ex) { }
+        }
+        assertThat(counting.calls).isEqualTo(2);
+        assertThat(canon.size()).isEqualTo(0L);
+    }
+
+    @Test
+    public void evictsBySize() throws GalimatiasParseException {
+        final CachingCanonicalizer canon = CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+                .maximumSize(2)
+                .concurrencyLevel(1)
+                .build();
+        canon.canonicalize(URL.parse("http://example.com/a"));
+        canon.canonicalize(URL.parse("http://example.com/b"));
+        canon.canonicalize(URL.parse("http://example.com/a"));
+        canon.canonicalize(URL.parse("http://example.com/c"));
+        assertThat(canon.size()).isEqualTo(2L);
+        assertThat(canon.evictionCount()).isEqualTo(1L);
+        // "b" was the least recently used entry
+        canon.canonicalize(URL.parse("http://example.com/a"));
+        assertThat(canon.hitCount()).isEqualTo(2L);
+        canon.canonicalize(URL.parse("http://example.com/b"));
+        assertThat(canon.missCount()).isEqualTo(4L);
+    }
+
+    @Test
+    public void smallMaximumSizeIsNotExceeded() throws GalimatiasParseException {
+        for (int maximumSize = 1; maximumSize <= 40; maximumSize++) {
+            final CachingCanonicalizer canon = CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+                    .maximumSize(maximumSize)
+                    .build();
+            for (int i = 0; i < 200; i++) {
+                canon.canonicalize(URL.parse("http://example.com/" + i));
+            }
+            assertThat(canon.size()).as("maximum size " + maximumSize).isLessThanOrEqualTo(maximumSize);
+        }
+    }
+
+    @Test
+    public void smallMaximumWeightIsNotExceeded() throws GalimatiasParseException {
+        for (int maximumWeight = 1; maximumWeight <= 40; maximumWeight++) {
+            final CachingCanonicalizer canon = CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+                    .maximumWeight(maximumWeight)
+                    .build();
+            for (int i = 0; i < 200; i++) {
+                canon.canonicalize(URL.parse("http://example.com/" + i));
+            }
+            assertThat(canon.weight()).as("maximum weight " + maximumWeight).isLessThanOrEqualTo(maximumWeight);
+        }
+    }
+
+    @Test
+    public void evictsByWeight() throws GalimatiasParseException {
+        final CachingCanonicalizer canon = CachingCanonicalizer.builder(new RFC3986Canonicalizer())
+                .maximumWeight(40)
+                .weigher(CachingCanonicalizer.LENGTH_WEIGHER)
+                .concurrencyLevel(1)
+                .build();
+        canon.canonicalize(URL.parse("http://example.com/aaaaaaaaaaaaaaaaaaaa"));
+        assertThat(canon.weight()).isEqualTo(25L);
+        canon.canonicalize(URL.parse("http://example.com/bbbbbbbbbbbbbbbbbbbb"));
+        assertThat(canon.size()).isEqualTo(1L);
+        assertThat(canon.weight()).isEqualTo(25L);
+        canon.canonicalize(URL.parse("http://example.com/" + new String(new char[100]).replace('\0', 'c')));
+        assertThat(canon.size()).isEqualTo(1L);
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.TestURL;
+import io.mola.galimatias.URL;
+import org.junit.Test;
+import org.junit.experimental.theories.Theories;
+import org.junit.experimental.theories.Theory;
+import org.junit.runner.RunWith;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeNotNull;
+
+@RunWith(Theories.class)
+public class QueryCanonicalizerTest {
+
+    private static final URLCanonicalizer CANON = QueryCanonicalizer.builder()
+            .removeTrackingParameters()
+            .removeParameter("ref")
+            .build();
+
+    @Test
+    public void test() throws GalimatiasParseException {
+        for (final String[] pair : new String[][] {
+                new String[]{ "http://example.com/?b=2&a=1&b=1", "http://example.com/?a=1&b=2&b=1" },
+                new String[]{ "http://example.com/?q=x&utm_source=a&UTM_Medium=b&gclid=c&Ref=d", "http://example.com/?q=x" },
+                new String[]{ "http://example.com/?utm_source=a", "http://example.com/" },
+                new String[]{ "http://example.com/?utm=a&refs=b&utm_=c", "http://example.com/?refs=b&utm=a" },
+                new String[]{ "http://example.com/?a&b=&&c=%3d&=d", "http://example.com/?=d&c=%3D" },
+                new String[]{ "http://example.com/?%7Ea=%41%2f%zz&utm%5Fid=1", "http://example.com/?~a=A%2F%zz" },
+                new String[]{ "http://example.com/?b+c=1&b%20c=2&b=3", "http://example.com/?b=3&b+c=1&b%20c=2" },
+                new String[]{ "http://example.com/?a=1#utm_source=x", "http://example.com/?a=1#utm_source=x" },
+                new String[]{ "mailto:x?utm_source=a", "mailto:x?utm_source=a" },
+        }) {
+            assertThat(CANON.canonicalize(URL.parse(pair[0])).toString())
+                    .isEqualTo(URL.parse(pair[1]).toString());
+        }
+    }
+
+    @Test
+    public void options() throws GalimatiasParseException {
+        final URLCanonicalizer canon = QueryCanonicalizer.builder()
+                .removeParametersWithPrefix("x-")
+                .sort(false)
+                .removeEmpty(false)
+                .normalizePercentEncoding(false)
+                .build();
+        assertThat(canon.canonicalize(URL.parse("http://example.com/?b&X-a=1&a=%41")).toString())
+                .isEqualTo("http://example.com/?b&a=%41");
+    }
+
+    @Test
+    public void canonicalInputIsReturnedAsIs() throws GalimatiasParseException {
+        final URL url = URL.parse("http://example.com/?a=1&b=2");
+        assertThat(CANON.canonicalize(url)).isSameAs(url);
+    }
+
+    @Theory
+    public void idempotence(final @TestURL.TestURLs(dataset = TestURL.DATASETS.WHATWG) TestURL testURL) throws GalimatiasParseException {
+        assumeNotNull(testURL.parsedURL);
+        final URL roundOne = CANON.canonicalize(testURL.parsedURL);
+        final URL roundTwo = CANON.canonicalize(roundOne);
+        assertThat(roundOne).isEqualTo(roundTwo);
+        final URL reparse = URL.parse(roundTwo.toString());
+        assertThat(reparse).isEqualTo(roundTwo);
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.canonicalize;
+
+import io.mola.galimatias.GalimatiasParseException;
+import io.mola.galimatias.URL;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class RuleSetCanonicalizerTest {
+
+    private static final String RULES =
+            "# host\tscope\tpattern\tsubstitution\n" +
+            "\n" +
+            "*\tQUERY\t(^|&)utm_[a-z]+=[^&]*\t\n" +
+            "*\tFRAGMENT\t^.*$\n" +
+            ".example.com\tPATH\t;jsessionid=[^/]*\t\n" +
+            "m.example.com\tHOST\t^m\\.\twww.\n" +
+            "www.example.com\tPATH\t^/mobile/\t/\n" +
+            "example.org\tFULL\t^http:\thttps:\n";
+
+    private static URLCanonicalizer load() throws IOException {
+        return RuleSetCanonicalizer.load(new StringReader(RULES));
+    }
+
+    @Test
+    public void test() throws GalimatiasParseException, IOException {
+        final URLCanonicalizer canon = load();
+        for (final String[] pair : new String[][] {
+                new String[]{ "http://example.net/a?utm_source=x", "http://example.net/a?" },
+                new String[]{ "http://example.net/a;jsessionid=1#frag", "http://example.net/a;jsessionid=1#" },
+                new String[]{ "http://example.com/a;jsessionid=1/b", "http://example.com/a/b" },
+                new String[]{ "http://foo.example.com/a;jsessionid=1", "http://foo.example.com/a" },
+                new String[]{ "http://m.example.com/mobile/a;jsessionid=1", "http://www.example.com/a" },
+                new String[]{ "http://example.org/", "https://example.org/" },
+                new String[]{ "http://www.example.org/", "http://www.example.org/" }
+        }) {
+            assertThat(canon.canonicalize(URL.parse(pair[0])).toString())
+                    .isEqualTo(URL.parse(pair[1]).toString());
+        }
+    }
+
+    @Test
+    public void equivalentToRegexCanonicalizers() throws GalimatiasParseException {
+        final URLCanonicalizer ruleSet = RuleSetCanonicalizer.builder()
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("/+"), "/")
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("/index\\.html$"), "/")
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("(a)\\1"), "$1")
+                .build();
+        final URLCanonicalizer combined = new CombinedCanonicalizer(
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("/+"), "/"),
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("/index\\.html$"), "/"),
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("(a)\\1"), "$1"));
+        for (final String input : new String[] {
+                "http://example.com/", "http://example.com//a//index.html", "http://example.com/aa/b" }) {
+            final URL url = URL.parse(input);
+            assertThat(ruleSet.canonicalize(url)).isEqualTo(combined.canonicalize(url));
+        }
+    }
+
+    @Test
+    public void prefilterSkipsOnlyRulesThatDoNotMatch() throws GalimatiasParseException {
+        final URLCanonicalizer ruleSet = RuleSetCanonicalizer.builder()
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("(c)(d)"), "$2$1")
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("b"), "B")
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("a"), "A")
+                .rule("*", RegexCanonicalizer.Scope.PATH, Pattern.compile("A"), "x")
+                .build();
+        final URLCanonicalizer combined = new CombinedCanonicalizer(
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("(c)(d)"), "$2$1"),
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("b"), "B"),
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("a"), "A"),
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("A"), "x"));
+        assertThat(ruleSet.canonicalize(URL.parse("http://example.com/abcd")).path()).isEqualTo("/xBdc");
+        for (final String input : new String[] {
+                "http://example.com/a", "http://example.com/ba", "http://example.com/cdA", "http://example.com/e" }) {
+            final URL url = URL.parse(input);
+            assertThat(ruleSet.canonicalize(url)).isEqualTo(combined.canonicalize(url));
+        }
+    }
+
+    @Test
+    public void scopesAreAppliedInScopeOrder() throws GalimatiasParseException, IOException {
+        final String rules =
+                "*\tFULL\t^http://example\\.com/a$\thttp://example.com/full\n" +
+                "*\tPATH\t^/a$\t/path\n";
+        final URL url = URL.parse("http://example.com/a");
+        // In file order, the FULL rule would apply first and the PATH rule would not match
+        assertThat(new CombinedCanonicalizer(
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.FULL, Pattern.compile("^http://example\\.com/a$"), "http://example.com/full"),
+                new RegexCanonicalizer(RegexCanonicalizer.Scope.PATH, Pattern.compile("^/a$"), "/path"))
+                .canonicalize(url).toString()).isEqualTo("http://example.com/full");
+        assertThat(RuleSetCanonicalizer.load(new StringReader(rules)).canonicalize(url).toString())
+                .isEqualTo("http://example.com/path");
+    }
+
+    @Test
+    public void nonMatchingRulesReturnSameInstance() throws GalimatiasParseException, IOException {
+        final URL url = URL.parse("http://example.net/a?b=c");
+        assertThat(load().canonicalize(url)).isSameAs(url);
+        final URL opaque = URL.parse("mailto:user@example.com");
+        assertThat(load().canonicalize(opaque)).isSameAs(opaque);
+    }
+
+    @Test
+    public void namedGroupsInSameBucket() throws GalimatiasParseException, IOException {
+        final URLCanonicalizer canon = RuleSetCanonicalizer.load(new StringReader(
+                "*\tPATH\t/(?<x>[a-z]+)-/\t/${x}/\n" +
+                "*\tPATH\t(?<x>\\d+)\\.html$\t${x}\n" +
+                "*\tPATH\t(?<=/)index$\t\n"));
+        assertThat(canon.canonicalize(URL.parse("http://example.com/ab-/1.html")).toString())
+                .isEqualTo("http://example.com/ab/1");
+        assertThat(canon.canonicalize(URL.parse("http://example.com/a/index")).toString())
+                .isEqualTo("http://example.com/a/");
+        final URL url = URL.parse("http://example.com/a/b");
+        assertThat(canon.canonicalize(url)).isSameAs(url);
+    }
+
+    @Test
+    public void malformedRules() throws IOException {
+        for (final String rules : new String[] {
+                "example.com\tPATH\n",
+                "example.com\tPORT\tfoo\tbar\n",
+                "example.com\tPATH\t[\tbar\n",
+                "\tPATH\tfoo\tbar\n"
+        }) {
+            try {
+                RuleSetCanonicalizer.load(new StringReader(rules));
+                fail("Did not throw IllegalArgumentException: " + rules);
+            } catch (IllegalArgumentException ex) { }
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2013-2014 Santiago M. Mola <santi@mola.io>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package io.mola.galimatias.cli;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class BatchModeTest {
+
+    private static String run(final String input, final String... args) throws Exception {
+        final StringWriter out = new StringWriter();
+        final ByteArrayOutputStream stats = new ByteArrayOutputStream();
+        BatchMode.fromArgs(args).run(new ByteArrayInputStream(input.getBytes("UTF-8")), out, new PrintStream(stats, true, "UTF-8"));
+        assertThat(stats.toString("UTF-8")).contains("URLs: ");
+        return out.toString();
+    }
+
+    @Test
+    public void tsv() throws Exception {
+        final String output = run("http://example.com/a?b#c\nfoo\n", "--base", "http://example.org/dir/");
+        assertThat(output).isEqualTo(
+                "http://example.com/a?b#c\tok\thttp://example.com/a?b#c\thttp\t\t\t\texample.com\t80\t/a\tb\tc\t\t\n" +
+                "foo\tok\thttp://example.org/dir/foo\thttp\t\t\t\texample.org\t80\t/dir/foo\t\t\t\t\n");
+    }
+
+    @Test
+    public void json() throws Exception {
+        final String output = run("\"x\"\n", "--format", "json");
+        assertThat(output).isEqualTo("{\"input\":\"\\\"x\\\"\",\"issues\":[\"MISSING_SCHEME\"],\"error\":\"Missing scheme\"}\n");
+    }
+
+    @Test
+    public void opaqueURLs() throws Exception {
+        assertThat(run("data:text/plain,hi\n", "--canonicalize", "rfc3986")).isEqualTo(
+                "data:text/plain,hi\tok\tdata:text/plain,hi\tdata\ttext/plain,hi\t\t\t\t\t\t\t\t\t\n");
+        assertThat(run("mailto:user@example.com\n", "--format", "json")).isEqualTo(
+                "{\"input\":\"mailto:user@example.com\",\"url\":\"mailto:user@example.com\",\"scheme\":\"mailto\"," +
+                "\"schemeData\":\"user@example.com\",\"username\":\"\",\"password\":null,\"host\":null," +
+                "\"port\":null,\"path\":null,\"query\":null,\"fragment\":null,\"issues\":[]}\n");
+    }
+
+    @Test
+    public void failuresAreCounted() throws Exception {
+        final BatchMode mode = BatchMode.fromArgs(new String[0]);
+        final ByteArrayInputStream input = new ByteArrayInputStream("http://example.com/\nfoo\n\n".getBytes("UTF-8"));
+        assertThat(mode.run(input, new StringWriter(), new PrintStream(new ByteArrayOutputStream(), true, "UTF-8")))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void outputIsInInputOrder() throws Exception {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("http://example.com/").append(i).append('\n');
+        }
+        final String[] lines = run(input.toString(), "--threads", "4").split("\n");
+        assertThat(lines.length).isEqualTo(10000);
+        for (int i = 0; i < lines.length; i++) {
+            assertThat(lines[i]).startsWith("http://example.com/" + i + "\t");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOption() {
+        BatchMode.fromArgs(new String[]{ "--threads", "zero" });
+    }
+
+    @Test
+    public void latencyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertThat(histogram.count()).isEqualTo(1000);
+        assertThat(histogram.max()).isEqualTo(1000000);
+        assertThat(histogram.percentile(50)).isGreaterThanOrEqualTo(500000).isLessThan(500000 + 500000 / 16);
+        assertThat(histogram.percentile(100)).isEqualTo(1000000);
+    }
+
+}